@@ -40,6 +40,12 @@ public class Action {
     return this.payload;
   }
 
+  /**
+   * Returns the request of the action of the Thing Description, or null if the lab has
+   * been constructed from a cached description of its Thing Description (see
+   * {@link ThingDescriptionCache}). A lab performs its actions through its
+   * {@link LabTransport}.
+   */
   public TDHttpRequest getRequest() {
     return this.request;
   }
@@ -0,0 +1,127 @@
+package tools;
+
+import java.util.SplittableRandom;
+
+/**
+ * Allocation-free kernels for selecting actions from the Q values of a state, where the
+ * applicable actions of a state are given as a mask with a bit per action (see
+ * {@link LearningEnvironment#getApplicableActionMask(int)}).
+ */
+public final class ActionKernels {
+
+  private ActionKernels() {
+  }
+
+  /**
+   * Returns the maximum Q value of the applicable actions
+   *
+   * @param qTable the Q matrix
+   * @param state the state
+   * @param actionMask the mask of the applicable actions of the state
+   * @return the maximum Q value, or 0 if no action is applicable
+   */
+  public static double max(QTable qTable, int state, long actionMask) {
+    if (actionMask == 0) {
+      return 0.0;
+    }
+
+    double max = Double.NEGATIVE_INFINITY;
+    for (long mask = actionMask; mask != 0; mask &= mask - 1) {
+      double q = qTable.get(state, Long.numberOfTrailingZeros(mask));
+      if (q > max) {
+        max = q;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns the first applicable action with the maximum Q value
+   *
+   * @param qTable the Q matrix
+   * @param state the state
+   * @param actionMask the mask of the applicable actions of the state
+   * @return the action, or -1 if no action is applicable
+   */
+  public static int argmax(QTable qTable, int state, long actionMask) {
+    int best = -1;
+    double max = Double.NEGATIVE_INFINITY;
+
+    for (long mask = actionMask; mask != 0; mask &= mask - 1) {
+      int action = Long.numberOfTrailingZeros(mask);
+      if (best < 0 || qTable.get(state, action) > max) {
+        max = qTable.get(state, action);
+        best = action;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns an applicable action with the maximum Q value, where ties are broken
+   * uniformly at random (reservoir sampling over the tied actions)
+   *
+   * @param qTable the Q matrix
+   * @param state the state
+   * @param actionMask the mask of the applicable actions of the state
+   * @param random the random number generator
+   * @return the action, or -1 if no action is applicable
+   */
+  public static int greedy(QTable qTable, int state, long actionMask, SplittableRandom random) {
+    int best = -1;
+    int ties = 0;
+    double max = Double.NEGATIVE_INFINITY;
+
+    for (long mask = actionMask; mask != 0; mask &= mask - 1) {
+      int action = Long.numberOfTrailingZeros(mask);
+      double q = qTable.get(state, action);
+
+      if (best < 0 || q > max) {
+        max = q;
+        best = action;
+        ties = 1;
+      } else if (q == max && random.nextInt(++ties) == 0) {
+        best = action;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns a random applicable action with probability epsilon, and otherwise an
+   * applicable action with the maximum Q value (see {@link #greedy})
+   *
+   * @param qTable the Q matrix
+   * @param state the state
+   * @param actionMask the mask of the applicable actions of the state
+   * @param epsilon the exploration probability
+   * @param random the random number generator
+   * @return the action, or -1 if no action is applicable
+   */
+  public static int epsilonGreedy(QTable qTable, int state, long actionMask, double epsilon, SplittableRandom random) {
+    if (random.nextDouble() < epsilon) {
+      return random(actionMask, random);
+    }
+    return greedy(qTable, state, actionMask, random);
+  }
+
+  /**
+   * Returns an applicable action chosen uniformly at random
+   *
+   * @param actionMask the mask of the applicable actions
+   * @param random the random number generator
+   * @return the action, or -1 if no action is applicable
+   */
+  public static int random(long actionMask, SplittableRandom random) {
+    int count = Long.bitCount(actionMask);
+    if (count == 0) {
+      return -1;
+    }
+
+    long mask = actionMask;
+    for (int skipped = random.nextInt(count); skipped > 0; skipped--) {
+      mask &= mask - 1;
+    }
+    return Long.numberOfTrailingZeros(mask);
+  }
+}
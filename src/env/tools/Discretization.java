@@ -0,0 +1,157 @@
+package tools;
+
+import java.util.*;
+
+/**
+ * The discretization of the continuous values of the status of a lab (the light level
+ * of each zone and the sunshine out of the lab) into the substates of the state space.
+ *
+ * <p> Each axis is discretized with a sorted array of bin boundaries, where a value
+ * below the first boundary belongs to bin 0, and a value in [boundary i-1, boundary i)
+ * belongs to bin i. An axis with k boundaries has k+1 bins. By default, light levels
+ * are discretized with the boundaries [50, 100, 300] and the sunshine with the boundaries
+ * [50, 200, 700], i.e. into 4 bins each.
+ * </p>
+ */
+public class Discretization {
+
+  public static final double[] DEFAULT_LIGHT_LEVEL_BOUNDARIES = {50, 100, 300};
+  public static final double[] DEFAULT_SUNSHINE_BOUNDARIES = {50, 200, 700};
+
+  /**
+   * The default discretization
+   */
+  public static final Discretization DEFAULT = new Discretization(
+    new double[][]{DEFAULT_LIGHT_LEVEL_BOUNDARIES}, DEFAULT_SUNSHINE_BOUNDARIES);
+
+  /**
+   * The boundaries of the light level of each zone, where the last boundaries also apply
+   * to the following zones
+   */
+  private final double[][] lightLevelBoundaries;
+  private final double[] sunshineBoundaries;
+
+  /**
+   * A {@link Discretization} instance is constructed based on the bin boundaries of
+   * each axis
+   *
+   * @param lightLevelBoundaries the boundaries of the light level of each zone, where
+   * the last boundaries also apply to the following zones (e.g., a single array applies
+   * to all the zones)
+   * @param sunshineBoundaries the boundaries of the sunshine
+   * @throws IllegalArgumentException if there are no light level boundaries, or if some
+   * boundaries are not strictly increasing
+   */
+  public Discretization(double[][] lightLevelBoundaries, double[] sunshineBoundaries) {
+    if (lightLevelBoundaries.length == 0) {
+      throw new IllegalArgumentException("No light level boundaries");
+    }
+    for (double[] boundaries : lightLevelBoundaries) {
+      checkBoundaries(boundaries);
+    }
+    checkBoundaries(sunshineBoundaries);
+
+    this.lightLevelBoundaries = lightLevelBoundaries.clone();
+    this.sunshineBoundaries = sunshineBoundaries.clone();
+  }
+
+  /**
+   * Creates a discretization from the bin boundaries of an agent, e.g. [[10,20,...,300],
+   * [50,200,700]]. The last list holds the boundaries of the sunshine, and the previous
+   * lists hold the boundaries of the light level of each zone, where the last of them
+   * also applies to the following zones.
+   *
+   * @param boundaries the lists of boundaries
+   * @return the discretization
+   * @throws IllegalArgumentException if there are less than 2 lists, or if some
+   * boundaries are not strictly increasing numbers
+   */
+  public static Discretization fromBoundaries(Object[] boundaries) {
+    if (boundaries.length < 2) {
+      throw new IllegalArgumentException("Expected the boundaries of the light levels and of the sunshine");
+    }
+
+    double[][] lightLevelBoundaries = new double[boundaries.length - 1][];
+    for (int i = 0; i < lightLevelBoundaries.length; i++) {
+      lightLevelBoundaries[i] = toDoubles(boundaries[i]);
+    }
+    return new Discretization(lightLevelBoundaries, toDoubles(boundaries[boundaries.length - 1]));
+  }
+
+  /**
+   * Returns the bin of the light level of a zone
+   *
+   * @param zone the zone, starting from 0
+   * @param lux the light level in lux
+   * @return the bin
+   */
+  public int discretizeLightLevel(int zone, double lux) {
+    return bin(getLightLevelBoundaries(zone), lux);
+  }
+
+  /**
+   * Returns the bin of the sunshine
+   *
+   * @param lux the sunshine in lux
+   * @return the bin
+   */
+  public int discretizeSunshine(double lux) {
+    return bin(sunshineBoundaries, lux);
+  }
+
+  /**
+   * Returns the number of bins of the light level of a zone
+   */
+  public int getLightLevelBinCount(int zone) {
+    return getLightLevelBoundaries(zone).length + 1;
+  }
+
+  /**
+   * Returns the number of bins of the sunshine
+   */
+  public int getSunshineBinCount() {
+    return sunshineBoundaries.length + 1;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder description = new StringBuilder("[");
+    for (double[] boundaries : lightLevelBoundaries) {
+      description.append(Arrays.toString(boundaries)).append(',');
+    }
+    return description.append(Arrays.toString(sunshineBoundaries)).append(']').toString();
+  }
+
+  private double[] getLightLevelBoundaries(int zone) {
+    return lightLevelBoundaries[Math.min(zone, lightLevelBoundaries.length - 1)];
+  }
+
+  /**
+   * Returns the number of boundaries that are lower than or equal to a value
+   */
+  private static int bin(double[] boundaries, double value) {
+    int bin = 0;
+    while (bin < boundaries.length && value >= boundaries[bin]) {
+      bin++;
+    }
+    return bin;
+  }
+
+  private static void checkBoundaries(double[] boundaries) {
+    for (int i = 1; i < boundaries.length; i++) {
+      if (!(boundaries[i] > boundaries[i - 1])) {
+        throw new IllegalArgumentException("The boundaries are not strictly increasing: "
+          + Arrays.toString(boundaries));
+      }
+    }
+  }
+
+  private static double[] toDoubles(Object list) {
+    Object[] values = list instanceof List ? ((List<?>) list).toArray() : (Object[]) list;
+    double[] doubles = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      doubles[i] = Double.valueOf(values[i].toString());
+    }
+    return doubles;
+  }
+}
@@ -0,0 +1,50 @@
+package tools;
+
+/**
+ * A {@link QTable} that keeps the Q values on the heap in a single array of doubles,
+ * in row-major order.
+ */
+public final class DoubleQTable implements QTable {
+
+  private final int stateCount;
+  private final int actionCount;
+  private final double[] values;
+
+  /**
+   * A {@link DoubleQTable} instance is constructed based on the number of states and
+   * actions, with Q values of 0
+   *
+   * @param stateCount the number of states
+   * @param actionCount the number of actions
+   */
+  public DoubleQTable(int stateCount, int actionCount) {
+    this.stateCount = stateCount;
+    this.actionCount = actionCount;
+    this.values = new double[Math.multiplyExact(stateCount, actionCount)];
+  }
+
+  @Override
+  public int getStateCount() {
+    return stateCount;
+  }
+
+  @Override
+  public int getActionCount() {
+    return actionCount;
+  }
+
+  @Override
+  public double get(int state, int action) {
+    return values[state * actionCount + action];
+  }
+
+  @Override
+  public void set(int state, int action, double value) {
+    values[state * actionCount + action] = value;
+  }
+
+  @Override
+  public long getByteSize() {
+    return (long) values.length * Double.BYTES;
+  }
+}
@@ -0,0 +1,221 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.logging.*;
+
+/**
+ * An append-only binary log of the transitions that are observed in a learning
+ * environment, which can be replayed for learning without the environment.
+ *
+ * <p> The log starts with a header of {@value #HEADER_SIZE} bytes (magic number,
+ * version, record size, number of status values per record and the fingerprint of the
+ * state space and action space, see {@link LearningEnvironment#getSpaceFingerprint()}),
+ * followed by records of {@value #TRANSITION_SIZE} bytes plus 4 bytes per status value:
+ * </p>
+ * <ul>
+ * <li> 0: the time of the transition in milliseconds since the epoch
+ * <li> 8: the state in which the action was performed
+ * <li> 12: the action
+ * <li> 16: the next state, from which the reward is derived against any goal
+ * <li> 20: the step of the transition within its episode
+ * <li> 24: the inputs of the reward, i.e. the values of the status from which the next
+ * state has been discretized (see {@link Lab#getCurrentStatus(double[])}), as floats, so
+ * that the rewards can be derived again against another discretization
+ * </ul>
+ * <p> The logs of version 1 have no status values, and are read with their records of
+ * {@value #TRANSITION_SIZE} bytes.
+ * </p>
+ * <p> Records are buffered and appended in batches, so the latest records are only
+ * on the storage device after {@link #flush()} or {@link #close()}.
+ * </p>
+ */
+public class ExperienceLog implements AutoCloseable {
+
+  private static final int MAGIC = 0x45584c31; // "EXL1"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 24;
+  private static final int TRANSITION_SIZE = 24;
+  private static final int BATCH_RECORDS = 4096;
+
+  private static final Logger LOGGER = Logger.getLogger(ExperienceLog.class.getName());
+
+  private final FileChannel channel;
+  private final int statusCount;
+  private final ByteBuffer batch;
+
+  /**
+   * The transitions of a log, in columns
+   */
+  public static class Transitions {
+    public final int[] states;
+    public final int[] actions;
+    public final int[] nextStates;
+
+    /**
+     * The status values of the next state of each transition, indexed by
+     * transition * statusCount + value
+     */
+    public final float[] statuses;
+    public final int statusCount;
+    public final int size;
+
+    Transitions(int size, int statusCount) {
+      this.states = new int[size];
+      this.actions = new int[size];
+      this.nextStates = new int[size];
+      this.statuses = new float[size * statusCount];
+      this.statusCount = statusCount;
+      this.size = size;
+    }
+  }
+
+  /**
+   * A {@link ExperienceLog} instance is constructed based on a file, to which records
+   * are appended. The file is created if it does not exist.
+   *
+   * @param file the file of the log
+   * @param spaceFingerprint the fingerprint of the state space and action space of the
+   * learning environment
+   * @param statusCount the number of status values of each transition, e.g.
+   * {@link LearningEnvironment#getStateAxisCount()}
+   * @throws IOException if the file cannot be opened, or if it is the log of a different
+   * state space and action space or of another version
+   */
+  public ExperienceLog(Path file, long spaceFingerprint, int statusCount) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+      StandardOpenOption.WRITE);
+    this.statusCount = statusCount;
+    int recordSize = TRANSITION_SIZE + statusCount * Float.BYTES;
+
+    if (channel.size() == 0) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putInt(recordSize).putInt(statusCount).putLong(spaceFingerprint).flip();
+      channel.write(header, 0);
+    } else {
+      ByteBuffer header;
+      try {
+        header = readHeader(channel);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      if (header.getLong(16) != spaceFingerprint) {
+        channel.close();
+        throw new IOException("The log " + file + " belongs to a different state space and action space");
+      }
+      if (header.getInt(4) != VERSION || header.getInt(8) != recordSize) {
+        channel.close();
+        throw new IOException("The log " + file + " has records of version " + header.getInt(4)
+          + ", the transitions cannot be appended to it");
+      }
+    }
+    this.batch = ByteBuffer.allocateDirect(BATCH_RECORDS * recordSize);
+
+    // records that were only partially written are overwritten
+    long records = (channel.size() - HEADER_SIZE) / recordSize;
+    channel.position(HEADER_SIZE + records * recordSize);
+    LOGGER.info("Appending to the experience log " + file + " with " + records + " transitions");
+  }
+
+  /**
+   * Appends a transition to the log
+   *
+   * @param state the state in which the action was performed
+   * @param action the action
+   * @param nextState the next state
+   * @param step the step of the transition within its episode
+   * @param status the values of the status of the next state, of which the first
+   * status values of the log are appended
+   * @throws IOException if the log cannot be written
+   */
+  public synchronized void append(int state, int action, int nextState, int step, double[] status)
+      throws IOException {
+    if (!batch.hasRemaining()) {
+      flush();
+    }
+    batch.putLong(System.currentTimeMillis()).putInt(state).putInt(action).putInt(nextState).putInt(step);
+    for (int value = 0; value < statusCount; value++) {
+      batch.putFloat((float) status[value]);
+    }
+  }
+
+  /**
+   * Writes the buffered records to the file
+   *
+   * @throws IOException if the log cannot be written
+   */
+  public synchronized void flush() throws IOException {
+    batch.flip();
+    while (batch.hasRemaining()) {
+      channel.write(batch);
+    }
+    batch.clear();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    flush();
+    channel.close();
+  }
+
+  /**
+   * Reads the transitions of a log, by memory-mapping its file. The log of a different
+   * state space is read if its transitions have the given number of status values, from
+   * which their states can be discretized again, e.g. for a state space of the same lab
+   * with another discretization.
+   *
+   * @param file the file of the log
+   * @param spaceFingerprint the fingerprint of the state space and action space of the
+   * learning environment
+   * @param statusCount the number of status values of each transition of the learning
+   * environment, e.g. {@link LearningEnvironment#getStateAxisCount()}
+   * @return the transitions
+   * @throws IOException if the file cannot be read, or if it is the log of a different
+   * state space and action space whose transitions do not have the given number of status
+   * values
+   */
+  public static Transitions read(Path file, long spaceFingerprint, int statusCount) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = readHeader(channel);
+      int recordSize = header.getInt(8);
+      int logStatusCount = header.getInt(4) == 1 ? 0 : header.getInt(12);
+      if (header.getLong(16) != spaceFingerprint && (logStatusCount == 0 || logStatusCount != statusCount)) {
+        throw new IOException("The log " + file + " belongs to a different state space and action space");
+      }
+      int size = (int) ((channel.size() - HEADER_SIZE) / recordSize);
+      MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) size * recordSize);
+
+      Transitions transitions = new Transitions(size, logStatusCount);
+      for (int i = 0; i < size; i++) {
+        int offset = i * recordSize;
+        transitions.states[i] = records.getInt(offset + 8);
+        transitions.actions[i] = records.getInt(offset + 12);
+        transitions.nextStates[i] = records.getInt(offset + 16);
+        for (int value = 0; value < logStatusCount; value++) {
+          transitions.statuses[i * logStatusCount + value] =
+            records.getFloat(offset + TRANSITION_SIZE + value * Float.BYTES);
+        }
+      }
+      return transitions;
+    }
+  }
+
+  /**
+   * Reads and validates the header of a log
+   */
+  private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining() && channel.read(header, header.position()) != -1) {
+    }
+
+    int version = header.getInt(4);
+    if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC || version < 1 || version > VERSION
+        || header.getInt(8) != TRANSITION_SIZE + (version == 1 ? 0 : header.getInt(12) * Float.BYTES)) {
+      throw new IOException("Invalid experience log");
+    }
+    return header;
+  }
+}
@@ -0,0 +1,102 @@
+package tools;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * The choice of the starts of the episodes of a training by exploring starts: each
+ * episode starts by resetting the learning environment to a configuration of its
+ * actuators with a single command (see {@link LearningEnvironment#reset(int)}), instead
+ * of performing random actions, whose start states are biased towards the states that
+ * the random actions reach most easily.
+ *
+ * <p> The configurations are swept towards the under-visited states: each choice draws
+ * {@value #CANDIDATES} configurations uniformly at random, and chooses a configuration
+ * from which no episode has started yet, or else the configuration whose latest start
+ * state has been visited least, i.e. from which the fewest transitions have been
+ * observed in the transition model of the training. Configurations whose latest start
+ * state is a goal state, where an episode ends at once, are only chosen if all the
+ * candidates are.
+ * </p>
+ */
+final class ExploringStarts {
+
+  /**
+   * The number of configurations that are compared for each start
+   */
+  private static final int CANDIDATES = 8;
+
+  private final LearningEnvironment environment;
+  private final TransitionModel model;
+  private final IntPredicate goalStates;
+
+  /**
+   * The latest start state of each configuration from which an episode has started, by
+   * the state of the configuration (see {@link LearningEnvironment#getActuatorConfiguration(int)})
+   */
+  private final Map<Integer, Integer> startStates = new HashMap<>();
+
+  /**
+   * An {@link ExploringStarts} instance is constructed based on a learning environment
+   * that can be reset, the transition model that records the transitions observed in
+   * the environment, and the goal states of the training
+   *
+   * @param environment the learning environment
+   * @param model the transition model
+   * @param goalStates the goal states
+   */
+  ExploringStarts(LearningEnvironment environment, TransitionModel model, IntPredicate goalStates) {
+    this.environment = environment;
+    this.model = model;
+    this.goalStates = goalStates;
+  }
+
+  /**
+   * Chooses the configuration of the actuators from which the next episode starts
+   *
+   * @param random the random number generator of the training
+   * @return the state of the configuration, which is passed to
+   * {@link LearningEnvironment#reset(int)}
+   */
+  int chooseConfiguration(SplittableRandom random) {
+    int stateCount = environment.getStateCount();
+    int best = -1;
+    long bestVisits = Long.MAX_VALUE;
+
+    for (int candidate = 0; candidate < CANDIDATES; candidate++) {
+      int configuration = environment.getActuatorConfiguration(random.nextInt(stateCount));
+      Integer startState = startStates.get(configuration);
+      if (startState == null) {
+        return configuration;
+      }
+
+      long visits = goalStates.test(startState) ? Long.MAX_VALUE - 1 : getVisits(startState);
+      if (visits < bestVisits) {
+        best = configuration;
+        bestVisits = visits;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Records the state in which an episode has started after a reset to a configuration
+   *
+   * @param configuration the configuration
+   * @param startState the state that has been read after the reset
+   */
+  void recordStart(int configuration, int startState) {
+    startStates.put(configuration, startState);
+  }
+
+  /**
+   * Returns the number of transitions that have been observed from a state
+   */
+  private long getVisits(int state) {
+    long visits = 0;
+    for (long mask = environment.getApplicableActionMask(state); mask != 0; mask &= mask - 1) {
+      visits += model.getObservationCount(state, Long.numberOfTrailingZeros(mask));
+    }
+    return visits;
+  }
+}
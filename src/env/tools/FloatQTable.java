@@ -0,0 +1,51 @@
+package tools;
+
+/**
+ * A {@link QTable} that keeps the Q values on the heap in a single array of floats,
+ * in row-major order. The Q values are stored with a precision of about 7 significant
+ * digits, in half the memory of a {@link DoubleQTable}.
+ */
+public final class FloatQTable implements QTable {
+
+  private final int stateCount;
+  private final int actionCount;
+  private final float[] values;
+
+  /**
+   * A {@link FloatQTable} instance is constructed based on the number of states and
+   * actions, with Q values of 0
+   *
+   * @param stateCount the number of states
+   * @param actionCount the number of actions
+   */
+  public FloatQTable(int stateCount, int actionCount) {
+    this.stateCount = stateCount;
+    this.actionCount = actionCount;
+    this.values = new float[Math.multiplyExact(stateCount, actionCount)];
+  }
+
+  @Override
+  public int getStateCount() {
+    return stateCount;
+  }
+
+  @Override
+  public int getActionCount() {
+    return actionCount;
+  }
+
+  @Override
+  public double get(int state, int action) {
+    return values[state * actionCount + action];
+  }
+
+  @Override
+  public void set(int state, int action, double value) {
+    values[state * actionCount + action] = (float) value;
+  }
+
+  @Override
+  public long getByteSize() {
+    return (long) values.length * Float.BYTES;
+  }
+}
@@ -2,20 +2,13 @@ package tools;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.*;
+import java.util.regex.*;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
-import ch.unisg.ics.interactions.wot.td.ThingDescription;
-import ch.unisg.ics.interactions.wot.td.ThingDescription.TDFormat;
-import ch.unisg.ics.interactions.wot.td.affordances.ActionAffordance;
-import ch.unisg.ics.interactions.wot.td.affordances.Form;
-import ch.unisg.ics.interactions.wot.td.affordances.PropertyAffordance;
-import ch.unisg.ics.interactions.wot.td.clients.TDHttpRequest;
-import ch.unisg.ics.interactions.wot.td.clients.TDHttpResponse;
-import ch.unisg.ics.interactions.wot.td.io.TDGraphReader;
-import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
-import ch.unisg.ics.interactions.wot.td.schemas.BooleanSchema;
-import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
-import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
 
 /**
 * An class that extends {@link LearningEnvironment} for representing a learning
@@ -27,17 +20,20 @@ import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
 * Description of the lab environment.
 * </p>
 */
-public class Lab extends LearningEnvironment {
+public class Lab extends LearningEnvironment implements AutoCloseable {
 
   /**
-  * The W3C Web of Things Thing Description used for interacting with the
-  * lab environment
+  * The zones of the lab, as numbered by the affordances of the W3C Web of Things Thing
+  * Description of the lab, e.g. [1,2] for the affordances SetZ1Light, SetZ2Light,
+  * SetZ1Blinds and SetZ2Blinds
   */
-  private ThingDescription td;
+  protected List<Integer> zones = Collections.emptyList();
 
   /**
   * The current state of the lab (and of every state of the lab) is formed as a
-  * a list of 7 integer values: [z1Level, z2Level, z1Light, z2Light, z1Blinds, z2Blinds, sunshine]:
+  * a list of 3N+1 integer values for a lab of N zones:
+  * [z1Level, ..., zNLevel, z1Light, ..., zNLight, z1Blinds, ..., zNBlinds, sunshine],
+  * e.g. [z1Level, z2Level, z1Light, z2Light, z1Blinds, z2Blinds, sunshine] for 2 zones:
   * <ul>
   * <li> z1Level: the level of light in Zone 1
   * <li> z2Level: the level of light in Zone 2
@@ -48,162 +44,297 @@ public class Lab extends LearningEnvironment {
   * <li> sunshine: the level of sunshine out of the lab
   * </ul>
   */
-  protected List<Integer> currentState = Arrays.asList(new Integer[7]);
+  protected int[] currentState = new int[0];
 
   /**
-  * The state of the lab depends on the values of
-  * z1Level, z2Level, z1Light, z2Light, z1Blinds, z2Blinds, sunshine
+  * The values of the status from which the current state has been discretized, in the
+  * order of the axes of the state space
   */
+  protected double[] currentStatus = new double[0];
 
   /**
-  * z1Level: the level of light in Zone 1
-  * Possible values: 0,1,2,3
-  * Respective keys: 0,1,2,3
+  * The actions that are applicable in each state, indexed by the position of the
+  * state in the state space
   */
-  private static final HashMap<Integer,Integer> z1Level = new HashMap<>();
+  private int[][] applicableActions;
 
   /**
-  * z2Level: the level of light in Zone 2
-  * Possible values: 0,1,2,3
-  * Respective keys: 0,1,2,3
+  * The actions that are applicable in each state as unmodifiable lists, indexed
+  * by the position of the state in the state space
   */
-  private static final HashMap<Integer,Integer> z2Level = new HashMap<>();
+  private List<List<Integer>> applicableActionLists;
 
   /**
-  * z1Light: the status of the lights in Zone 1
-  * Possible values: false, true
-  * Respective keys: 0,1
+  * The masks of the actions that are applicable in each state, indexed by the position
+  * of the state in the state space
   */
-  private static final HashMap<Integer,Boolean> z1Light = new HashMap<>();
+  private long[] applicableActionMasks;
 
   /**
-  * z2Light: the status of the lights in Zone 2
-  * Possible values: false, true
-  * Respective keys: 0,1
+  * The precomputed applicable actions of each state, which are shared by the labs of a
+  * pool that have the same state space and whose actions are applicable on the same
+  * substates (see {@link LabPool})
   */
-  private static final HashMap<Integer,Boolean> z2Light = new HashMap<>();
+  static final class ApplicableActionTable {
+    final int[][] actions;
+    final List<List<Integer>> actionLists;
+    final long[] actionMasks;
+
+    ApplicableActionTable(int[][] actions, List<List<Integer>> actionLists, long[] actionMasks) {
+      this.actions = actions;
+      this.actionLists = actionLists;
+      this.actionMasks = actionMasks;
+    }
+  }
 
   /**
-  * z1Blinds: the status of the blinds in Zone 1
-  * Possible values: false, true
-  * Respective keys: 0,1
+  * The state axis and the substate on which each action is applicable, indexed by action
+  */
+  private int[] actionAxes;
+  private int[] actionSubstates;
+
+  /**
+  * The largest state space for which the applicable actions of each state are
+  * precomputed. The applicable actions of larger state spaces are derived from the
+  * substates of each state when they are needed.
+  */
+  private static final int APPLICABLE_ACTION_TABLE_LIMIT = 1 << 16;
+
+  /**
+  * The discretization of the light levels and of the sunshine
+  */
+  protected final Discretization discretization;
+
+  /**
+  * The state of the lab depends on the values of
+  * zNLevel, zNLight and zNBlinds of each zone N, and of sunshine
   */
-  private static final HashMap<Integer,Boolean> z1Blinds = new HashMap<>();
 
   /**
-  * z2Blinds: the status of the blinds in Zone 2
+  * zNLevel: the level of light in Zone N
+  * Possible values: the bins of the discretization of the light level in Zone N,
+  * by default 0,1,2,3 (see {@link Discretization})
+  *
+  * zNLight: the status of the lights in Zone N
+  * Possible values: false, true
+  * Respective keys: 0,1
+  *
+  * zNBlinds: the status of the blinds in Zone N
   * Possible values: false, true
   * Respective keys: 0,1
+  *
+  * sunshine: the level of sunshine out of the lab
+  * Possible values: the bins of the discretization of the sunshine, by default 0,1,2,3
   */
-  private static final HashMap<Integer,Boolean> z2Blinds = new HashMap<>();
 
   /**
-  * sunshine: the level of sunshine out of the lab
-  * Possible values: 0,1,2,3
-  * Respective keys: 0,1,2,3
+  * The semantic types of the affordances that set the lights or the blinds of a zone,
+  * e.g. "http://example.org/was#SetZ1Light"
   */
-  private static final HashMap<Integer,Integer> sunshine = new HashMap<>();
+  static final Pattern ZONE_ACTION_TYPE = Pattern.compile("http://example\\.org/was#SetZ(\\d+)(Light|Blinds)");
 
-  private static final Logger LOGGER = Logger.getLogger(Lab.class.getName());
+  /**
+  * The largest number of zones, such that the actions of the lab fit in the masks of
+  * {@link #getApplicableActionMask(int)}
+  */
+  public static final int MAX_ZONES = Long.SIZE / 4;
 
-  static {
+  /**
+  * The update period of the lab in milliseconds, i.e. the time between two ticks, that is
+  * assumed until the period has been measured from the ticks of the lab (see
+  * {@link StatusReader}), or if the lab has no status property
+  */
+  private static final long DEFAULT_TICK_MILLIS = 1000;
 
-    // possible substates for z1Level, z2Level, sunshine
-    for (int i=0; i<4; i++) {
-      z1Level.put(i,i);
-      z2Level.put(i,i);
-      sunshine.put(i,i);
-    }
+  /**
+  * The transport used for actuating the lab and reading its status
+  */
+  private LabTransport transport;
 
-    // possible substates for z1Light
-    z1Light.put(0, false);
-    z1Light.put(1, true);
+  /**
+  * The reader of the status of the lab, which is aware of the ticks of the lab
+  */
+  private StatusReader statusReader;
 
-    // possible substates for z2Light
-    z2Light.put(0, false);
-    z2Light.put(1, true);
+  /**
+  * The method, the target and the content type of the request that sets all the lights
+  * and blinds of the lab at once, or null if the lab does not support it
+  */
+  private String[] resetForm;
+
+  /**
+  * The pool of the lab if it is one of many labs that are managed in the same JVM, e.g.
+  * the rooms of a building, or null
+  */
+  private final LabPool pool;
+
+  /**
+  * The round trip times of the actions performed on the lab
+  */
+  protected final LatencyHistogram actionLatencies = new LatencyHistogram();
 
-    // possible substates for z1Blinds
-    z1Blinds.put(0, false);
-    z1Blinds.put(1, true);
+  /**
+  * The round trip times of the status reads of the lab
+  */
+  protected final LatencyHistogram statusLatencies = new LatencyHistogram();
 
-    // possible substates for z2Blinds
-    z2Blinds.put(0, false);
-    z2Blinds.put(1, true);
+  private static final Logger LOGGER = Logger.getLogger(Lab.class.getName());
 
-    };
+    /**
+    * A {@link Lab} instance is constructed without a W3C Web of Things Thing
+    * Description by subclasses that manage the lab in-process. Such subclasses
+    * are responsible for creating the action space.
+    *
+    * @param zoneCount the number of zones, which are numbered from 1
+    * @param discretization the discretization of the light levels and of the sunshine
+    */
+    protected Lab(int zoneCount, Discretization discretization) {
+      this(zoneCount, discretization, null);
+    }
+
+    /**
+    * A {@link Lab} instance is constructed without a W3C Web of Things Thing
+    * Description by subclasses that manage the lab in-process, as one of the labs of a
+    * pool (see {@link #Lab(String, Discretization, LabPool)})
+    *
+    * @param zoneCount the number of zones, which are numbered from 1
+    * @param discretization the discretization of the light levels and of the sunshine
+    * @param pool the pool of the lab, or null
+    */
+    Lab(int zoneCount, Discretization discretization, LabPool pool) {
+      this.discretization = discretization;
+      this.pool = pool;
+      this.zones = ContiguousSet.create(Range.closed(1, zoneCount), DiscreteDomain.integers()).asList();
+      createStateSpace();
+    }
 
     /**
     * A {@link Lab} instance is constructed based on the URL of the W3C Web of Things
-    * Thing Description of a lab (simulated or real)
+    * Thing Description of a lab (simulated or real), with the default discretization
     *
     * @param url The location of the W3C Web of Things Thing Description
     */
     public Lab(String url) {
+      this(url, Discretization.DEFAULT);
+    }
 
-      try {
+    /**
+    * A {@link Lab} instance is constructed based on the URL of the W3C Web of Things
+    * Thing Description of a lab (simulated or real), and the discretization of its status.
+    * The zones of the lab are the zones whose lights or blinds can be set through the
+    * action affordances of the Thing Description. The lab is constructed from the
+    * description of its Thing Description in the {@link ThingDescriptionCache}, so the
+    * Thing Description is only fetched and parsed on the first start, and the status of
+    * the lab is only read when it is first needed.
+    *
+    * @param url The location of the W3C Web of Things Thing Description
+    * @param discretization the discretization of the light levels and of the sunshine
+    * @throws IllegalArgumentException if the lab has more than {@value #MAX_ZONES} zones
+    * @throws IllegalStateException if the Thing Description cannot be read
+    */
+    public Lab(String url, Discretization discretization) {
+      this(url, discretization, null);
+    }
+
+    /**
+    * A {@link Lab} instance is constructed based on the URL of the W3C Web of Things
+    * Thing Description of a lab (simulated or real), the discretization of its status, and
+    * the pool of the lab if it is one of many labs that are managed in the same JVM. A
+    * pooled lab reuses the description of the Thing Description that has been read for
+    * another lab of its pool with the same URL, the precomputed tables of the labs of its
+    * pool that have the same shape, and the HTTP client of the other pooled labs (see
+    * {@link LabPool}).
+    *
+    * @param url The location of the W3C Web of Things Thing Description
+    * @param discretization the discretization of the light levels and of the sunshine
+    * @param pool the pool of the lab, or null
+    * @throws IllegalArgumentException if the lab has more than {@value #MAX_ZONES} zones
+    * @throws IllegalStateException if the Thing Description cannot be read
+    */
+    Lab(String url, Discretization discretization, LabPool pool) {
 
-        // Read the Thing Description from the URL
-        this.td = TDGraphReader.readFromURL(TDFormat.RDF_TURTLE, url);
+      this.discretization = discretization;
+      this.pool = pool;
 
-        // Create the state space
-        createStateSpace();
-        LOGGER.info("The lab has a state space of n="+ stateSpace.size());
+      // Read the description of the Thing Description, from the cache if it has been cached
+      LabDescription description;
+      try {
+        description = pool != null ? pool.getDescription(url) : ThingDescriptionCache.getDefault().getDescription(url);
+      } catch (IOException e) {
+        throw new IllegalStateException("The Thing Description of the lab could not be read from " + url + ": "
+          + e.getMessage(), e);
+      }
 
-        // Print the states of the state space
-        LOGGER.info(String.valueOf(stateSpace));
+      // The zones of the lab
+      this.zones = description.getZones();
+      LOGGER.info("The lab has " + zones.size() + " zones: " + zones);
 
-        // Create the action space
-        createActionSpace();
-        LOGGER.info("The lab has an action space of m=" + actionSpace.size());
+      createStateSpace();
 
-        // Print the actions of the action space
-        for (Action action : actionSpace.values()) {
-          LOGGER.info(action.toString());
-        }
+      // Create the transport for reading the status and performing actions
+      createTransport(description);
 
-        // Read the current state
-        readCurrentState();
-        LOGGER.info("The lab current state: " + this.currentState);
+      LOGGER.info("The lab has a state space of n="+ getStateSpaceSize());
 
-      } catch (IOException e) {
-        LOGGER.severe(e.getMessage());
+      // Create the action space
+      createActionSpace(description);
+      this.resetForm = description.getResetForm();
+      LOGGER.info("The lab has an action space of m=" + actionSpace.size());
+
+      // Print the actions of the action space
+      for (Action action : actionSpace.values()) {
+        LOGGER.fine(action.toString());
       }
+
+      // The current state is read when it is first needed, e.g. by the first decision
     }
 
     /**
-    * @see {@link LearningEnvironment#getCompatibleStates(List)}
+    * Returns the number of zones of the lab
     */
-    @Override
-    public List<Integer> getCompatibleStates(List<Object> stateDescription) {
-
-      List<Integer> compatibleStates = new ArrayList<>();
-      List<List<Integer>> stateList = new ArrayList<>(stateSpace);
-      
-      for(int i = 0; i < stateDescription.size(); i++) {
-        if (stateDescription.get(i) instanceof Byte) {
-          stateDescription.set(i, ((Byte) stateDescription.get(i)).intValue());
-        }
-      }
+    public int getZoneCount() {
+      return zones.size();
+    }
 
-      for (int i=0; i<stateList.size(); i++) {
-        List<Integer> state = stateList.get(i);
+    /**
+    * Returns the zones of the lab, as numbered by the Thing Description (e.g. [1,2])
+    */
+    public List<Integer> getZones() {
+      return Collections.unmodifiableList(zones);
+    }
 
-        List<Object> substates = new ArrayList<>();
+    /**
+    * Returns the axis of the state space of the light level of a zone
+    *
+    * @param zone the zone, starting from 0 for the first zone
+    */
+    public int getLightLevelAxis(int zone) {
+      return zone;
+    }
 
-        substates.add(Lab.z1Level.get(state.get(0)));
-        substates.add(Lab.z2Level.get(state.get(1)));
-        substates.add(Lab.z1Light.get(state.get(2)));
-        substates.add(Lab.z2Light.get(state.get(3)));
-        substates.add(Lab.z1Blinds.get(state.get(4)));
-        substates.add(Lab.z2Blinds.get(state.get(5)));
-        substates.add(Lab.sunshine.get(state.get(6)));
+    /**
+    * Returns the axis of the state space of the status of the lights of a zone
+    *
+    * @param zone the zone, starting from 0 for the first zone
+    */
+    public int getLightAxis(int zone) {
+      return zones.size() + zone;
+    }
 
-        if (Collections.indexOfSubList(substates, stateDescription) != -1){
-          compatibleStates.add(i);
-        };
-      }
-      return compatibleStates;
+    /**
+    * Returns the axis of the state space of the status of the blinds of a zone
+    *
+    * @param zone the zone, starting from 0 for the first zone
+    */
+    public int getBlindsAxis(int zone) {
+      return 2 * zones.size() + zone;
+    }
+
+    /**
+    * Returns the axis of the state space of the sunshine
+    */
+    public int getSunshineAxis() {
+      return 3 * zones.size();
     }
 
     /**
@@ -211,48 +342,118 @@ public class Lab extends LearningEnvironment {
     */
     @Override
     public int readCurrentState() {
-      Optional<PropertyAffordance> p = this.td.getFirstPropertyBySemanticType("https://example.org/was#Status");
-
-      if (p.isPresent()) {
-
-        Optional<Form> f = p.get().getFirstFormForOperationType(TD.readProperty);
-        DataSchema ds = p.get().getDataSchema();
+      if (transport == null) {
+        LOGGER.severe("The lab has no status property");
+        return encodeState(this.currentState);
+      }
 
-        if (f.isPresent()) {
+      try {
+        // the status has the slots of the axes of the state space, in the same order
+        double[] status = statusReader.read();
+        checkStatus(status);
 
-          TDHttpRequest request = new TDHttpRequest(f.get(), TD.readProperty);
+        discretizeStatus(status, currentState);
+        System.arraycopy(status, 0, currentStatus, 0, currentStatus.length);
 
-          try {
-            TDHttpResponse response = request.execute();
-            Map<String, Object> status = response.getPayloadAsObject((ObjectSchema) ds);
+      } catch (IOException e) {
+        LOGGER.severe(e.getMessage());
+      }
 
-            int z1Level = discretizeLightLevel((Double) status.get("http://example.org/was#Z1Level"));
-            int z2Level = discretizeLightLevel((Double) status.get("http://example.org/was#Z2Level"));
+      return encodeState(this.currentState);
+    }
 
-            boolean z1Light = (Boolean) status.get("http://example.org/was#Z1Light");
-            boolean z2Light = (Boolean) status.get("http://example.org/was#Z2Light");
+    /**
+    * Discretizes the values of a status of the lab to the values of the axes of a state
+    *
+    * @param status the values of the status, in the order of the axes of the state space
+    * (see {@link #getCurrentStatus(double[])})
+    * @param substates the array that receives the values of the axes of the state
+    */
+    private void discretizeStatus(double[] status, int[] substates) {
+      for (int zone = 0; zone < zones.size(); zone++) {
+        int lightAxis = getLightAxis(zone);
+        int blindsAxis = getBlindsAxis(zone);
+        substates[zone] = discretizeLightLevel(zone, status[zone]);
+        substates[lightAxis] = status[lightAxis] == 1 ? 1 : 0;
+        substates[blindsAxis] = status[blindsAxis] == 1 ? 1 : 0;
+      }
+      substates[getSunshineAxis()] = discretizeSunshine(status[getSunshineAxis()]);
+    }
 
-            boolean z1Blinds = (Boolean) status.get("http://example.org/was#Z1Blinds");
-            boolean z2Blinds = (Boolean) status.get("http://example.org/was#Z2Blinds");
+    /**
+    * Returns the state of a status of the lab, with the discretization of the lab, e.g.
+    * for a status that has been logged against another discretization (see
+    * {@link ExperienceLog})
+    *
+    * @param status the values of the status, in the order of the axes of the state space
+    * (see {@link #getCurrentStatus(double[])})
+    * @param substates the array that receives the values of the axes of the state
+    * @return the state
+    */
+    public int encodeStatus(double[] status, int[] substates) {
+      discretizeStatus(status, substates);
+      return encodeState(substates);
+    }
 
-            int sunshine = discretizeSunshine((Double) status.get("http://example.org/was#Sunshine"));
+    /**
+    * Checks that a status has a value for each axis of the state space. A missing value is
+    * decoded to NaN, which would otherwise be discretized to the last bin of its axis.
+    *
+    * @throws IOException if a value is missing
+    */
+    private void checkStatus(double[] status) throws IOException {
+      for (int axis = 0; axis < currentState.length; axis++) {
+        if (Double.isNaN(status[axis])) {
+          throw new IOException("The status of the lab has no value of " + getStatusTypes(zones)[axis]
+            + ", the state is not updated");
+        }
+      }
+    }
 
-            currentState.set(0, z1Level);
-            currentState.set(1, z2Level);
-            currentState.set(2, z1Light ? 1 : 0);
-            currentState.set(3, z2Light ? 1 : 0);
-            currentState.set(4, z1Blinds ? 1 : 0);
-            currentState.set(5, z2Blinds ? 1 : 0);
-            currentState.set(6, sunshine);
+    /**
+    * Returns the values of the status of the lab from which the current state has been
+    * discretized by the latest {@link #readCurrentState()}: the light level of each zone
+    * in lux, whether the lights and the blinds of each zone are on or raised (1 or 0), and
+    * the sunshine in lux, in the order of the axes of the state space
+    *
+    * @param status the array that receives the values, of length {@link #getStateAxisCount()}
+    * @return the array
+    */
+    public double[] getCurrentStatus(double[] status) {
+      System.arraycopy(currentStatus, 0, status, 0, currentStatus.length);
+      return status;
+    }
 
-          } catch (IOException e) {
-            LOGGER.severe(e.getMessage());
-          }
-        }
+    /**
+    * Returns the description of a state, with the light level of each zone, whether the
+    * light of each zone is on, whether the blinds of each zone are raised, and the
+    * sunshine, e.g. [2,3,true,false,false,true,1] for 2 zones. The description is
+    * accepted by {@link LearningEnvironment#getState(List)}.
+    *
+    * @param state the state
+    * @return the description of the state
+    */
+    public Object[] describeState(int state) {
+      Object[] description = new Object[stateRadices.length];
+      for (int axis = 0; axis < description.length; axis++) {
+        int substate = getSubstate(state, axis);
+        boolean binary = axis >= getLightAxis(0) && axis < getSunshineAxis();
+        description[axis] = binary ? (Object) (substate == 1) : (Object) substate;
       }
+      return description;
+    }
 
-      List<List<Integer>> stateList = new ArrayList<>(stateSpace);
-      return stateList.indexOf(this.currentState);
+    /**
+    * Returns the time until the status of the next tick of the lab is expected to be
+    * readable, or the default update period of the lab if the lab has no status property
+    *
+    * @return the time in milliseconds
+    */
+    public long getMillisUntilNextTick() {
+      if (statusReader == null) {
+        return DEFAULT_TICK_MILLIS;
+      }
+      return TimeUnit.NANOSECONDS.toMillis(statusReader.getNanosUntilNextTick() + 999_999);
     }
 
     /**
@@ -260,24 +461,48 @@ public class Lab extends LearningEnvironment {
     */
     @Override
     public List<Integer> getApplicableActions(int state) {
+      if (applicableActionLists == null) {
+        List<Integer> actions = new ArrayList<>();
+        for (int action : getApplicableActionArray(state)) {
+          actions.add(action);
+        }
+        return actions;
+      }
+      return applicableActionLists.get(state);
+    }
 
-      List<Integer> applicableActions = new ArrayList<>();
-      List<List<Integer>> stateList = new ArrayList<>(stateSpace);
-      List<Integer> st = stateList.get(state);
-
-      for (int action : actionSpace.keySet()) {
-
-        Action a = actionSpace.get(action);
-
-        int stateAxis = a.getApplicableOnStateAxis();
-        int stateValue = a.getApplicableOnStateValue();
-
-        if (st.get(stateAxis) == stateValue) {
-          applicableActions.add(action);
+    /**
+    * @see {@link LearningEnvironment#getApplicableActionArray(int)}
+    */
+    @Override
+    public int[] getApplicableActionArray(int state) {
+      if (applicableActions == null) {
+        long mask = getApplicableActionMask(state);
+        int[] actions = new int[Long.bitCount(mask)];
+        for (int i = 0; i < actions.length; i++, mask &= mask - 1) {
+          actions[i] = Long.numberOfTrailingZeros(mask);
         }
+        return actions;
       }
+      return applicableActions[state];
+    }
 
-      return applicableActions;
+    /**
+    * @see {@link LearningEnvironment#getApplicableActionMask(int)}
+    */
+    @Override
+    public long getApplicableActionMask(int state) {
+      if (applicableActionMasks == null) {
+        long key = getStateKey(state);
+        long mask = 0L;
+        for (int action = 0; action < actionAxes.length; action++) {
+          if (getKeySubstate(key, actionAxes[action]) == actionSubstates[action]) {
+            mask |= 1L << action;
+          }
+        }
+        return mask;
+      }
+      return applicableActionMasks[state];
     }
 
     /**
@@ -285,148 +510,317 @@ public class Lab extends LearningEnvironment {
     */
     @Override
     public void performAction(int action) {
-      Action a = actionSpace.get(action);
-
-      try {
-        a.getRequest().execute();
-        LOGGER.info(a.getRequest().toString());
-      } catch (IOException e) {
-        LOGGER.severe(e.getMessage());
+      if (transport == null) {
+        LOGGER.severe("The lab has no status property");
+        return;
       }
 
+      transport.performAction(action);
+      statusReader.notifyAction();
     }
 
     /**
-    * Creates the action space of the lab
+    * Closes the transport of the lab, and the HTTP client of the transport unless it is
+    * shared by the pooled labs. The lab is not actuated or read afterwards.
     */
-    private void createActionSpace() {
-
-      this.affordanceTypes = Arrays.asList(
-      "http://example.org/was#SetZ1Light",
-      "http://example.org/was#SetZ2Light",
-      "http://example.org/was#SetZ1Blinds",
-      "http://example.org/was#SetZ2Blinds"
-      );
-
-      for (String affType : affordanceTypes) {
+    @Override
+    public void close() {
+      if (transport != null) {
+        transport.close();
+      }
+    }
 
-        Optional<ActionAffordance> a = this.td.getFirstActionBySemanticType(affType);
+    /**
+    * Returns whether the lab can be reset, i.e. whether its Thing Description has an action
+    * that sets all the lights and blinds of the lab at once
+    *
+    * @see {@link LearningEnvironment#supportsReset()}
+    */
+    @Override
+    public boolean supportsReset() {
+      return transport != null && resetForm != null;
+    }
 
-        if (a.isPresent()) {
+    /**
+    * Sets all the lights and blinds of the lab to their values in a state with a single
+    * request, which is followed by a status read as an action
+    *
+    * @see {@link LearningEnvironment#reset(int)}
+    */
+    @Override
+    public void reset(int state) {
+      if (!supportsReset()) {
+        throw new UnsupportedOperationException("The lab cannot be reset");
+      }
+      transport.performCommand(resetForm[0], resetForm[1], resetForm[2], getActuatorValues(state));
+      statusReader.notifyAction();
+    }
 
-          Optional<Form> f = a.get().getFirstFormForOperationType(TD.invokeAction);
-          Optional<DataSchema> ds = a.get().getInputSchema();
+    /**
+    * Returns the values of the lights and blinds of the lab in a state, by the payload tag
+    * of the actions that set them, e.g. {"Z1Light":true,"Z2Light":false,...}
+    *
+    * @param state the state
+    */
+    protected Map<String, Boolean> getActuatorValues(int state) {
+      Map<String, Boolean> values = new LinkedHashMap<>();
+      for (Action action : actionSpace.values()) {
+        values.put((String) action.getPayloadTags()[0], getSubstate(state, action.getApplicableOnStateAxis()) == 1);
+      }
+      return values;
+    }
 
-          if (f.isPresent() && ds.isPresent()) {
+    /**
+    * Creates the action space of the lab from the requests of the actions of its
+    * description
+    */
+    private void createActionSpace(LabDescription description) {
 
-            Map<String, DataSchema> props = ((ObjectSchema) ds.get()).getProperties();
-            Map<String, Object> payload = new HashMap<>();
+      this.affordanceTypes = getZoneAffordanceTypes(zones);
 
-            for (String propName : props.keySet()) {
+      for (LabDescription.ActionRequest request : description.getActions()) {
+        Action action = new Action(request.affordanceType, new Object[]{request.propertyName},
+          new Object[]{request.value}, request.request);
+        if (transport != null) {
+          transport.registerAction(actionSpace.size(), action, request.method, request.target, request.contentType);
+        }
+        actionSpace.put(actionSpace.size(), action);
+      }
+      setApplicableActions();
+    }
 
-              DataSchema propDs = props.get(propName);
+    /**
+    * Returns the semantic types of the affordances that set the lights and the blinds of
+    * the zones of a lab, in the order of the actions of the action space: the lights of
+    * each zone, and then the blinds of each zone
+    *
+    * @param zones the zones of the lab
+    * @return the semantic types, e.g. [SetZ1Light, SetZ2Light, SetZ1Blinds, SetZ2Blinds]
+    */
+    protected static List<String> getZoneAffordanceTypes(List<Integer> zones) {
+      List<String> types = new ArrayList<>();
+      for (String property : Arrays.asList("Light", "Blinds")) {
+        for (int zone : zones) {
+          types.add("http://example.org/was#SetZ" + zone + property);
+        }
+      }
+      return types;
+    }
 
-              if (propDs instanceof BooleanSchema) {
-                for (boolean propValue : Arrays.asList(false, true)) {
-                  payload.put(propName, propValue);
-                  TDHttpRequest request = new TDHttpRequest(f.get(), TD.invokeAction);
-                  request.setObjectPayload((ObjectSchema) ds.get(), payload);
-                  Action action = new Action(affType, new Object[]{propName}, new Object[]{propValue}, request);
-                  actionSpace.put(actionSpace.size(), action);
-                }
-              }
-            }
-          }
+    /**
+    * Returns the semantic types of the values of the status of a lab, in the order of
+    * the slots of the compiled status schema: the values of the axes of the state space
+    * followed by the hour
+    *
+    * @param zones the zones of the lab
+    */
+    static String[] getStatusTypes(List<Integer> zones) {
+      List<String> types = new ArrayList<>();
+      for (String property : Arrays.asList("Level", "Light", "Blinds")) {
+        for (int zone : zones) {
+          types.add("http://example.org/was#Z" + zone + property);
         }
       }
-      setApplicableActions();
+      types.add("http://example.org/was#Sunshine");
+      types.add("http://example.org/was#Hour");
+      return types.toArray(new String[0]);
+    }
+
+    /**
+    * Creates the transport of the lab, based on the status property of its description
+    */
+    private void createTransport(LabDescription description) {
+      if (description.getStatusTarget() != null) {
+        StatusSchema statusSchema = new StatusSchema(description.getStatusPropertyNames());
+        this.transport = new LabTransport(description.getStatusTarget(), statusSchema, actionLatencies,
+          statusLatencies, pool != null);
+        // the hour is the last slot, and advances on every tick of the lab
+        this.statusReader = new StatusReader(transport, statusSchema.getSlotCount() - 1, DEFAULT_TICK_MILLIS,
+          DEFAULT_TICK_MILLIS);
+      }
     }
 
     /**
-    * Maps lux values to light levels:
+    * Maps lux values to light levels with the discretization of the light level in
+    * Zone 1, by default:
     * lux < 50 -> level 0
     * lux in [50,100) -> level 1
     * lux in [100,300) -> level 2
     * lux >= 300 -> level 3
     */
     public int discretizeLightLevel(Double value) {
-      if (value < 50) {
-        return 0;
-      } else if (value < 100) {
-        return 1;
-      } else if (value < 300) {
-        return 2;
-      }
-      return 3;
+      return discretizeLightLevel(0, value);
+    }
+
+    /**
+    * Maps lux values to light levels with the discretization of the light level in a zone
+    *
+    * @param zone the zone, starting from 0 for Zone 1
+    * @param value the light level in lux
+    */
+    public int discretizeLightLevel(int zone, double value) {
+      return discretization.discretizeLightLevel(zone, value);
     }
 
     /**
-    * Maps lux values to light levels:
+    * Maps lux values to sunshine levels with the discretization of the sunshine, by default:
     * lux < 50 -> level 0
     * lux in [50,200) -> level 1
     * lux in [200,700) -> level 2
     * lux >= 700 -> level 3
     */
     public int discretizeSunshine(Double value) {
-      if (value < 50) {
-        return 0;
-      } else if (value < 200) {
-        return 1;
-      } else if (value < 700) {
-        return 2;
-      }
-      return 3;
+      return discretization.discretizeSunshine(value);
+    }
+
+    /**
+    * Returns the discretization of the light levels and of the sunshine
+    */
+    public Discretization getDiscretization() {
+      return discretization;
+    }
+
+    /**
+    * Returns the fingerprint of the state space and action space, which also depends on
+    * the boundaries of the discretization
+    *
+    * @see {@link LearningEnvironment#getSpaceFingerprint()}
+    */
+    @Override
+    public long getSpaceFingerprint() {
+      return fingerprint(super.getSpaceFingerprint() + "|" + discretization);
+    }
+
+    /**
+    * Returns the round trip times of the actions performed on the lab
+    */
+    public LatencyHistogram getActionLatencies() {
+      return actionLatencies;
+    }
+
+    /**
+    * Returns the round trip times of the status reads of the lab
+    */
+    public LatencyHistogram getStatusLatencies() {
+      return statusLatencies;
     }
 
     /**
     * Creates the state space of the lab
     */
     private void createStateSpace() {
-      this.stateSpace = Sets.cartesianProduct(
-                    Collections.unmodifiableSet(z1Level.keySet()),
-                    Collections.unmodifiableSet(z2Level.keySet()),
-                    Collections.unmodifiableSet(z1Light.keySet()),
-                    Collections.unmodifiableSet(z2Light.keySet()),
-                    Collections.unmodifiableSet(z1Blinds.keySet()),
-                    Collections.unmodifiableSet(z2Blinds.keySet()),
-                    Collections.unmodifiableSet(sunshine.keySet())
-                    );
+      int zoneCount = zones.size();
+      int[] radices = new int[3 * zoneCount + 1];
+      List<Set<Integer>> axes = new ArrayList<>();
+
+      for (int zone = 0; zone < zoneCount; zone++) {
+        radices[getLightLevelAxis(zone)] = discretization.getLightLevelBinCount(zone);
+        radices[getLightAxis(zone)] = 2;
+        radices[getBlindsAxis(zone)] = 2;
+      }
+      radices[getSunshineAxis()] = discretization.getSunshineBinCount();
+
+      setStateRadices(radices);
+      this.currentState = new int[radices.length];
+      this.currentStatus = new double[radices.length];
+
+      // the states are only enumerated for state spaces that can be listed
+      if (getStateSpaceSize() <= SUBSTATE_INDEX_LIMIT) {
+        for (int radix : radices) {
+          axes.add(substates(radix));
+        }
+        this.stateSpace = Sets.cartesianProduct(axes);
+      }
     }
 
+    /**
+    * Creates the substate index of the state space, which is shared by the labs of the
+    * pool of the lab that have the same state space
+    */
+    @Override
+    protected BitSet[][] createSubstateIndex(int stateCount) {
+      return pool != null
+        ? pool.getSubstateIndex(Arrays.toString(stateRadices), () -> super.createSubstateIndex(stateCount))
+        : super.createSubstateIndex(stateCount);
+    }
 
     /**
-    * Returns the action that is applicable based on a given substate
+    * Returns the substates 0, 1, ..., count-1 of an axis
     */
-    private Action getApplicableAction(String stateAxis, Boolean stateValue) {
-      return actionSpace.values()
-        .stream().filter( v ->
-          stateAxis.equals(v.getActionTag()) &&
-          Arrays.asList(v.getPayload()).contains(stateValue))
-        .findFirst().get();
+    private static Set<Integer> substates(int count) {
+      return ContiguousSet.create(Range.closedOpen(0, count), DiscreteDomain.integers());
     }
 
     /**
-    * Set the applicable actions for each substate
+    * Set the applicable actions for each substate: an action that sets the lights or the
+    * blinds of a zone to true is applicable when they are false, and vice versa
     */
-    private void setApplicableActions() {
+    protected void setApplicableActions() {
+
+      for (Action action : actionSpace.values()) {
+        Matcher matcher = ZONE_ACTION_TYPE.matcher(action.getActionTag());
 
-      Action z1LightOnValidAction = getApplicableAction("http://example.org/was#SetZ1Light", true);
-      Action z1LightOffValidAction = getApplicableAction("http://example.org/was#SetZ1Light", false);
-      Action z2LightOnValidAction = getApplicableAction("http://example.org/was#SetZ2Light", true);
-      Action z2LightOffValidAction = getApplicableAction("http://example.org/was#SetZ2Light", false);
-      Action z1BlindsUpValidAction = getApplicableAction("http://example.org/was#SetZ1Blinds", true);
-      Action z1BlindsDownValidAction = getApplicableAction("http://example.org/was#SetZ1Blinds", false);
-      Action z2BlindsUpValidAction = getApplicableAction("http://example.org/was#SetZ2Blinds", true);
-      Action z2BlindsDownValidAction = getApplicableAction("http://example.org/was#SetZ2Blinds", false);
+        if (matcher.matches()) {
+          int zone = zones.indexOf(Integer.valueOf(matcher.group(1)));
+          int axis = "Light".equals(matcher.group(2)) ? getLightAxis(zone) : getBlindsAxis(zone);
+          action.setApplicableOn(axis, Boolean.TRUE.equals(action.getPayload()[0]) ? 0 : 1);
+        }
+      }
 
+      createApplicableActionTable();
+    }
 
-      z1LightOnValidAction.setApplicableOn(2, 0);
-      z1LightOffValidAction.setApplicableOn(2, 1);
-      z2LightOnValidAction.setApplicableOn(3, 0);
-      z2LightOffValidAction.setApplicableOn(3, 1);
-      z1BlindsUpValidAction.setApplicableOn(4, 0);
-      z1BlindsDownValidAction.setApplicableOn(4, 1);
-      z2BlindsUpValidAction.setApplicableOn(5, 0);
-      z2BlindsDownValidAction.setApplicableOn(5, 1);
+    /**
+    * Precomputes the actions that are applicable in each state, unless the state space
+    * is larger than {@value #APPLICABLE_ACTION_TABLE_LIMIT} states. The table is shared
+    * with the labs of the same shape, e.g. the rooms of a building that have the same
+    * zones, so that each lab does not hold a copy of it.
+    */
+    private void createApplicableActionTable() {
+      this.actionAxes = new int[actionSpace.size()];
+      this.actionSubstates = new int[actionSpace.size()];
+      for (int action = 0; action < actionSpace.size(); action++) {
+        actionAxes[action] = actionSpace.get(action).getApplicableOnStateAxis();
+        actionSubstates[action] = actionSpace.get(action).getApplicableOnStateValue();
+      }
+
+      int stateCount = getStateCount();
+      if (stateCount > APPLICABLE_ACTION_TABLE_LIMIT) {
+        LOGGER.info("The applicable actions of the " + stateCount + " states are derived when needed");
+        return;
+      }
+      String shape = Arrays.toString(stateRadices) + Arrays.toString(actionAxes) + Arrays.toString(actionSubstates);
+      ApplicableActionTable table = pool != null
+        ? pool.getApplicableActionTable(shape, () -> computeApplicableActionTable(stateCount))
+        : computeApplicableActionTable(stateCount);
+      this.applicableActions = table.actions;
+      this.applicableActionLists = table.actionLists;
+      this.applicableActionMasks = table.actionMasks;
+    }
+
+    /**
+    * Computes the actions that are applicable in each state
+    */
+    private ApplicableActionTable computeApplicableActionTable(int stateCount) {
+      int[][] actionArrays = new int[stateCount][];
+      List<List<Integer>> actionLists = new ArrayList<>(stateCount);
+      long[] actionMasks = new long[stateCount];
+
+      for (int state = 0; state < stateCount; state++) {
+        List<Integer> actions = new ArrayList<>();
+
+        for (int action : actionSpace.keySet()) {
+          Action a = actionSpace.get(action);
+
+          if (getSubstate(state, a.getApplicableOnStateAxis()) == a.getApplicableOnStateValue()) {
+            actions.add(action);
+            actionMasks[state] |= 1L << action;
+          }
+        }
+
+        actionArrays[state] = actions.stream().mapToInt(Integer::intValue).toArray();
+        actionLists.add(Collections.unmodifiableList(actions));
+      }
+      return new ApplicableActionTable(actionArrays, Collections.unmodifiableList(actionLists), actionMasks);
     }
 }
@@ -0,0 +1,299 @@
+package tools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Matcher;
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.affordances.ActionAffordance;
+import ch.unisg.ics.interactions.wot.td.affordances.Form;
+import ch.unisg.ics.interactions.wot.td.affordances.PropertyAffordance;
+import ch.unisg.ics.interactions.wot.td.clients.TDHttpRequest;
+import ch.unisg.ics.interactions.wot.td.schemas.BooleanSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+import ch.unisg.ics.interactions.wot.td.vocabularies.TD;
+
+/**
+ * The parts of the W3C Web of Things Thing Description of a lab from which a
+ * {@link Lab} is constructed: the zones of the lab, the target and the property names of
+ * its status property, the request of each action of its action space, and the request
+ * that sets all the actuators of the lab at once, if the lab supports it.
+ *
+ * <p> A description is derived from a parsed Thing Description once, and can be written
+ * to and read from a compact binary form (see {@link ThingDescriptionCache}), so that a
+ * lab is constructed without fetching and parsing the Turtle of its Thing Description.
+ * The state space and the action space of the lab are derived from the description.
+ * </p>
+ */
+public final class LabDescription {
+
+  /**
+   * The request of an action, which sets a boolean property of the lab (e.g.
+   * {"Z1Light":true})
+   */
+  static final class ActionRequest {
+    final String affordanceType;
+    final String propertyName;
+    final boolean value;
+    final String method;
+    final String target;
+    final String contentType;
+
+    /**
+     * The request of the Thing Description, if the description has been derived from a
+     * parsed Thing Description rather than read from its binary form
+     */
+    final TDHttpRequest request;
+
+    ActionRequest(String affordanceType, String propertyName, boolean value, String method, String target,
+        String contentType, TDHttpRequest request) {
+      this.affordanceType = affordanceType;
+      this.propertyName = propertyName;
+      this.value = value;
+      this.method = method;
+      this.target = target;
+      this.contentType = contentType;
+      this.request = request;
+    }
+  }
+
+  /**
+   * The semantic type of the status property of a lab
+   */
+  private static final String STATUS_TYPE = "https://example.org/was#Status";
+
+  /**
+   * The semantic type of the action affordance that sets several lights and blinds of a
+   * lab in a single request, e.g. {"Z1Light":true,"Z1Blinds":false,"Z2Light":false,...}
+   */
+  private static final String SET_ACTUATORS_TYPE = "http://example.org/was#SetActuators";
+
+  private final List<Integer> zones;
+  private final String statusTarget; // null if the lab has no status property
+  private final String[] statusPropertyNames;
+  private final List<ActionRequest> actions;
+  private final String[] resetForm; // the method, target and content type of the reset, or null
+
+  private LabDescription(List<Integer> zones, String statusTarget, String[] statusPropertyNames,
+      List<ActionRequest> actions, String[] resetForm) {
+    this.zones = Collections.unmodifiableList(zones);
+    this.statusTarget = statusTarget;
+    this.statusPropertyNames = statusPropertyNames;
+    this.actions = Collections.unmodifiableList(actions);
+    this.resetForm = resetForm;
+  }
+
+  /**
+   * Derives the description of a lab from its Thing Description. The zones of the lab
+   * are the zones whose lights or blinds can be set through the action affordances of
+   * the Thing Description.
+   *
+   * @param td the Thing Description
+   * @return the description
+   * @throws IllegalArgumentException if the lab has more than {@value Lab#MAX_ZONES} zones
+   */
+  public static LabDescription fromThingDescription(ThingDescription td) {
+    List<Integer> zones = readZones(td);
+
+    String statusTarget = null;
+    String[] statusPropertyNames = new String[0];
+    Optional<PropertyAffordance> p = td.getFirstPropertyBySemanticType(STATUS_TYPE);
+    if (p.isPresent()) {
+      Optional<Form> f = p.get().getFirstFormForOperationType(TD.readProperty);
+
+      if (f.isPresent()) {
+        statusTarget = f.get().getTarget();
+        statusPropertyNames = StatusSchema.resolvePropertyNames((ObjectSchema) p.get().getDataSchema(),
+          Lab.getStatusTypes(zones));
+      }
+    }
+
+    List<ActionRequest> actions = new ArrayList<>();
+    for (String affType : Lab.getZoneAffordanceTypes(zones)) {
+
+      Optional<ActionAffordance> a = td.getFirstActionBySemanticType(affType);
+
+      if (a.isPresent()) {
+
+        Optional<Form> f = a.get().getFirstFormForOperationType(TD.invokeAction);
+        Optional<DataSchema> ds = a.get().getInputSchema();
+
+        if (f.isPresent() && ds.isPresent()) {
+
+          Map<String, DataSchema> props = ((ObjectSchema) ds.get()).getProperties();
+          Map<String, Object> payload = new HashMap<>();
+
+          for (String propName : props.keySet()) {
+
+            if (props.get(propName) instanceof BooleanSchema) {
+              for (boolean propValue : Arrays.asList(false, true)) {
+                payload.put(propName, propValue);
+                TDHttpRequest request = new TDHttpRequest(f.get(), TD.invokeAction);
+                request.setObjectPayload((ObjectSchema) ds.get(), payload);
+                actions.add(new ActionRequest(affType, propName, propValue,
+                  f.get().getMethodName(TD.invokeAction).orElse("POST"), f.get().getTarget(),
+                  f.get().getContentType(), request));
+              }
+            }
+          }
+        }
+      }
+    }
+
+    String[] resetForm = null;
+    Optional<ActionAffordance> reset = td.getFirstActionBySemanticType(SET_ACTUATORS_TYPE);
+    if (reset.isPresent()) {
+      Optional<Form> f = reset.get().getFirstFormForOperationType(TD.invokeAction);
+      if (f.isPresent()) {
+        resetForm = new String[]{f.get().getMethodName(TD.invokeAction).orElse("POST"), f.get().getTarget(),
+          f.get().getContentType()};
+      }
+    }
+    return new LabDescription(zones, statusTarget, statusPropertyNames, actions, resetForm);
+  }
+
+  /**
+   * Returns the zones whose lights or blinds can be set through the action affordances
+   * of a Thing Description, in ascending order
+   *
+   * @throws IllegalArgumentException if there are more than {@value Lab#MAX_ZONES} zones
+   */
+  private static List<Integer> readZones(ThingDescription td) {
+    SortedSet<Integer> zoneNumbers = new TreeSet<>();
+
+    for (ActionAffordance action : td.getActions()) {
+      for (String semanticType : action.getSemanticTypes()) {
+        Matcher matcher = Lab.ZONE_ACTION_TYPE.matcher(semanticType);
+        if (matcher.matches()) {
+          zoneNumbers.add(Integer.valueOf(matcher.group(1)));
+        }
+      }
+    }
+
+    if (zoneNumbers.size() > Lab.MAX_ZONES) {
+      throw new IllegalArgumentException("The lab has " + zoneNumbers.size() + " zones, at most "
+        + Lab.MAX_ZONES + " are supported");
+    }
+    return new ArrayList<>(zoneNumbers);
+  }
+
+  /**
+   * Returns the zones of the lab, as numbered by the Thing Description (e.g. [1,2])
+   */
+  public List<Integer> getZones() {
+    return zones;
+  }
+
+  /**
+   * Returns the URL for reading the status of the lab, or null if the lab has no status
+   * property
+   */
+  public String getStatusTarget() {
+    return statusTarget;
+  }
+
+  /**
+   * Returns the property name (JSON key) of each slot of the status of the lab (see
+   * {@link Lab#getStatusTypes(List)})
+   */
+  public String[] getStatusPropertyNames() {
+    return statusPropertyNames.clone();
+  }
+
+  /**
+   * Returns the requests of the actions, in the order of the action space of the lab
+   */
+  List<ActionRequest> getActions() {
+    return actions;
+  }
+
+  /**
+   * Returns the method, the target and the content type of the request that sets all the
+   * actuators of the lab at once, or null if the lab does not support it
+   */
+  String[] getResetForm() {
+    return resetForm == null ? null : resetForm.clone();
+  }
+
+  /**
+   * Writes the description in its binary form
+   *
+   * @param out the output
+   * @throws IOException if the description cannot be written
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(zones.size());
+    for (int zone : zones) {
+      out.writeInt(zone);
+    }
+
+    out.writeBoolean(statusTarget != null);
+    if (statusTarget != null) {
+      out.writeUTF(statusTarget);
+    }
+    out.writeInt(statusPropertyNames.length);
+    for (String propertyName : statusPropertyNames) {
+      out.writeUTF(propertyName);
+    }
+
+    out.writeInt(actions.size());
+    for (ActionRequest action : actions) {
+      out.writeUTF(action.affordanceType);
+      out.writeUTF(action.propertyName);
+      out.writeBoolean(action.value);
+      out.writeUTF(action.method);
+      out.writeUTF(action.target);
+      out.writeUTF(action.contentType);
+    }
+
+    out.writeBoolean(resetForm != null);
+    if (resetForm != null) {
+      for (String part : resetForm) {
+        out.writeUTF(part);
+      }
+    }
+  }
+
+  /**
+   * Reads a description from its binary form
+   *
+   * @param in the input
+   * @return the description
+   * @throws IOException if the description cannot be read
+   */
+  public static LabDescription read(DataInput in) throws IOException {
+    List<Integer> zones = new ArrayList<>();
+    int zoneCount = in.readInt();
+    if (zoneCount < 0 || zoneCount > Lab.MAX_ZONES) {
+      throw new IOException("Invalid number of zones: " + zoneCount);
+    }
+    for (int i = 0; i < zoneCount; i++) {
+      zones.add(in.readInt());
+    }
+
+    String statusTarget = in.readBoolean() ? in.readUTF() : null;
+    String[] statusPropertyNames = new String[checkCount(in.readInt())];
+    for (int slot = 0; slot < statusPropertyNames.length; slot++) {
+      statusPropertyNames[slot] = in.readUTF();
+    }
+
+    int actionCount = checkCount(in.readInt());
+    List<ActionRequest> actions = new ArrayList<>(actionCount);
+    for (int i = 0; i < actionCount; i++) {
+      actions.add(new ActionRequest(in.readUTF(), in.readUTF(), in.readBoolean(), in.readUTF(), in.readUTF(),
+        in.readUTF(), null));
+    }
+
+    String[] resetForm = in.readBoolean() ? new String[]{in.readUTF(), in.readUTF(), in.readUTF()} : null;
+    return new LabDescription(zones, statusTarget, statusPropertyNames, actions, resetForm);
+  }
+
+  private static int checkCount(int count) throws IOException {
+    if (count < 0 || count > 4 * Lab.MAX_ZONES + 4) {
+      throw new IOException("Invalid count: " + count);
+    }
+    return count;
+  }
+}
@@ -0,0 +1,96 @@
+package tools;
+
+import jdk.jfr.*;
+
+/**
+ * The JDK Flight Recorder events of learning and acting on a lab. The events are only
+ * committed while a recording that enables them is running, e.g. with
+ * -XX:StartFlightRecording, and can be inspected with JDK Mission Control or
+ * "jfr print --categories Lab recording.jfr".
+ */
+public final class LabEvents {
+
+  private LabEvents() {
+  }
+
+  @Name("tools.LabAction")
+  @Label("Lab Action")
+  @Category({"Lab", "Transport"})
+  @Description("An action performed on the lab, from its request to its response")
+  public static class ActionEvent extends Event {
+    @Label("Action")
+    public int action;
+
+    @Label("Status Code")
+    public int statusCode;
+
+    @Label("Round Trip Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long roundTripTime;
+  }
+
+  @Name("tools.LabStatusRead")
+  @Label("Lab Status Read")
+  @Category({"Lab", "Transport"})
+  @Description("A read of the status of the lab, from its request to its response")
+  public static class StatusReadEvent extends Event {
+    @Label("Status Code")
+    public int statusCode;
+
+    @Label("Round Trip Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long roundTripTime;
+  }
+
+  @Name("tools.TrainingEpisode")
+  @Label("Training Episode")
+  @Category({"Lab", "Learning"})
+  @Description("An episode of Q learning")
+  public static class EpisodeEvent extends Event {
+    @Label("Goal")
+    public String goal;
+
+    @Label("Episode")
+    public int episode;
+
+    @Label("Steps")
+    public int steps;
+
+    @Label("Goal Reached")
+    public boolean goalReached;
+
+    @Label("Maximum Q Value Change")
+    public double maxDeltaQ;
+  }
+
+  @Name("tools.ActionDecision")
+  @Label("Action Decision")
+  @Category({"Lab", "Control"})
+  @Description("A decision of the next best action for a state and a goal")
+  public static class DecisionEvent extends Event {
+    @Label("Goal")
+    public String goal;
+
+    @Label("State")
+    public int state;
+
+    @Label("Action")
+    public int action;
+  }
+
+  @Name("tools.GoalAchieved")
+  @Label("Goal Achieved")
+  @Category({"Lab", "Control"})
+  @Description("A goal achieved by acting on the lab, from the first decision for the goal")
+  public static class GoalAchievedEvent extends Event {
+    @Label("Goal")
+    public String goal;
+
+    @Label("Decisions")
+    public int decisions;
+
+    @Label("Time to Goal")
+    @Timespan(Timespan.NANOSECONDS)
+    public long timeToGoal;
+  }
+}
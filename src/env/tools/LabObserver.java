@@ -0,0 +1,138 @@
+package tools;
+
+import java.util.Arrays;
+import java.util.logging.*;
+import cartago.Artifact;
+import cartago.INTERNAL_OPERATION;
+import cartago.OPERATION;
+
+/**
+ * An artifact that observes a lab on behalf of the agents that focus on it. The
+ * artifact reads the status of the lab once per tick of the lab, shortly after the
+ * tick (see {@link StatusReader}), and publishes the discretized state of the lab as
+ * observable properties when it changes, so that the agents react to the changes of
+ * the lab instead of each polling the lab.
+ *
+ * <p> The observed lab is a lab that ticks on its own, i.e. the lab of the Node-RED flow
+ * or a {@link LabServer}. An in-process simulated lab (a sim: URL) only advances when
+ * actions are performed on it, and cannot be observed.
+ * </p>
+ * <p> The observable properties are:
+ * </p>
+ * <ul>
+ * <li> lab_state(State): the description of the state of the lab, e.g.
+ * [2,3,true,false,false,true,1] for 2 zones, with the light level of each zone, whether
+ * the light of each zone is on, whether the blinds of each zone are raised, and the
+ * sunshine (see {@link Lab#describeState(int)}). The description can be passed to
+ * {@link QLearner#getActionFromState} as it is;
+ * <li> light_levels(Levels): the light level of each zone, e.g. [2,3], which can be
+ * compared with a goal. It is updated before lab_state.
+ * </ul>
+ */
+public class LabObserver extends Artifact {
+
+  /**
+   * The shortest time between two reads of the status of the lab
+   */
+  private static final long MIN_READ_INTERVAL_MILLIS = 20;
+
+  private static final Logger LOGGER = Logger.getLogger(LabObserver.class.getName());
+
+  private Lab lab; // the observed lab
+  private volatile boolean observing; // whether the status of the lab is read on each tick
+  private int state; // the latest published state
+
+  /**
+  * Initializes the artifact with the URL of the lab, which is observed with the default
+  * discretization of the status of the lab
+  *
+  * @param environmentURL the URL of the W3C Thing Description of the lab, e.g. the URL of
+  * the Thing Description of a {@link LabServer}
+  */
+  public void init(String environmentURL) {
+    init(environmentURL, Discretization.DEFAULT);
+  }
+
+  /**
+  * Initializes the artifact with the URL of the lab and the bin boundaries of the
+  * discretization of the status of the lab, which must be the ones of the {@link QLearner}
+  * that decides on the published states (see {@link QLearner#init(String, String, Object[])})
+  *
+  * @param environmentURL the URL of the lab (see {@link #init(String)})
+  * @param binBoundaries the lists of bin boundaries
+  */
+  public void init(String environmentURL, Object[] binBoundaries) {
+    Discretization discretization = Discretization.DEFAULT;
+    try {
+      discretization = Discretization.fromBoundaries(binBoundaries);
+    } catch (IllegalArgumentException e) {
+      LOGGER.severe(e.getMessage() + ", using the default discretization");
+    }
+    init(environmentURL, discretization);
+  }
+
+  private void init(String environmentURL, Discretization discretization) {
+    if (SimulatedLab.isSimulatedLabURL(environmentURL)) {
+      failed("A simulated lab only advances when actions are performed on it, and cannot be observed: "
+        + environmentURL);
+      return;
+    }
+    try {
+      this.lab = QLearner.createLab(environmentURL, discretization);
+    } catch (IllegalStateException e) {
+      failed(e.getMessage());
+      return;
+    }
+
+    this.state = lab.readCurrentState();
+    Object[] description = lab.describeState(state);
+    defineObsProperty("light_levels", (Object) Arrays.copyOf(description, lab.getZoneCount()));
+    defineObsProperty("lab_state", (Object) description);
+
+    observing = true;
+    execInternalOp("observe");
+  }
+
+  /**
+  * Stops reading the status of the lab. The observable properties keep the latest
+  * published state.
+  */
+  @OPERATION
+  public void stopObserving() {
+    observing = false;
+  }
+
+  /**
+  * Stops reading the status of the lab and closes the lab when the artifact is disposed
+  */
+  @Override
+  protected void dispose() {
+    observing = false;
+    if (lab != null) {
+      lab.close();
+    }
+  }
+
+  /**
+  * Reads the status of the lab once per tick of the lab, and publishes the state of the
+  * lab when it changes
+  */
+  @INTERNAL_OPERATION
+  void observe() {
+    while (observing) {
+      // the artifact is released while waiting, so that its operations can be executed
+      await_time(Math.max(MIN_READ_INTERVAL_MILLIS, lab.getMillisUntilNextTick()));
+      if (!observing) {
+        return;
+      }
+
+      int current = lab.readCurrentState();
+      if (current != state) {
+        state = current;
+        Object[] description = lab.describeState(current);
+        getObsProperty("light_levels").updateValue(Arrays.copyOf(description, lab.getZoneCount()));
+        getObsProperty("lab_state").updateValue(description);
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package tools;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The pool of the labs that a {@link QLearner} manages in the same JVM, e.g. the rooms of
+ * a building (see {@link QLearner#addRoom}). The labs of a pool share the descriptions of
+ * their Thing Descriptions, by URL, the tables of their state spaces and action spaces,
+ * by shape, and the HTTP client of their transports (see {@link LabTransport}), so that
+ * each lab only takes the memory of its own state.
+ *
+ * <p> The pool is owned by the artifact that manages its labs, so the descriptions and
+ * tables are released with the artifact.
+ * </p>
+ */
+final class LabPool {
+
+  /**
+   * The descriptions of the Thing Descriptions of the labs, by URL
+   */
+  private final Map<String, LabDescription> descriptions = new ConcurrentHashMap<>();
+
+  /**
+   * The applicable action tables of the labs, by the radices of the state space and the
+   * axes and substates on which the actions are applicable
+   */
+  private final Map<String, Lab.ApplicableActionTable> applicableActionTables = new ConcurrentHashMap<>();
+
+  /**
+   * The substate indexes of the state spaces of the labs, by their radices
+   */
+  private final Map<String, BitSet[][]> substateIndexes = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the description of the Thing Description at a URL, which is read once for
+   * all the labs of the pool
+   *
+   * @param url the URL of the Thing Description
+   * @return the description
+   * @throws IOException if the Thing Description cannot be read
+   */
+  LabDescription getDescription(String url) throws IOException {
+    LabDescription description = descriptions.get(url);
+    if (description == null) {
+      description = ThingDescriptionCache.getDefault().getDescription(url);
+      LabDescription read = descriptions.putIfAbsent(url, description);
+      if (read != null) {
+        description = read;
+      }
+    }
+    return description;
+  }
+
+  /**
+   * Returns the applicable action table of a shape of state space and action space,
+   * which is computed once for all the labs of the pool
+   *
+   * @param shape the radices of the state space and the axes and substates on which the
+   * actions are applicable
+   * @param table the computation of the table
+   * @return the table
+   */
+  Lab.ApplicableActionTable getApplicableActionTable(String shape, Supplier<Lab.ApplicableActionTable> table) {
+    return applicableActionTables.computeIfAbsent(shape, k -> table.get());
+  }
+
+  /**
+   * Returns the substate index of a state space, which is computed once for all the labs
+   * of the pool
+   *
+   * @param radices the radices of the state space
+   * @param index the computation of the index
+   * @return the index
+   */
+  BitSet[][] getSubstateIndex(String radices, Supplier<BitSet[][]> index) {
+    return substateIndexes.computeIfAbsent(radices, k -> index.get());
+  }
+}
@@ -0,0 +1,270 @@
+package tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import java.util.regex.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the lab of the Node-RED flow (see simulator/simulator_flow.json),
+ * which serves a {@link LabSimulator} over HTTP and advances it once per tick in real
+ * time, e.g. for running the agents and the {@link LabObserver} without the Node-RED
+ * flow.
+ *
+ * <p> The server has the endpoints of the flow:
+ * </p>
+ * <ul>
+ * <li> GET /was/rl/status returns the status of the lab, e.g. {"Z1Level":396.4,...,"Hour":1.5};
+ * <li> POST /was/rl/action applies an action, e.g. {"Z1Light":true}, and returns the
+ * action with its cost, e.g. {"Z1Light":true,"cost":100};
+ * </ul>
+ * <p> and GET /was/rl/td returns a W3C Web of Things Thing Description of the lab in
+ * Turtle, with the status property and an action for the light and the blinds of each
+ * zone (e.g. "http://example.org/was#SetZ1Light"), which can be used as the URL of the lab.
+ * Unlike the flow, the server also applies the properties of several lights and blinds
+ * at once, e.g. {"Z1Light":true,"Z1Blinds":false,"Z2Light":false,"Z2Blinds":true}, which
+ * the Thing Description offers as the action "http://example.org/was#SetActuators", so
+ * that a lab can be reset with a single request.
+ * </p>
+ */
+public class LabServer implements AutoCloseable {
+
+  static {
+    // without TCP_NODELAY, the small responses of the server are delayed by the
+    // acknowledgements of the clients
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  /**
+   * The properties of an action payload, e.g. "Z1Light":true
+   */
+  private static final Pattern ACTION_PROPERTY = Pattern.compile("\"(Z(\\d+)(?:Light|Blinds))\"\\s*:\\s*(true|false)");
+
+  private static final Logger LOGGER = Logger.getLogger(LabServer.class.getName());
+
+  private final LabSimulator simulator; // guarded by itself
+  private final HttpServer server;
+  private final ExecutorService handlers;
+  private final ScheduledExecutorService ticker;
+  private final String thingDescription;
+
+  /**
+   * A {@link LabServer} instance is constructed and started based on the port of the
+   * server, the number of zones of the lab, and the update period of the lab
+   *
+   * @param port the port of the server, or 0 for any free port
+   * @param zoneCount the number of zones
+   * @param tickMillis the update period of the lab in milliseconds, i.e. the time
+   * between two ticks (1000 in the Node-RED flow)
+   * @param seed the seed of the sunshine
+   * @throws IOException if the server cannot be started
+   */
+  public LabServer(int port, int zoneCount, long tickMillis, long seed) throws IOException {
+    this.simulator = new LabSimulator(LabSimulator.SunshineModel.FIXED, zoneCount, seed);
+    this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    this.thingDescription = createThingDescription(zoneCount, "http://localhost:" + getPort());
+
+    server.createContext("/was/rl/status", this::handleStatus);
+    server.createContext("/was/rl/action", this::handleAction);
+    server.createContext("/was/rl/td", this::handleThingDescription);
+    this.handlers = Executors.newFixedThreadPool(4);
+    server.setExecutor(handlers);
+    server.start();
+
+    this.ticker = Executors.newSingleThreadScheduledExecutor();
+    ticker.scheduleAtFixedRate(() -> {
+      synchronized (simulator) {
+        simulator.step();
+      }
+    }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+
+    LOGGER.info("Serving a lab with " + zoneCount + " zones at " + getThingDescriptionURL());
+  }
+
+  /**
+   * Returns the port of the server
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Returns the URL of the Thing Description of the lab
+   */
+  public String getThingDescriptionURL() {
+    return "http://localhost:" + getPort() + "/was/rl/td";
+  }
+
+  @Override
+  public void close() {
+    ticker.shutdownNow();
+    server.stop(0);
+    handlers.shutdownNow();
+  }
+
+  private void handleStatus(HttpExchange exchange) throws IOException {
+    if (!"GET".equals(exchange.getRequestMethod())) {
+      respond(exchange, 405, "text/plain", "");
+      return;
+    }
+
+    StringBuilder status = new StringBuilder("{");
+    synchronized (simulator) {
+      int zoneCount = simulator.getZoneCount();
+      for (int zone = 0; zone < zoneCount; zone++) {
+        status.append("\"Z").append(zone + 1).append("Level\":").append(simulator.getLevel(zone)).append(',');
+      }
+      for (int zone = 0; zone < zoneCount; zone++) {
+        status.append("\"Z").append(zone + 1).append("Light\":").append(simulator.getLight(zone)).append(',');
+      }
+      for (int zone = 0; zone < zoneCount; zone++) {
+        status.append("\"Z").append(zone + 1).append("Blinds\":").append(simulator.getBlinds(zone)).append(',');
+      }
+      status.append("\"Sunshine\":").append(simulator.getSunshine())
+        .append(",\"TotalEnergyCost\":").append(simulator.getTotalEnergyCost())
+        .append(",\"EnergyCost\":").append(simulator.getEnergyCost())
+        .append(",\"Hour\":").append(simulator.getHour());
+    }
+    respond(exchange, 200, "application/json", status.append('}').toString());
+  }
+
+  private void handleAction(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      respond(exchange, 405, "text/plain", "");
+      return;
+    }
+
+    String payload = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    Map<String, Boolean> properties = new LinkedHashMap<>();
+    Matcher matcher = ACTION_PROPERTY.matcher(payload);
+    while (matcher.find()) {
+      int zone = Integer.parseInt(matcher.group(2));
+      if (zone < 1 || zone > simulator.getZoneCount()) {
+        respond(exchange, 400, "text/plain", "Unknown property: " + matcher.group(1));
+        return;
+      }
+      properties.put(matcher.group(1), Boolean.parseBoolean(matcher.group(3)));
+    }
+    if (properties.isEmpty()) {
+      respond(exchange, 400, "text/plain", "Unknown action: " + payload);
+      return;
+    }
+
+    // the properties of a request are applied at once, between two ticks
+    double cost = 0;
+    StringBuilder response = new StringBuilder("{");
+    synchronized (simulator) {
+      for (Map.Entry<String, Boolean> property : properties.entrySet()) {
+        cost += simulator.applyAction(property.getKey(), property.getValue());
+        response.append('"').append(property.getKey()).append("\":").append(property.getValue()).append(',');
+      }
+    }
+    respond(exchange, 200, "application/json", response.append("\"cost\":").append((long) cost).append('}').toString());
+  }
+
+  private void handleThingDescription(HttpExchange exchange) throws IOException {
+    respond(exchange, 200, "text/turtle", thingDescription);
+  }
+
+  private static void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Creates the Thing Description of a lab, with the semantic types of the Thing
+   * Description of the simulated lab
+   */
+  static String createThingDescription(int zoneCount, String base) {
+    StringBuilder td = new StringBuilder()
+      .append("@prefix td: <https://www.w3.org/2019/wot/td#> .\n")
+      .append("@prefix hctl: <https://www.w3.org/2019/wot/hypermedia#> .\n")
+      .append("@prefix htv: <http://www.w3.org/2011/http#> .\n")
+      .append("@prefix wotsec: <https://www.w3.org/2019/wot/security#> .\n")
+      .append("@prefix js: <https://www.w3.org/2019/wot/json-schema#> .\n")
+      .append("@prefix was: <http://example.org/was#> .\n\n")
+      .append("<").append(base).append("/was/rl/td#lab> a td:Thing ;\n")
+      .append("  td:title \"lab\" ;\n")
+      .append("  td:hasSecurityConfiguration [ a wotsec:NoSecurityScheme ] ;\n")
+      .append("  td:hasPropertyAffordance [ a td:PropertyAffordance, js:ObjectSchema, <https://example.org/was#Status> ;\n")
+      .append("    td:name \"status\" ;\n")
+      .append("    td:isObservable false ;\n")
+      .append("    td:hasForm [ htv:methodName \"GET\" ; hctl:hasTarget <").append(base).append("/was/rl/status> ;\n")
+      .append("      hctl:forContentType \"application/json\" ; hctl:hasOperationType td:readProperty ] ;\n");
+
+    for (int zone = 1; zone <= zoneCount; zone++) {
+      appendStatusProperty(td, "Z" + zone + "Level", "js:NumberSchema");
+    }
+    for (int zone = 1; zone <= zoneCount; zone++) {
+      appendStatusProperty(td, "Z" + zone + "Light", "js:BooleanSchema");
+    }
+    for (int zone = 1; zone <= zoneCount; zone++) {
+      appendStatusProperty(td, "Z" + zone + "Blinds", "js:BooleanSchema");
+    }
+    for (String property : new String[]{"Sunshine", "TotalEnergyCost", "EnergyCost", "Hour"}) {
+      appendStatusProperty(td, property, "js:NumberSchema");
+    }
+    td.append("  ]");
+
+    for (int zone = 1; zone <= zoneCount; zone++) {
+      for (String device : new String[]{"Light", "Blinds"}) {
+        String property = "Z" + zone + device;
+        td.append(" ;\n  td:hasActionAffordance [ a td:ActionAffordance, was:Set").append(property).append(" ;\n")
+          .append("    td:name \"set").append(property).append("\" ;\n")
+          .append("    td:hasForm [ htv:methodName \"POST\" ; hctl:hasTarget <").append(base).append("/was/rl/action> ;\n")
+          .append("      hctl:forContentType \"application/json\" ; hctl:hasOperationType td:invokeAction ] ;\n")
+          .append("    td:hasInputSchema [ a js:ObjectSchema ;\n")
+          .append("      js:properties [ a js:BooleanSchema, was:").append(property)
+          .append(" ; js:propertyName \"").append(property).append("\" ] ;\n")
+          .append("      js:required \"").append(property).append("\" ]\n")
+          .append("  ]");
+      }
+    }
+
+    td.append(" ;\n  td:hasActionAffordance [ a td:ActionAffordance, was:SetActuators ;\n")
+      .append("    td:name \"setActuators\" ;\n")
+      .append("    td:hasForm [ htv:methodName \"POST\" ; hctl:hasTarget <").append(base).append("/was/rl/action> ;\n")
+      .append("      hctl:forContentType \"application/json\" ; hctl:hasOperationType td:invokeAction ] ;\n")
+      .append("    td:hasInputSchema [ a js:ObjectSchema ;\n");
+    for (int zone = 1; zone <= zoneCount; zone++) {
+      for (String device : new String[]{"Light", "Blinds"}) {
+        String property = "Z" + zone + device;
+        td.append("      js:properties [ a js:BooleanSchema, was:").append(property)
+          .append(" ; js:propertyName \"").append(property).append("\" ] ;\n");
+      }
+    }
+    td.append("    ]\n  ]");
+    return td.append(" .\n").toString();
+  }
+
+  private static void appendStatusProperty(StringBuilder td, String property, String schemaType) {
+    td.append("    js:properties [ a ").append(schemaType).append(", was:").append(property)
+      .append(" ; js:propertyName \"").append(property).append("\" ] ;\n");
+  }
+
+  /**
+   * Starts a server, e.g. with the arguments 8080 2 1000 for a lab with 2 zones at
+   * http://localhost:8080/was/rl/td that ticks every second
+   *
+   * @param args the port, the number of zones (2 by default) and the update period of
+   * the lab in milliseconds (1000 by default)
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.valueOf(args[0]) : 8080;
+    int zoneCount = args.length > 1 ? Integer.valueOf(args[1]) : 2;
+    long tickMillis = args.length > 2 ? Long.valueOf(args[2]) : 1000;
+    new LabServer(port, zoneCount, tickMillis, System.nanoTime());
+  }
+}
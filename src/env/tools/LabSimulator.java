@@ -0,0 +1,236 @@
+package tools;
+
+import java.util.Random;
+import java.util.regex.*;
+
+/**
+ * An in-process port of the lab simulator of the Node-RED flow
+ * (see simulator/simulator_flow.json).
+ *
+ * <p> The "Update action" node is ported by {@link #applyAction(String, boolean)}
+ * and the "Update environment" node is ported by {@link #step()}. Unlike the
+ * Node-RED flow, which advances once per second, the time of a simulator only
+ * advances when {@link #step()} is invoked.
+ * </p>
+ */
+public class LabSimulator {
+
+  /**
+   * The properties of the actions, e.g. "Z1Light" or "Z2Blinds"
+   */
+  private static final Pattern PROPERTY = Pattern.compile("Z(\\d+)(Light|Blinds)");
+
+  /**
+   * A model of the sunshine out of the lab
+   */
+  public enum SunshineModel {
+
+    /**
+     * Sunshine that hovers around 600..650 (the default of the Node-RED flow)
+     */
+    FIXED {
+      @Override
+      double sample(double hour, Random random) {
+        return 600 + 50 * random.nextDouble();
+      }
+    },
+
+    /**
+     * Sunshine that changes with the time of day in a sinusoidal function between
+     * 6am and 6pm (the commented out alternative of the Node-RED flow)
+     */
+    DAYLIGHT {
+      @Override
+      double sample(double hour, Random random) {
+        if (hour > 5 && hour < 19) {
+          return 50 * Math.sin(hour * (Math.PI / 24)) + random.nextDouble() * 10;
+        }
+        return 0;
+      }
+    };
+
+    abstract double sample(double hour, Random random);
+  }
+
+  private final SunshineModel sunshineModel;
+  private final Random random;
+  private final int zoneCount;
+
+  private final double[] levels;
+  private final boolean[] lights;
+  private final boolean[] blinds;
+  private double sunshine;
+  private double totalEnergyCost;
+  private double energyCost;
+  private double hour;
+
+  /**
+   * A {@link LabSimulator} instance is constructed based on a sunshine model and the
+   * seed of its random number generator, for a lab of 2 zones as in the flow
+   *
+   * @param sunshineModel the sunshine model
+   * @param seed the seed of the random number generator
+   */
+  public LabSimulator(SunshineModel sunshineModel, long seed) {
+    this(sunshineModel, 2, seed);
+  }
+
+  /**
+   * A {@link LabSimulator} instance is constructed based on a sunshine model, the number
+   * of zones of the lab and the seed of its random number generator.
+   *
+   * <p> The zones are laid out in a row. As between the 2 zones of the flow, the lights
+   * and the blinds of a zone also light the neighbouring zones, with 50 lux and a quarter
+   * of the sunshine respectively.
+   * </p>
+   *
+   * @param sunshineModel the sunshine model
+   * @param zoneCount the number of zones, which are numbered from 1
+   * @param seed the seed of the random number generator
+   */
+  public LabSimulator(SunshineModel sunshineModel, int zoneCount, long seed) {
+    this.sunshineModel = sunshineModel;
+    this.random = new Random(seed);
+    this.zoneCount = zoneCount;
+    this.levels = new double[zoneCount];
+    this.lights = new boolean[zoneCount];
+    this.blinds = new boolean[zoneCount];
+  }
+
+  /**
+   * Applies an action on the lab, as the "Update action" node of the flow.
+   *
+   * @param property the property of the action, e.g. "Z1Light"
+   * @param value the value of the property
+   * @return the cost of the action
+   */
+  public double applyAction(String property, boolean value) {
+    Matcher matcher = PROPERTY.matcher(property);
+    int zone = matcher.matches() ? Integer.parseInt(matcher.group(1)) - 1 : -1;
+    if (zone < 0 || zone >= zoneCount) {
+      throw new IllegalArgumentException("Unknown property: " + property);
+    }
+
+    double cost = 0;
+
+    if ("Light".equals(matcher.group(2))) {
+      if (!lights[zone] && value) {
+        cost = 100;
+      }
+      lights[zone] = value;
+    } else {
+      if (!blinds[zone] && value) {
+        cost = 5;
+      }
+      blinds[zone] = value;
+    }
+
+    if (cost > 0) {
+      energyCost = cost;
+    }
+    return cost;
+  }
+
+  /**
+   * Advances the time of the lab by one tick (0.1h), as the "Update environment" node
+   * of the flow. As in the flow, the light levels are computed with the sunshine of the
+   * previous tick.
+   */
+  public void step() {
+    double sun = sunshine;
+
+    if (hour >= 24) {
+      hour = 0;
+    }
+    hour += 0.1;
+
+    sunshine = sunshineModel.sample(hour, random);
+
+    // the contributions are summed in the order of the zones, as in the flow
+    for (int zone = 0; zone < zoneCount; zone++) {
+      int first = Math.max(0, zone - 1);
+      int last = Math.min(zoneCount - 1, zone + 1);
+      double level = 0;
+
+      for (int other = first; other <= last; other++) {
+        level += lights[other] ? (other == zone ? 300 : 50) : 0;
+      }
+      for (int other = first; other <= last; other++) {
+        level += blinds[other] ? sun * (other == zone ? 0.5 : 0.25) : 0;
+      }
+      levels[zone] = level;
+      totalEnergyCost += lights[zone] ? 1 : 0;
+    }
+  }
+
+  public int getZoneCount() {
+    return zoneCount;
+  }
+
+  /**
+   * Returns the light level of a zone
+   *
+   * @param zone the zone, starting from 0 for Zone 1
+   */
+  public double getLevel(int zone) {
+    return levels[zone];
+  }
+
+  /**
+   * Returns the status of the lights of a zone
+   *
+   * @param zone the zone, starting from 0 for Zone 1
+   */
+  public boolean getLight(int zone) {
+    return lights[zone];
+  }
+
+  /**
+   * Returns the status of the blinds of a zone
+   *
+   * @param zone the zone, starting from 0 for Zone 1
+   */
+  public boolean getBlinds(int zone) {
+    return blinds[zone];
+  }
+
+  public double getZ1Level() {
+    return getLevel(0);
+  }
+
+  public double getZ2Level() {
+    return getLevel(1);
+  }
+
+  public boolean getZ1Light() {
+    return getLight(0);
+  }
+
+  public boolean getZ2Light() {
+    return getLight(1);
+  }
+
+  public boolean getZ1Blinds() {
+    return getBlinds(0);
+  }
+
+  public boolean getZ2Blinds() {
+    return getBlinds(1);
+  }
+
+  public double getSunshine() {
+    return sunshine;
+  }
+
+  public double getTotalEnergyCost() {
+    return totalEnergyCost;
+  }
+
+  public double getEnergyCost() {
+    return energyCost;
+  }
+
+  public double getHour() {
+    return hour;
+  }
+}
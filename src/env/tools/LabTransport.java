@@ -0,0 +1,331 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequests;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.io.CloseMode;
+
+/**
+ * An HTTP transport for actuating a lab and reading its status, based on an
+ * asynchronous client with a pool of keep-alive connections.
+ *
+ * <p> The request of each action is prepared once. When an action is performed, the
+ * status read that follows it is sent as soon as the action has been acknowledged,
+ * without waiting for the status to be requested, so that the round trip of the status
+ * read overlaps with the work that takes place between the action and the read.
+ * Actions are sent in the order in which they are performed, and the status read of an
+ * action is skipped if another action has been performed in the meantime.
+ * </p>
+ */
+public class LabTransport implements AutoCloseable {
+
+  /**
+   * A prepared request of an action
+   */
+  private static class ActionRequest {
+    final String method;
+    final String target;
+    final byte[] body;
+    final ContentType contentType;
+
+    ActionRequest(String method, String target, byte[] body, ContentType contentType) {
+      this.method = method;
+      this.target = target;
+      this.body = body;
+      this.contentType = contentType;
+    }
+  }
+
+  /**
+   * The largest number of connections of the client that is shared by the transports of
+   * pooled labs, whose rooms are often served by the same host
+   */
+  private static final int SHARED_CLIENT_CONNECTIONS = 256;
+
+  private static final Logger LOGGER = Logger.getLogger(LabTransport.class.getName());
+
+  /**
+   * The client that is shared by the transports of pooled labs, which is created when it
+   * is first needed and is not closed
+   */
+  private static CloseableHttpAsyncClient sharedClient; // guarded by LabTransport.class
+
+  private final CloseableHttpAsyncClient client;
+  private final boolean ownsClient;
+  private final String statusTarget;
+  private final StatusSchema statusSchema;
+  private final Map<Integer, ActionRequest> actionRequests = new HashMap<>();
+  private final LatencyHistogram actionLatencies;
+  private final LatencyHistogram statusLatencies;
+
+  /**
+   * The completion of the latest action
+   */
+  private CompletableFuture<Void> lastAction = CompletableFuture.completedFuture(null);
+
+  /**
+   * The status read that follows the latest action, if it has not been consumed yet
+   */
+  private CompletableFuture<double[]> pendingStatus;
+
+  /**
+   * The number of actions that have been performed
+   */
+  private long actionCount;
+
+  /**
+   * A {@link LabTransport} instance is constructed based on the target of the status
+   * property of a lab and its compiled schema, and the histograms that record the round
+   * trip times of the requests
+   *
+   * @param statusTarget the URL for reading the status
+   * @param statusSchema the compiled schema of the status
+   * @param actionLatencies the histogram of the round trip times of actions
+   * @param statusLatencies the histogram of the round trip times of status reads
+   */
+  public LabTransport(String statusTarget, StatusSchema statusSchema, LatencyHistogram actionLatencies,
+      LatencyHistogram statusLatencies) {
+    this(statusTarget, statusSchema, actionLatencies, statusLatencies, false);
+  }
+
+  /**
+   * A {@link LabTransport} instance is constructed based on the target of the status
+   * property of a lab and its compiled schema, the histograms that record the round
+   * trip times of the requests, and whether the transport uses the client that is shared
+   * by the transports of pooled labs. The shared client saves the I/O threads and the
+   * connection pool of a client per lab.
+   *
+   * @param statusTarget the URL for reading the status
+   * @param statusSchema the compiled schema of the status
+   * @param actionLatencies the histogram of the round trip times of actions
+   * @param statusLatencies the histogram of the round trip times of status reads
+   * @param shared whether the transport uses the shared client
+   */
+  public LabTransport(String statusTarget, StatusSchema statusSchema, LatencyHistogram actionLatencies,
+      LatencyHistogram statusLatencies, boolean shared) {
+    this.statusTarget = statusTarget;
+    this.statusSchema = statusSchema;
+    this.actionLatencies = actionLatencies;
+    this.statusLatencies = statusLatencies;
+    this.ownsClient = !shared;
+    this.client = shared ? getSharedClient() : createClient(4, 8);
+  }
+
+  private static CloseableHttpAsyncClient createClient(int maxConnectionsPerRoute, int maxConnections) {
+    CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+      .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+        .setMaxConnPerRoute(maxConnectionsPerRoute)
+        .setMaxConnTotal(maxConnections)
+        .build())
+      .build();
+    client.start();
+    return client;
+  }
+
+  private static synchronized CloseableHttpAsyncClient getSharedClient() {
+    if (sharedClient == null) {
+      sharedClient = createClient(SHARED_CLIENT_CONNECTIONS, SHARED_CLIENT_CONNECTIONS);
+    }
+    return sharedClient;
+  }
+
+  /**
+   * Prepares the request of an action, whose payload is a JSON object with the
+   * payload tags of the action as keys, e.g. {"Z1Light":true}
+   *
+   * @param key the key of the action in the action space
+   * @param action the action
+   * @param method the HTTP method, e.g. "POST"
+   * @param target the URL of the action
+   * @param contentType the content type of the payload, e.g. "application/json"
+   */
+  public void registerAction(int key, Action action, String method, String target, String contentType) {
+    StringBuilder payload = new StringBuilder("{");
+    for (int i = 0; i < action.getPayloadTags().length; i++) {
+      if (i > 0) {
+        payload.append(',');
+      }
+      payload.append('"').append(action.getPayloadTags()[i]).append("\":").append(action.getPayload()[i]);
+    }
+    payload.append('}');
+
+    actionRequests.put(key, new ActionRequest(method, target,
+      payload.toString().getBytes(StandardCharsets.UTF_8), ContentType.parse(contentType)));
+  }
+
+  /**
+   * Sends an action after the previous actions, followed by a status read.
+   * The method returns without waiting for the action to complete.
+   *
+   * @param key the key of the action in the action space
+   */
+  public void performAction(int key) {
+    send(actionRequests.get(key), key);
+  }
+
+  /**
+   * Sends a command that sets several boolean properties of the lab at once, whose
+   * payload is a JSON object with the properties as keys, e.g.
+   * {"Z1Light":true,"Z1Blinds":false}, after the previous actions, followed by a status
+   * read. The method returns without waiting for the command to complete.
+   *
+   * @param method the HTTP method, e.g. "POST"
+   * @param target the URL of the command
+   * @param contentType the content type of the payload, e.g. "application/json"
+   * @param properties the values of the properties, in the order of the payload
+   */
+  public void performCommand(String method, String target, String contentType, Map<String, Boolean> properties) {
+    StringBuilder payload = new StringBuilder("{");
+    for (Map.Entry<String, Boolean> property : properties.entrySet()) {
+      if (payload.length() > 1) {
+        payload.append(',');
+      }
+      payload.append('"').append(property.getKey()).append("\":").append(property.getValue());
+    }
+    payload.append('}');
+
+    send(new ActionRequest(method, target, payload.toString().getBytes(StandardCharsets.UTF_8),
+      ContentType.parse(contentType)), -1);
+  }
+
+  /**
+   * Sends the request of an action or of a command after the previous actions, followed
+   * by a status read
+   *
+   * @param key the key of the action in the action space, or -1 for a command
+   */
+  private synchronized void send(ActionRequest actionRequest, int key) {
+    long sequence = ++actionCount;
+    long[] start = new long[1];
+
+    lastAction = lastAction
+      .thenCompose(v -> {
+        SimpleHttpRequest request = SimpleHttpRequests.create(actionRequest.method, actionRequest.target);
+        request.setBody(actionRequest.body, actionRequest.contentType);
+        start[0] = System.nanoTime();
+        return execute(request);
+      })
+      .handle((response, e) -> {
+        long roundTripTime = System.nanoTime() - start[0];
+        actionLatencies.record(roundTripTime);
+
+        LabEvents.ActionEvent event = new LabEvents.ActionEvent();
+        if (event.shouldCommit()) {
+          event.action = key;
+          event.statusCode = response != null ? response.getCode() : -1;
+          event.roundTripTime = roundTripTime;
+          event.commit();
+        }
+
+        // a failed action is reported, but does not prevent the following actions
+        String name = key < 0 ? "Command" : "Action " + key;
+        if (e != null) {
+          LOGGER.severe(name + " failed: " + e.getMessage());
+        } else if (response.getCode() >= 300) {
+          LOGGER.severe(name + " failed with status " + response.getCode());
+        }
+        return null;
+      });
+
+    pendingStatus = lastAction.thenCompose(v -> isLatestAction(sequence)
+      ? readStatusAsync()
+      : CompletableFuture.completedFuture(null));
+  }
+
+  /**
+   * Returns the status of the lab. If an action has been performed, the status is
+   * read after the action.
+   *
+   * @return the values of the slots of the status schema
+   * @throws IOException if the status cannot be read
+   */
+  public double[] readStatus() throws IOException {
+    CompletableFuture<double[]> status;
+    synchronized (this) {
+      status = pendingStatus != null ? pendingStatus : lastAction.thenCompose(v -> readStatusAsync());
+      pendingStatus = null;
+    }
+
+    try {
+      double[] values = status.get();
+      // the status read was skipped, since another action has been performed concurrently
+      return values != null ? values : readStatus();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Returns the number of slots of the status schema
+   */
+  public int getStatusSlotCount() {
+    return statusSchema.getSlotCount();
+  }
+
+  @Override
+  public void close() {
+    if (ownsClient) {
+      client.close(CloseMode.GRACEFUL);
+    }
+  }
+
+  private synchronized boolean isLatestAction(long sequence) {
+    return sequence == actionCount;
+  }
+
+  private CompletableFuture<double[]> readStatusAsync() {
+    long start = System.nanoTime();
+
+    return execute(SimpleHttpRequests.get(statusTarget)).thenApply(response -> {
+      long roundTripTime = System.nanoTime() - start;
+      statusLatencies.record(roundTripTime);
+
+      LabEvents.StatusReadEvent event = new LabEvents.StatusReadEvent();
+      if (event.shouldCommit()) {
+        event.statusCode = response.getCode();
+        event.roundTripTime = roundTripTime;
+        event.commit();
+      }
+
+      if (response.getCode() >= 300) {
+        throw new CompletionException(new IOException("Status read failed with status " + response.getCode()));
+      }
+      return statusSchema.decode(response.getBodyBytes(), new double[statusSchema.getSlotCount()]);
+    });
+  }
+
+  private CompletableFuture<SimpleHttpResponse> execute(SimpleHttpRequest request) {
+    CompletableFuture<SimpleHttpResponse> future = new CompletableFuture<>();
+
+    client.execute(request, new FutureCallback<SimpleHttpResponse>() {
+      @Override
+      public void completed(SimpleHttpResponse response) {
+        future.complete(response);
+      }
+
+      @Override
+      public void failed(Exception e) {
+        future.completeExceptionally(e);
+      }
+
+      @Override
+      public void cancelled() {
+        future.cancel(false);
+      }
+    });
+    return future;
+  }
+}
@@ -0,0 +1,111 @@
+package tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, which can be recorded from
+ * any thread at the cost of a few atomic increments.
+ *
+ * <p> Latencies are counted in logarithmic buckets, with {@value #SUB_BUCKETS}
+ * buckets per power of two, so that percentiles are estimated with a relative
+ * error below 1/{@value #SUB_BUCKETS}.
+ * </p>
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  /**
+   * Records a latency
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    buckets.incrementAndGet(bucket(value));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Returns the number of recorded latencies
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Returns the mean of the recorded latencies in milliseconds, or 0 if there are none
+   */
+  public double getMeanMillis() {
+    long n = count.sum();
+    return n == 0 ? 0 : toMillis(sum.sum() / n);
+  }
+
+  /**
+   * Returns the maximum of the recorded latencies in milliseconds
+   */
+  public double getMaxMillis() {
+    return toMillis(max.get());
+  }
+
+  /**
+   * Returns an estimate of a percentile of the recorded latencies in milliseconds
+   *
+   * @param percentile the percentile in [0,100], e.g. 99
+   * @return the estimate, or 0 if there are no recorded latencies
+   */
+  public double getPercentileMillis(double percentile) {
+    long n = count.sum();
+    if (n == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(n * percentile / 100);
+    long seen = 0;
+    for (int bucket = 0; bucket < buckets.length(); bucket++) {
+      seen += buckets.get(bucket);
+      if (seen >= Math.max(1, rank)) {
+        return toMillis(Math.min(upperBound(bucket), max.get()));
+      }
+    }
+    return getMaxMillis();
+  }
+
+  /**
+   * Returns the bucket of a latency: latencies below {@value #SUB_BUCKETS} have a
+   * bucket each, and every other power of two is split into {@value #SUB_BUCKETS} buckets
+   */
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the greatest latency of a bucket
+   */
+  private static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
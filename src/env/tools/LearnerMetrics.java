@@ -0,0 +1,92 @@
+package tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead counters of learning and control with a {@link QLearner}, which can
+ * be recorded from the workers that learn goals in parallel.
+ */
+public class LearnerMetrics {
+
+  private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final LongAdder episodes = new LongAdder();
+  private final LongAdder steps = new LongAdder();
+  private final LongAdder decisions = new LongAdder();
+  private final LatencyHistogram decisionLatencies = new LatencyHistogram();
+
+  private volatile int lastEpisodeSteps;
+  private volatile double lastMaxDeltaQ;
+
+  private long rateWindowStart = System.nanoTime();
+  private long rateWindowDecisions;
+  private double decisionRate;
+
+  /**
+   * Records a completed episode of learning
+   *
+   * @param episodeSteps the number of steps of the episode
+   * @param maxDeltaQ the maximum absolute change of a Q value in the episode
+   */
+  public void recordEpisode(int episodeSteps, double maxDeltaQ) {
+    episodes.increment();
+    steps.add(episodeSteps);
+    lastEpisodeSteps = episodeSteps;
+    lastMaxDeltaQ = maxDeltaQ;
+  }
+
+  /**
+   * Records a decision of the next best action
+   *
+   * @param nanos the time taken by the decision in nanoseconds
+   */
+  public void recordDecision(long nanos) {
+    decisions.increment();
+    decisionLatencies.record(nanos);
+  }
+
+  public long getEpisodeCount() {
+    return episodes.sum();
+  }
+
+  public int getLastEpisodeSteps() {
+    return lastEpisodeSteps;
+  }
+
+  /**
+   * Returns the mean number of steps per episode, or 0 if no episode has been completed
+   */
+  public double getMeanEpisodeSteps() {
+    long n = episodes.sum();
+    return n == 0 ? 0 : steps.sum() / (double) n;
+  }
+
+  public double getLastMaxDeltaQ() {
+    return lastMaxDeltaQ;
+  }
+
+  public long getDecisionCount() {
+    return decisions.sum();
+  }
+
+  public LatencyHistogram getDecisionLatencies() {
+    return decisionLatencies;
+  }
+
+  /**
+   * Returns the number of decisions per second, measured over the latest window of at
+   * least a second that has ended
+   */
+  public synchronized double getDecisionRate() {
+    long now = System.nanoTime();
+    long n = decisions.sum();
+
+    if (now - rateWindowStart >= RATE_WINDOW_NANOS) {
+      decisionRate = (n - rateWindowDecisions) * (double) TimeUnit.SECONDS.toNanos(1) / (now - rateWindowStart);
+      rateWindowStart = now;
+      rateWindowDecisions = n;
+    }
+    return decisionRate;
+  }
+}
@@ -1,6 +1,7 @@
 package tools;
 
 import java.util.*;
+import java.util.function.IntPredicate;
 
 /**
  * An abstract class for representing a learning environment which can be used
@@ -13,11 +14,57 @@ public abstract class LearningEnvironment {
    * The state space of the learning environment.
    * <p>
    * Each state is represented as a
-   * list of integer values, e.g., [0,1,0,1,0,0,2].
+   * list of integer values, e.g., [0,1,0,1,0,0,2]. The state space of an environment
+   * may be left empty if it is too large to be listed.
    * </p>
    */
   protected Set<List<Integer>> stateSpace = new HashSet<>();
 
+  /**
+   * The number of possible values of each axis of the state space, e.g.
+   * [4,4,2,2,2,2,4].
+   * <p>
+   * A state is encoded to its position in the state space with mixed-radix
+   * arithmetic, where the last axis varies fastest, e.g. the state
+   * [0,0,0,0,0,0,1] is encoded to 1 and the state [0,0,0,0,0,1,0] to 4.
+   * </p>
+   */
+  protected int[] stateRadices = new int[0];
+
+  /**
+   * The weight of each axis of the state space in the mixed-radix encoding
+   */
+  protected long[] stateStrides = new long[0];
+
+  /**
+   * The number of states of the state space, i.e. the product of the radices
+   */
+  protected long stateSpaceSize;
+
+  /**
+   * The states that have a given value on a given axis, indexed by the axis and
+   * the value, e.g. substateIndex[0][3] holds the states described as [3,_,...,_].
+   * The index is only created for state spaces of at most
+   * {@value #SUBSTATE_INDEX_LIMIT} states, and may be shared by the environments whose
+   * state spaces have the same radices (see {@link #createSubstateIndex(int)}), so it must
+   * not be modified.
+   */
+  protected BitSet[][] substateIndex;
+
+  /**
+   * The index of the visited states of a state space of more than
+   * {@link Integer#MAX_VALUE} states, or null if the states are numbered by their
+   * mixed-radix keys
+   */
+  private StateIndex stateIndex;
+
+  /**
+   * The largest state space for which the states that have a given value on a given
+   * axis are indexed. The compatible states of larger state spaces are found by
+   * decoding each state.
+   */
+  protected static final int SUBSTATE_INDEX_LIMIT = 1 << 20;
+
   /**
    * The action space of the learning environment.
    * <p>
@@ -35,12 +82,197 @@ public abstract class LearningEnvironment {
   protected List<String> affordanceTypes = new ArrayList<>();
 
   /**
-   * Returns the size of the state space
+   * Returns the size of the state space, or {@link Integer#MAX_VALUE} if the state
+   * space has more states (see {@link #isStateSpaceIndexed()}). Each state is
+   * represented by an integer value in [0, getStateCount()).
    *
    * @return the size
    */
   public int getStateCount() {
-    return stateSpace.size();
+    return (int) Math.min(stateSpaceSize, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the number of states of the state space, which may exceed the range of
+   * the integer values that represent states
+   *
+   * @return the number of states
+   */
+  public long getStateSpaceSize() {
+    return stateSpaceSize;
+  }
+
+  /**
+   * Returns true if the state space has more than {@link Integer#MAX_VALUE} states.
+   * <p>
+   * The states of such a state space are represented by the order in which they are
+   * first encoded (e.g., the first state that is read is represented by 0), rather than
+   * by their position in the state space, so that only the visited states take memory.
+   * The integer values of such states are not stable across instances of the
+   * learning environment.
+   * </p>
+   *
+   * @return true if the states are indexed in the order in which they are visited
+   */
+  public boolean isStateSpaceIndexed() {
+    return stateIndex != null;
+  }
+
+  /**
+   * Shares the indexed states of another learning environment with the same state space,
+   * so that the states are represented by the same integer values in both environments
+   * (see {@link #isStateSpaceIndexed()}), e.g. for learning a Q matrix against one
+   * environment and using it against the other
+   *
+   * @param environment the other learning environment
+   * @throws IllegalArgumentException if the state spaces differ
+   */
+  public void shareStateIndex(LearningEnvironment environment) {
+    if (!Arrays.equals(stateRadices, environment.stateRadices)) {
+      throw new IllegalArgumentException("The state spaces differ");
+    }
+    this.stateIndex = environment.stateIndex;
+  }
+
+  /**
+   * Sets the number of possible values of each axis of the state space
+   *
+   * @param radices the number of possible values of each axis
+   * @throws IllegalArgumentException if the state space has more than
+   * {@link Long#MAX_VALUE} states
+   */
+  protected void setStateRadices(int... radices) {
+    this.stateRadices = radices.clone();
+    this.stateStrides = new long[radices.length];
+
+    long stride = 1;
+    for (int axis = radices.length - 1; axis >= 0; axis--) {
+      stateStrides[axis] = stride;
+      try {
+        stride = Math.multiplyExact(stride, radices[axis]);
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException("The state space is too large: " + Arrays.toString(radices));
+      }
+    }
+
+    this.stateSpaceSize = stride;
+    this.stateIndex = stride > Integer.MAX_VALUE ? new StateIndex() : null;
+    this.substateIndex = stride <= SUBSTATE_INDEX_LIMIT ? createSubstateIndex((int) stride) : null;
+  }
+
+  /**
+   * Creates the index of the states that have a given value on a given axis. Subclasses
+   * may return the index of another environment whose state space has the same radices.
+   *
+   * @param stateCount the number of states
+   * @return the index
+   */
+  protected BitSet[][] createSubstateIndex(int stateCount) {
+    BitSet[][] index = new BitSet[stateRadices.length][];
+
+    for (int axis = 0; axis < stateRadices.length; axis++) {
+      index[axis] = new BitSet[stateRadices[axis]];
+      for (int value = 0; value < stateRadices[axis]; value++) {
+        index[axis][value] = new BitSet(stateCount);
+      }
+      for (int state = 0; state < stateCount; state++) {
+        index[axis][getSubstate(state, axis)].set(state);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the number of axes of the state space
+   *
+   * @return the number of axes
+   */
+  public int getStateAxisCount() {
+    return stateRadices.length;
+  }
+
+  /**
+   * Returns the number of possible values of an axis of the state space
+   *
+   * @param axis the axis
+   * @return the number of possible values
+   */
+  public int getStateAxisRadix(int axis) {
+    return stateRadices[axis];
+  }
+
+  /**
+   * Encodes the values of the axes of a state to the integer value that represents
+   * the state, i.e. to the position of the state in the state space, e.g.
+   * [0,0,0,0,0,0,1] is encoded to 1, or to the index of the state if the state space
+   * is indexed (see {@link #isStateSpaceIndexed()}).
+   *
+   * @param substates the values of the axes of the state
+   * @return the state
+   */
+  public int encodeState(int[] substates) {
+    long key = 0;
+    for (int axis = 0; axis < stateStrides.length; axis++) {
+      key += substates[axis] * stateStrides[axis];
+    }
+    return stateIndex == null ? (int) key : stateIndex.indexOf(key);
+  }
+
+  /**
+   * Decodes a state to the values of its axes, e.g. 1 is decoded to
+   * [0,0,0,0,0,0,1].
+   *
+   * @param state the state
+   * @param substates the array that receives the values of the axes of the state
+   * @return the given array
+   */
+  public int[] decodeState(int state, int[] substates) {
+    long key = getStateKey(state);
+    for (int axis = 0; axis < stateStrides.length; axis++) {
+      substates[axis] = getKeySubstate(key, axis);
+    }
+    return substates;
+  }
+
+  /**
+   * Returns the value of an axis of a state, e.g. the value of the axis 6 of the
+   * state 1 is 1.
+   *
+   * @param state the state
+   * @param axis the axis
+   * @return the value of the axis
+   */
+  public int getSubstate(int state, int axis) {
+    return getKeySubstate(getStateKey(state), axis);
+  }
+
+  /**
+   * Returns the position of a state in the state space (its mixed-radix key), which
+   * is the state itself unless the state space is indexed
+   *
+   * @param state the state
+   * @return the key
+   */
+  public long getStateKey(int state) {
+    return stateIndex == null ? state : stateIndex.keyOf(state);
+  }
+
+  /**
+   * Returns the value of an axis of the state with a given mixed-radix key
+   */
+  protected int getKeySubstate(long key, int axis) {
+    return (int) ((key / stateStrides[axis]) % stateRadices[axis]);
+  }
+
+  /**
+   * Returns the number of states that are represented by integer values, i.e. the
+   * number of states that have been visited if the state space is indexed, or the size
+   * of the state space otherwise
+   *
+   * @return the number of states
+   */
+  public int getKnownStateCount() {
+    return stateIndex == null ? getStateCount() : stateIndex.size();
   }
 
   /**
@@ -52,6 +284,39 @@ public abstract class LearningEnvironment {
     return actionSpace.size();
   }
 
+  /**
+   * Returns a fingerprint of the state space and the action space, i.e. of the
+   * number of values of each axis of the state space and of the tag and payload
+   * of each action. Environments with the same fingerprint can share Q matrices.
+   *
+   * @return the fingerprint
+   */
+  public long getSpaceFingerprint() {
+    StringBuilder description = new StringBuilder(Arrays.toString(stateRadices));
+    for (int action = 0; action < getActionCount(); action++) {
+      Action a = getAction(action);
+      description.append('|').append(a.getActionTag())
+        .append(Arrays.toString(a.getPayloadTags()))
+        .append(Arrays.toString(a.getPayload()));
+    }
+    return fingerprint(description.toString());
+  }
+
+  /**
+   * Returns the 64-bit FNV-1a hash of a string
+   *
+   * @param value the string
+   * @return the hash
+   */
+  public static long fingerprint(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
   /**
    * Returns an {@link Action} instance from the action space based on the given
    * key
@@ -82,7 +347,165 @@ public abstract class LearningEnvironment {
    * @param stateDescription the description of the substate
    * @return the list of integer values that represent the compatible states
    */
-  public abstract List<Integer> getCompatibleStates(List<Object> stateDescription);
+  public List<Integer> getCompatibleStates(List<Object> stateDescription) {
+    BitSet compatibleStates = getCompatibleStateSet(stateDescription);
+
+    List<Integer> states = new ArrayList<>(compatibleStates.cardinality());
+    for (int state = compatibleStates.nextSetBit(0); state >= 0; state = compatibleStates.nextSetBit(state + 1)) {
+      states.add(state);
+    }
+    return states;
+  }
+
+  /**
+   * Returns the states that are compatible to a given substate description as a
+   * set of bits, where the bit of each compatible state is set.
+   * <p>
+   * The values of the description are matched against the axes of the state
+   * space from the first axis onwards. A value that is null or "_" matches any
+   * value of its axis, e.g. [3,null,true] is compatible with all the states
+   * described as [3,_,1,_,...,_]. The given description is not modified.
+   * </p>
+   *
+   * <p>
+   * If the state space is indexed (see {@link #isStateSpaceIndexed()}), only the
+   * states that have been visited are considered.
+   * </p>
+   *
+   * @param stateDescription the description of the substate
+   * @return the set of the compatible states
+   * @see #getCompatibleStates(List)
+   */
+  public BitSet getCompatibleStateSet(List<Object> stateDescription) {
+    int stateCount = getKnownStateCount();
+    BitSet compatibleStates = new BitSet(stateCount);
+
+    int[] pattern = toStatePattern(stateDescription);
+    if (pattern == null) {
+      return compatibleStates;
+    }
+
+    if (substateIndex != null) {
+      compatibleStates.set(0, stateCount);
+      for (int axis = 0; axis < pattern.length; axis++) {
+        if (pattern[axis] >= 0) {
+          compatibleStates.and(substateIndex[axis][pattern[axis]]);
+        }
+      }
+      return compatibleStates;
+    }
+
+    for (int state = 0; state < stateCount; state++) {
+      if (matches(state, pattern)) {
+        compatibleStates.set(state);
+      }
+    }
+    return compatibleStates;
+  }
+
+  /**
+   * Returns a test of whether a state is compatible to a given substate description,
+   * which also holds for the states that are visited after the test is created if the
+   * state space is indexed (see {@link #isStateSpaceIndexed()}).
+   *
+   * @param stateDescription the description of the substate
+   * @return the test
+   * @see #getCompatibleStateSet(List)
+   */
+  public IntPredicate getCompatibleStatePredicate(List<Object> stateDescription) {
+    if (substateIndex != null) {
+      return getCompatibleStateSet(stateDescription)::get;
+    }
+
+    int[] pattern = toStatePattern(stateDescription);
+    if (pattern == null) {
+      return state -> false;
+    }
+    return state -> matches(state, pattern);
+  }
+
+  /**
+   * Returns the state that is described by a full state description, e.g. the state
+   * [3,3,0,0,1,1,2] for the description [3,3,false,false,true,true,2]
+   *
+   * @param stateDescription the description of the state
+   * @return the state, or -1 if the description does not describe a single state
+   */
+  public int getState(List<Object> stateDescription) {
+    int[] pattern = toStatePattern(stateDescription);
+    if (pattern == null || stateDescription.size() != pattern.length) {
+      return -1;
+    }
+
+    for (int value : pattern) {
+      if (value < 0) {
+        return -1;
+      }
+    }
+    return encodeState(pattern);
+  }
+
+  /**
+   * Returns the value of each axis of the state space in a substate description, or
+   * -1 for the axes that match any value
+   *
+   * @param stateDescription the description of the substate
+   * @return the values, or null if the description matches no state
+   */
+  private int[] toStatePattern(List<Object> stateDescription) {
+    if (stateDescription.size() > stateRadices.length) {
+      return null;
+    }
+
+    int[] pattern = new int[stateRadices.length];
+    Arrays.fill(pattern, -1);
+
+    for (int axis = 0; axis < stateDescription.size(); axis++) {
+      Object substate = stateDescription.get(axis);
+
+      if (substate == null || "_".equals(substate)) {
+        continue;
+      }
+
+      int value = toSubstateValue(substate);
+      if (value < 0 || value >= stateRadices[axis]) {
+        return null;
+      }
+      pattern[axis] = value;
+    }
+    return pattern;
+  }
+
+  /**
+   * Returns true if a state has the values of the axes of a pattern that do not match
+   * any value
+   */
+  private boolean matches(int state, int[] pattern) {
+    long key = getStateKey(state);
+    for (int axis = 0; axis < pattern.length; axis++) {
+      if (pattern[axis] >= 0 && getKeySubstate(key, axis) != pattern[axis]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the value of an axis of the state space that corresponds to a value
+   * of a substate description, e.g. true corresponds to 1 and 2 corresponds to 2.
+   *
+   * @param substate the value of the substate description
+   * @return the value of the axis, or -1 if there is no corresponding value
+   */
+  protected int toSubstateValue(Object substate) {
+    if (substate instanceof Boolean) {
+      return ((Boolean) substate) ? 1 : 0;
+    }
+    if (substate instanceof Number) {
+      return ((Number) substate).intValue();
+    }
+    return -1;
+  }
 
   /**
    * Returns the current state of the environment.
@@ -110,6 +533,77 @@ public abstract class LearningEnvironment {
    */
   public abstract List<Integer> getApplicableActions(int state);
 
+  /**
+   * Returns the actions that are applicable in a given state as an array.
+   * <p>
+   * Implementations may return a shared array, which must not be modified by
+   * the caller.
+   * </p>
+   *
+   * @param state the state
+   * @return the applicable actions
+   * @see #getApplicableActions(int)
+   */
+  public int[] getApplicableActionArray(int state) {
+    return getApplicableActions(state).stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Returns the actions that are applicable in a given state as a mask, where the bit
+   * of each applicable action is set (e.g., 0b101 for the actions 0 and 2). The mask
+   * is only defined for action spaces of at most 64 actions.
+   *
+   * @param state the state
+   * @return the mask of the applicable actions
+   * @see #getApplicableActions(int)
+   */
+  public long getApplicableActionMask(int state) {
+    long mask = 0L;
+    for (int action : getApplicableActionArray(state)) {
+      mask |= 1L << action;
+    }
+    return mask;
+  }
+
+  /**
+   * Returns the state that has the values of the actuators of a state, i.e. of the axes
+   * on which the actions are applicable, and the first value of each other axis, which
+   * stands for the configuration of the actuators of the state (see {@link #reset(int)})
+   *
+   * @param state the state
+   * @return the state of the configuration of the actuators
+   */
+  public int getActuatorConfiguration(int state) {
+    int[] substates = decodeState(state, new int[stateRadices.length]);
+    int[] configuration = new int[stateRadices.length];
+    for (Action action : actionSpace.values()) {
+      int axis = action.getApplicableOnStateAxis();
+      configuration[axis] = substates[axis];
+    }
+    return encodeState(configuration);
+  }
+
+  /**
+   * Returns whether the environment can be reset, i.e. whether its actuators can be set
+   * to a configuration in a single command (see {@link #reset(int)})
+   */
+  public boolean supportsReset() {
+    return false;
+  }
+
+  /**
+   * Resets the environment by setting its actuators to their values in a state, in a
+   * single command instead of one action per actuator. The other axes of the state, e.g.
+   * the light levels, follow the actuators in the environment, so the state after a reset
+   * is read with {@link #readCurrentState()}.
+   *
+   * @param state the state whose actuator values are set
+   * @throws UnsupportedOperationException if the environment cannot be reset
+   */
+  public void reset(int state) {
+    throw new UnsupportedOperationException("The environment cannot be reset");
+  }
+
   /**
    * Performs an action in the environment.
    * <p>
@@ -0,0 +1,160 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * A map of primitive long keys to int values, as an open-addressing hash table with
+ * linear probing, which does not box its keys nor allocate per entry. The keys must not
+ * be negative, and the values must not be {@link #NO_VALUE}. Entries are not removed.
+ *
+ * <p> The map backs the tables whose entries are indexed by states or by pairs of a
+ * state and an action, e.g. the rows of a {@link SparseQTable}, the indexes of a
+ * {@link StateIndex} and the observed pairs of a {@link TransitionModel}, so that their
+ * memory scales with the number of visited states rather than with the state space.
+ * The table is kept at most half full.
+ * </p>
+ */
+final class LongIntHashMap {
+
+  /**
+   * The value of the keys that are not in the map
+   */
+  static final int NO_VALUE = -1;
+
+  /**
+   * The key of the empty slots
+   */
+  static final long EMPTY = -1L;
+
+  /**
+   * The keys of the slots, or {@link #EMPTY}
+   */
+  private long[] keys;
+
+  /**
+   * The value of the key of each slot
+   */
+  private int[] values;
+
+  private int size;
+
+  /**
+   * A {@link LongIntHashMap} instance is constructed based on its initial number of
+   * slots, which is doubled whenever the map is half full
+   *
+   * @param capacity the initial number of slots, a power of two
+   */
+  LongIntHashMap(int capacity) {
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+  }
+
+  /**
+   * Returns the number of keys of the map
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the value of a key
+   *
+   * @param key the key
+   * @return the value, or {@link #NO_VALUE} if the key is not in the map
+   */
+  int get(long key) {
+    int slot = find(key);
+    return keys[slot] == EMPTY ? NO_VALUE : values[slot];
+  }
+
+  /**
+   * Puts a key with a value, unless the key is in the map
+   *
+   * @param key the key, which is not negative
+   * @param value the value
+   * @return the value of the key if it was in the map, or {@link #NO_VALUE} if it has
+   * been put with the given value
+   */
+  int putIfAbsent(long key, int value) {
+    int slot = find(key);
+    if (keys[slot] != EMPTY) {
+      return values[slot];
+    }
+
+    if ((size + 1) * 2L > keys.length) {
+      grow();
+      slot = find(key);
+    }
+    keys[slot] = key;
+    values[slot] = value;
+    size++;
+    return NO_VALUE;
+  }
+
+  /**
+   * Returns the number of slots of the hash table, over which the entries of the map are
+   * iterated with {@link #keyAt(int)} and {@link #valueAt(int)}
+   */
+  int capacity() {
+    return keys.length;
+  }
+
+  /**
+   * Returns the key of a slot, or {@link #EMPTY}
+   */
+  long keyAt(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * Returns the value of the key of a slot that is not empty
+   */
+  int valueAt(int slot) {
+    return values[slot];
+  }
+
+  /**
+   * Returns the number of bytes of the hash table
+   */
+  long getByteSize() {
+    return (long) keys.length * Long.BYTES + (long) values.length * Integer.BYTES;
+  }
+
+  /**
+   * Returns the slot of a key, or the empty slot where it would be put
+   */
+  private int find(long key) {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (keys[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Doubles the capacity of the hash table
+   */
+  private void grow() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+
+    keys = new long[oldKeys.length * 2];
+    values = new int[oldKeys.length * 2];
+    Arrays.fill(keys, EMPTY);
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = find(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
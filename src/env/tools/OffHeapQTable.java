@@ -0,0 +1,58 @@
+package tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link QTable} that keeps the Q values off the heap as doubles, in row-major
+ * order, so that the Q matrices of many goals do not count against the heap.
+ *
+ * <p> The Q values are kept in a direct buffer in the native byte order, whose memory
+ * is released when the Q matrix is garbage collected.
+ * </p>
+ */
+public final class OffHeapQTable implements QTable {
+
+  private final int stateCount;
+  private final int actionCount;
+  private final ByteBuffer values;
+
+  /**
+   * A {@link OffHeapQTable} instance is constructed based on the number of states and
+   * actions, with Q values of 0
+   *
+   * @param stateCount the number of states
+   * @param actionCount the number of actions
+   */
+  public OffHeapQTable(int stateCount, int actionCount) {
+    this.stateCount = stateCount;
+    this.actionCount = actionCount;
+    this.values = ByteBuffer.allocateDirect(Math.multiplyExact(Math.multiplyExact(stateCount, actionCount),
+      Double.BYTES)).order(ByteOrder.nativeOrder());
+  }
+
+  @Override
+  public int getStateCount() {
+    return stateCount;
+  }
+
+  @Override
+  public int getActionCount() {
+    return actionCount;
+  }
+
+  @Override
+  public double get(int state, int action) {
+    return values.getDouble((state * actionCount + action) << 3);
+  }
+
+  @Override
+  public void set(int state, int action, double value) {
+    values.putDouble((state * actionCount + action) << 3, value);
+  }
+
+  @Override
+  public long getByteSize() {
+    return values.capacity();
+  }
+}
@@ -0,0 +1,147 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * An immutable greedy policy that is compiled from the Q matrix of a goal, with the
+ * applicable action of maximum Q value of each state (see {@link ActionKernels#argmax}),
+ * so that the best action of a state is a single array load.
+ *
+ * <p> The policy of a dense Q matrix holds an action for each state. The policy of a
+ * {@link SparseQTable} only holds the actions of the states whose Q values are kept,
+ * which are found by binary search; the other states have Q values of 0 for all actions.
+ * A policy does not change once compiled, so it can be read from any thread while
+ * another Q matrix of the goal is learnt.
+ * </p>
+ * <p> The policy of a goal that has been learnt with tile coding also holds the
+ * {@link TileCodedQFunction} of the goal, which decides over the status of the lab (see
+ * {@link #getAction(double[], long)}), e.g. between 310 and 900 lux in the same light
+ * level. Its actions per state are compiled from the Q function at the mean status of
+ * each visited state, for the decisions that only know the state. The active features of
+ * a status are computed into an array of the deciding thread, which is allocated once
+ * per thread, so a decision over a status does not allocate either.
+ * </p>
+ */
+public final class Policy {
+
+  /**
+   * The active features of the status of the latest decision over a status of each
+   * thread (see {@link #getAction(double[], long)})
+   */
+  private static final ThreadLocal<int[]> FEATURES = ThreadLocal.withInitial(() -> new int[0]);
+
+  /**
+   * The states of the actions, in ascending order, or null if the policy holds an
+   * action for each state
+   */
+  private final int[] states;
+
+  /**
+   * The action of each state, or -1 if no action is applicable in the state
+   */
+  private final int[] actions;
+
+  /**
+   * The Q function that decides over the status of the lab, or null
+   */
+  private final TileCodedQFunction qFunction;
+
+  private Policy(int[] states, int[] actions, TileCodedQFunction qFunction) {
+    this.states = states;
+    this.actions = actions;
+    this.qFunction = qFunction;
+  }
+
+  /**
+   * Compiles the policy of a Q matrix
+   *
+   * @param qTable the Q matrix
+   * @param environment the learning environment of the Q matrix, which provides the
+   * applicable actions of each state
+   * @return the policy
+   */
+  public static Policy compile(QTable qTable, LearningEnvironment environment) {
+    if (qTable instanceof SparseQTable) {
+      int[] states = ((SparseQTable) qTable).getStates();
+      Arrays.sort(states);
+
+      int[] actions = new int[states.length];
+      for (int i = 0; i < states.length; i++) {
+        actions[i] = ActionKernels.argmax(qTable, states[i], environment.getApplicableActionMask(states[i]));
+      }
+      return new Policy(states, actions, null);
+    }
+
+    int[] actions = new int[qTable.getStateCount()];
+    for (int state = 0; state < actions.length; state++) {
+      actions[state] = ActionKernels.argmax(qTable, state, environment.getApplicableActionMask(state));
+    }
+    return new Policy(null, actions, null);
+  }
+
+  /**
+   * Compiles the policy of a tile-coded Q function and of the Q matrix into which it has
+   * been compiled
+   *
+   * @param qFunction the Q function, which must not change once compiled (see
+   * {@link TileCodedQFunction#copy()})
+   * @param qTable the Q matrix
+   * @param environment the learning environment of the Q matrix
+   * @return the policy
+   */
+  public static Policy compile(TileCodedQFunction qFunction, QTable qTable, LearningEnvironment environment) {
+    Policy policy = compile(qTable, environment);
+    return new Policy(policy.states, policy.actions, qFunction);
+  }
+
+  /**
+   * Returns the action of a state
+   *
+   * @param state the state
+   * @return the applicable action of maximum Q value, or -1 if the policy holds no
+   * action for the state
+   */
+  public int getAction(int state) {
+    if (states == null) {
+      return state >= 0 && state < actions.length ? actions[state] : -1;
+    }
+    int i = Arrays.binarySearch(states, state);
+    return i < 0 ? -1 : actions[i];
+  }
+
+  /**
+   * Returns whether the policy decides over the status of the lab, i.e. whether it has
+   * been compiled from a tile-coded Q function
+   */
+  public boolean hasQFunction() {
+    return qFunction != null;
+  }
+
+  /**
+   * Returns the action of a status of the lab, with the tile-coded Q function of the policy
+   *
+   * @param status the values of the status (see {@link Lab#getCurrentStatus(double[])})
+   * @param actionMask the mask of the applicable actions of the state of the status
+   * @return the applicable action of maximum Q value, or -1 if no action is applicable
+   * @throws IllegalStateException if the policy has no Q function
+   */
+  public int getAction(double[] status, long actionMask) {
+    if (qFunction == null) {
+      throw new IllegalStateException("The policy has no Q function");
+    }
+    int[] features = FEATURES.get();
+    if (features.length != qFunction.getTilings()) {
+      features = new int[qFunction.getTilings()];
+      FEATURES.set(features);
+    }
+    qFunction.activate(status, features);
+    return qFunction.argmax(features, actionMask);
+  }
+
+  /**
+   * Returns the number of states for which the policy holds an action
+   */
+  public int getStateCount() {
+    return actions.length;
+  }
+}
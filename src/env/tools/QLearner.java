@@ -1,6 +1,9 @@
 package tools;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 import cartago.Artifact;
 import cartago.OPERATION;
@@ -8,32 +11,508 @@ import cartago.OpFeedbackParam;
 
 public class QLearner extends Artifact {
 
+  private String environmentURL; // the URL of the lab environment, used for creating independent instances of it
   private Lab lab; // the lab environment that will be learnt 
   private int stateCount; // the number of possible states in the lab environment
   private int actionCount; // the number of possible actions in the lab environment
-  private HashMap<Integer, double[][]> qTables; // a map for storing the qTables computed for different goals
+  private Map<Long, QTable> qTables; // a map for storing the qTables computed for different goals, by goal fingerprint
+  private Map<Long, Policy> policies; // the policies compiled from the qTables, which are replaced as a whole when a goal is learnt again
+  private Discretization discretization = Discretization.DEFAULT; // the discretization of the status of the lab
+  private long spaceFingerprint; // the fingerprint of the state space and action space of the lab environment
+  private Trainer trainer; // the training of the goals against the lab, with the settings of the trainings
+  private LearnerMetrics metrics; // the counters of learning and control
+  private Map<Long, long[]> controlStarts; // the start time and number of decisions of each goal that is pursued
+  private boolean observable; // whether the artifact publishes observable properties, i.e. it runs in a workspace
+  private Map<String, Lab> rooms; // the labs of the rooms that the artifact manages in pooled mode, by room name
+  private LabPool roomPool; // the pool of the labs of the rooms, which share their descriptions and tables
+  private Map<String, RoomController> roomControllers; // the control loops of the rooms that are controlled, by room name
+  private ExecutorService roomExecutor; // the executor of the control loops of the rooms, on virtual threads if supported
+  private TraceRecorder trace; // the trace of the episodes, steps and decisions of the learner, dumped on demand or on failure
+
+  // the largest number of goals that are learnt from episodes by calculateQForAllGoals, one training each
+  private static final int ALL_GOALS_LIMIT = 1 << 12;
+
+  // the time that the disposal of the artifact waits for each of its executors to terminate
+  private static final long DISPOSE_TIMEOUT_SECONDS = 5;
 
   private static final Logger LOGGER = Logger.getLogger(QLearner.class.getName());
 
   public void init(String environmentURL) {
+    try {
+      initEnvironment(environmentURL);
+    } catch (IllegalStateException e) {
+      failed(e.getMessage());
+      return;
+    }
 
-    // the URL of the W3C Thing Description of the lab Thing
-    this.lab = new Lab(environmentURL);
+    // the metrics of learning and control, updated at the end of each operation
+    defineObsProperty("episode_steps", 0, 0.0); // steps of the latest episode, mean steps per episode
+    defineObsProperty("max_delta_q", 0.0); // maximum change of a Q value in the latest episode
+    defineObsProperty("action_rtt", 0.0, 0.0); // median and 99th percentile of the action round trip times in ms
+    defineObsProperty("status_rtt", 0.0, 0.0); // median and 99th percentile of the status round trip times in ms
+    defineObsProperty("decisions_per_second", 0.0);
+    defineObsProperty("time_to_goal", 0.0, 0); // time in ms and number of decisions for achieving the latest goal
+    // id, status, completed episodes, requested episodes, epsilon and max delta Q of the latest background training
+    defineObsProperty("training", 0, "none", 0, 0, 0.0, 0.0);
+    observable = true;
+  }
+
+  /**
+  * Initializes the lab environment and the learning state of the artifact, without
+  * observable properties (e.g., for benchmarks that run outside of a workspace)
+  *
+  * @param environmentURL the URL of the lab environment (see {@link #init(String)})
+  */
+  void initEnvironment(String environmentURL) {
+
+    // the URL of the W3C Thing Description of the lab Thing,
+    // or a URL of the form sim:<sunshine model>[?seed=<seed>][&zones=<zones>] for an in-process simulated lab
+    this.environmentURL = environmentURL;
+    this.lab = createLab(environmentURL, discretization);
 
     this.stateCount = this.lab.getStateCount();
-    LOGGER.info("Initialized with a state space of n="+ stateCount);
+    LOGGER.info("Initialized with " + lab.getZoneCount() + " zones and a state space of n="
+      + lab.getStateSpaceSize());
 
     this.actionCount = this.lab.getActionCount();
     LOGGER.info("Initialized with an action space of m="+ actionCount);
 
-    qTables = new HashMap<>();
+    this.spaceFingerprint = this.lab.getSpaceFingerprint();
+
+    qTables = new ConcurrentHashMap<>();
+    policies = new ConcurrentHashMap<>();
+    metrics = new LearnerMetrics();
+    controlStarts = new ConcurrentHashMap<>();
+    rooms = new ConcurrentHashMap<>();
+    roomPool = new LabPool();
+    roomControllers = new ConcurrentHashMap<>();
+    trace = new TraceRecorder(TraceRecorder.DEFAULT_CAPACITY);
+    trainer = new Trainer(lab, environmentURL, discretization, metrics, trace, this::publishQTable,
+      this::publishTrainingProgress);
+  }
+
+  /**
+  * Initializes the artifact with a persistent store of Q matrices. Q matrices that have
+  * been learnt against the same state space and action space are read from the store
+  * when they are first needed, instead of being learnt again, and interrupted trainings
+  * are resumed from their latest checkpoint.
+  *
+  * @param environmentURL the URL of the lab environment (see {@link #init(String)})
+  * @param storeDirectory the directory of the store
+  */
+  public void init(String environmentURL, String storeDirectory) {
+    init(environmentURL);
+    if (lab == null) {
+      return;
+    }
+
+    try {
+      trainer.setStore(new QTableStore(Paths.get(storeDirectory)));
+    } catch (IOException e) {
+      LOGGER.severe(e.getMessage());
+    }
+  }
+
+  /**
+  * Initializes the artifact with the bin boundaries of the discretization of the status
+  * of the lab, e.g. [[10,20,30,...,300],[50,200,700]] for light levels in bands of 10 lux.
+  * The last list holds the boundaries of the sunshine, and the previous lists hold the
+  * boundaries of the light level of each zone, where the last of them also applies to the
+  * following zones (see {@link Discretization}). For state spaces of more than
+  * {@value Trainer#SPARSE_QTABLE_STATE_COUNT} states, the Q matrices only keep the Q values
+  * of the visited states.
+  *
+  * @param environmentURL the URL of the lab environment (see {@link #init(String)})
+  * @param storeDirectory the directory of the store (see {@link #init(String, String)}),
+  * or an empty string for learning without a store
+  * @param binBoundaries the lists of bin boundaries
+  */
+  public void init(String environmentURL, String storeDirectory, Object[] binBoundaries) {
+    try {
+      this.discretization = Discretization.fromBoundaries(binBoundaries);
+      LOGGER.info("Discretization: " + discretization);
+    } catch (IllegalArgumentException e) {
+      LOGGER.severe(e.getMessage() + ", using the default discretization");
+    }
+
+    if (storeDirectory.isEmpty()) {
+      init(environmentURL);
+    } else {
+      init(environmentURL, storeDirectory);
+    }
+  }
+
+/**
+* Sets the number of planning updates that are performed after each step in the lab
+* (Dyna-Q). Each planning update samples a previously observed pair of a state and an
+* action, simulates its next state with the transition model that has been learnt from
+* the observed transitions, and updates the Q matrix as if the transition had taken place.
+* With 0 planning updates (the default), the Q matrix is only updated from the transitions
+* observed in the lab.
+*
+* @param planningStepsObj the number of planning updates per step in the lab
+**/
+  @OPERATION
+  public void setPlanningSteps(Object planningStepsObj) {
+    int planningSteps = Integer.valueOf(planningStepsObj.toString());
+    trainer.setPlanningSteps(planningSteps);
+    LOGGER.info("Planning updates per step: " + planningSteps);
+  }
+
+/**
+* Sets the type of the Q matrices that are learnt after this operation: "double" (the
+* default) or "float" for Q matrices on the heap, where float Q matrices take half the
+* memory, or "offheap" for Q matrices of doubles off the heap.
+*
+* @param qTableTypeObj the type of the Q matrices
+**/
+  @OPERATION
+  public void setQTableType(Object qTableTypeObj) {
+    String type = qTableTypeObj.toString();
+    try {
+      QTable.create(type, 0, 0);
+      trainer.setQTableType(type);
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
+    }
+  }
+
+/**
+* Sets the decay of the exploration probability and of the learning rate in the trainings
+* that start after this operation. In episode i (from 0), the exploration probability is
+* max(epsilon * epsilonDecay^i, minEpsilon) and the learning rate is max(alpha * alphaDecay^i,
+* minAlpha), where epsilon and alpha are the ones given to the training. With decay factors
+* of 1 (the default), the exploration probability and the learning rate are constant.
+*
+* @param epsilonDecayObj the factor of the exploration probability per episode, in (0,1]
+* @param minEpsilonObj the floor of the exploration probability
+* @param alphaDecayObj the factor of the learning rate per episode, in (0,1]
+* @param minAlphaObj the floor of the learning rate
+**/
+  @OPERATION
+  public void setDecay(Object epsilonDecayObj, Object minEpsilonObj, Object alphaDecayObj, Object minAlphaObj) {
+    try {
+      trainer.setSchedule(trainer.getSchedule().withDecay(Double.valueOf(epsilonDecayObj.toString()),
+        Double.valueOf(minEpsilonObj.toString()), Double.valueOf(alphaDecayObj.toString()),
+        Double.valueOf(minAlphaObj.toString())));
+      LOGGER.info("Training schedule: " + trainer.getSchedule());
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
+    }
+  }
+
+/**
+* Sets the criterion for stopping the trainings that start after this operation before
+* the requested number of episodes. A training stops when, in each of the last windowObj
+* episodes that have made an update, no Q value has changed by more than thresholdObj
+* and the greedy action of no state has changed, and it reports the number of episodes that it has used (see
+* {@link #calculateQ(Object[], Object, Object, Object, Object, Object, OpFeedbackParam)}).
+* With a window of 0 (the default), all the requested episodes are run.
+*
+* @param windowObj the number of consecutive converged episodes, e.g. 20, where the
+* episodes that start at a goal state are not counted
+* @param thresholdObj the largest change of a Q value in a converged episode, e.g. 0.01
+**/
+  @OPERATION
+  public void setConvergence(Object windowObj, Object thresholdObj) {
+    try {
+      trainer.setSchedule(trainer.getSchedule().withConvergence(Integer.valueOf(windowObj.toString()),
+        Double.valueOf(thresholdObj.toString())));
+      LOGGER.info("Training schedule: " + trainer.getSchedule());
+    } catch (IllegalArgumentException e) {
+      failed(e.getMessage());
+    }
+  }
+
+/**
+* Seeds the random number generator of the learner, which is used for exploring the lab
+* and for planning. Against a simulated lab with a seed (see {@link SimulatedLab}),
+* the Q matrices learnt after seeding are reproducible bit for bit, also when several
+* goals are learnt in parallel, since each goal is learnt with its own generator that
+* is split from the generator of the learner in the order of the goals.
+*
+* @param seedObj the seed
+**/
+  @OPERATION
+  public void setRandomSeed(Object seedObj) {
+    trainer.setRandomSeed(Long.valueOf(seedObj.toString()));
+  }
+
+/**
+* Sets whether the episodes of the trainings start by resetting the lab to a configuration
+* of its lights and blinds with a single command (exploring starts, see
+* {@link ExploringStarts}), instead of performing 10 random actions. The configurations are
+* chosen towards the states that have been visited least. Labs can be reset if they run
+* in-process or if their Thing Description has a SetActuators action (see {@link LabServer}).
+*
+* @param enabledObj whether the episodes start by resetting the lab
+**/
+  @OPERATION
+  public void setExploringStarts(Object enabledObj) {
+    boolean enabled = Boolean.parseBoolean(enabledObj.toString());
+    if (enabled && !lab.supportsReset()) {
+      failed("The lab cannot be reset, its Thing Description has no action that sets all its lights and blinds");
+      return;
+    }
+    if (enabled && lab.isStateSpaceIndexed()) {
+      failed("The states of the lab are indexed as they are visited, the configurations cannot be swept");
+      return;
+    }
+    trainer.setExploringStarts(enabled);
+    LOGGER.info("Exploring starts: " + enabled);
+  }
+
+/**
+* Sets whether the goals are learnt with a linear approximation of the Q values over the
+* light levels and the sunshine in lux, with tile coding (see {@link TileCodedQFunction}),
+* instead of a Q matrix over the discretized states. The approximation distinguishes
+* statuses within the same light level, generalizes each update to the neighbouring
+* statuses, and takes the same memory whatever its resolution. The policy of a goal learnt
+* this way decides over the status of the room in the control loops of the rooms (see
+* {@link #controlRoom}), and its Q matrix is compiled from the approximation at the mean
+* status of each visited state, for the decisions that only know the state (see
+* {@link #getActionFromState}).
+*
+* @param tilingsObj the number of tilings, e.g. 8, or 0 for learning Q matrices
+* @param tilesObj the number of tiles of each tiling over 1000 lux, e.g. 10 for tiles of 100 lux
+**/
+  @OPERATION
+  public void setTileCoding(Object tilingsObj, Object tilesObj) {
+    int tilings = Integer.valueOf(tilingsObj.toString());
+    int tiles = Integer.valueOf(tilesObj.toString());
+    if (tilings < 0 || (tilings > 0 && tiles < 1)) {
+      failed("Invalid tile coding: " + tilings + " tilings of " + tiles + " tiles");
+      return;
+    }
+    trainer.setTileCoding(tilings, tiles);
+    LOGGER.info(tilings == 0 ? "Learning Q matrices" : "Tile coding: " + tilings + " tilings of " + tiles + " tiles");
+  }
+
+/**
+* Starts logging the transitions that are observed in the lab during training to an
+* append-only binary log, which can be replayed with {@link #calculateQFromExperience}.
+* Each transition is logged with the status of the lab from which its next state has
+* been discretized, i.e. the inputs of its reward. If the log file exists, the
+* transitions are appended to it. The log cannot be replaced while a training runs in the
+* background, since the training appends to it.
+*
+* @param logFileObj the path of the log file
+**/
+  @OPERATION
+  public void setExperienceLog(Object logFileObj) {
+    try {
+      trainer.setExperienceLog(Paths.get(logFileObj.toString()));
+    } catch (IOException | IllegalStateException e) {
+      failed(e.getMessage());
+    }
+  }
+
+/**
+* Sets the level of detail of the trace of the learner (see {@link TraceRecorder}), which
+* keeps the latest records of the trainings and of the control in memory: "off",
+* "episodes" (the default) for the episodes and the decisions, or "steps" for the steps
+* of the episodes as well.
+*
+* @param levelObj the level
+* @param samplingObj the period of the episodes whose steps are traced, e.g. 10 for the
+* steps of one episode out of 10
+**/
+  @OPERATION
+  public void setTraceLevel(Object levelObj, Object samplingObj) {
+    try {
+      trace.setLevel(TraceRecorder.Level.valueOf(levelObj.toString().toUpperCase(Locale.ROOT)),
+        Integer.valueOf(samplingObj.toString()));
+    } catch (IllegalArgumentException e) {
+      failed("Invalid trace level " + levelObj + " or sampling period " + samplingObj);
+    }
+  }
+
+/**
+* Sets the level of detail of the trace of the learner, with the steps of all the
+* episodes traced at the level "steps"
+*
+* @see #setTraceLevel(Object, Object)
+**/
+  @OPERATION
+  public void setTraceLevel(Object levelObj) {
+    setTraceLevel(levelObj, 1);
+  }
+
+/**
+* Writes the latest records of the trace of the learner to a file, which can be decoded
+* into a timeline with {@link TraceDecoder}. The trace is also dumped to a temporary file
+* whenever a training or the control of a room fails.
+*
+* @param traceFileObj the path of the file
+**/
+  @OPERATION
+  public void dumpTrace(Object traceFileObj) {
+    try {
+      int count = trace.dump(Paths.get(traceFileObj.toString()));
+      LOGGER.info("Dumped the trace of " + count + " records to " + traceFileObj);
+    } catch (IOException e) {
+      failed(e.getMessage());
+    }
+  }
+
+/**
+* Computes a Q matrix against a goal description by replaying the transitions of an
+* experience log (see {@link #setExperienceLog}), without interacting with the lab.
+* In each pass, the Q matrix is updated once for each transition of the log.
+*
+*<p>
+* The states of the transitions that have been logged with the status of the lab are
+* discretized again from their statuses with the discretization of the artifact, so a log
+* is also replayed against another discretization of the same lab (see
+* {@link #init(String, String, Object[])}). The transitions from a state that no previous
+* transition of the log has reached, e.g. the first transition of the log, are then
+* dropped, since their statuses are not logged.
+*</p>
+* @param  goalDescription  the desired goal against the which the Q matrix is calculated (e.g., [2,3])
+* @param  logFileObj the path of the log file
+* @param  passesObj the number of passes over the transitions of the log
+* @param  alphaObj the learning rate with range [0,1].
+* @param  gammaObj the discount factor [0,1]
+* @param rewardObj the reward assigned when reaching the goal state
+**/
+  @OPERATION
+  public void calculateQFromExperience(Object[] goalDescription, Object logFileObj, Object passesObj,
+      Object alphaObj, Object gammaObj, Object rewardObj) {
+
+    // ensure that the right datatypes are used
+    int passes = Integer.valueOf(passesObj.toString());
+    double alpha = Double.valueOf(alphaObj.toString());
+    double gamma = Double.valueOf(gammaObj.toString());
+    int reward = Integer.valueOf(rewardObj.toString());
+
+    try {
+      trainer.replay(goalDescription, Paths.get(logFileObj.toString()), passes, alpha, gamma, reward);
+    } catch (IOException e) {
+      failed(e.getMessage());
+    }
+  }
+
+  /**
+  * Creates a lab based on a URL
+  *
+  * @param environmentURL the URL of the W3C Thing Description of the lab Thing,
+  * or a URL of the form sim:&lt;sunshine model&gt;[?seed=&lt;seed&gt;][&amp;zones=&lt;zones&gt;]
+  * @param discretization the discretization of the light levels and of the sunshine
+  * @return the lab
+  * @throws IllegalStateException if the Thing Description of the lab cannot be read
+  */
+  static Lab createLab(String environmentURL, Discretization discretization) {
+    return createLab(environmentURL, discretization, null);
+  }
+
+  /**
+  * Creates a lab based on a URL, which may be one of many labs that are managed in the
+  * same JVM (see {@link Lab#Lab(String, Discretization, LabPool)})
+  *
+  * @param environmentURL the URL of the lab (see {@link #createLab(String, Discretization)})
+  * @param discretization the discretization of the light levels and of the sunshine
+  * @param pool the pool of the lab, or null
+  * @return the lab
+  */
+  static Lab createLab(String environmentURL, Discretization discretization, LabPool pool) {
+    if (SimulatedLab.isSimulatedLabURL(environmentURL)) {
+      return SimulatedLab.fromURL(environmentURL, discretization, pool);
+    }
+    return new Lab(environmentURL, discretization, pool);
+  }
+
+  /**
+  * Returns the executor of the control loops of the rooms
+  */
+  private synchronized ExecutorService getRoomExecutor() {
+    if (roomExecutor == null) {
+      roomExecutor = newRoomExecutor();
+    }
+    return roomExecutor;
+  }
+
+  /**
+  * Creates an executor that runs each task on a new virtual thread, or on a new daemon
+  * platform thread on JVMs without virtual threads (before Java 21). The executor is
+  * looked up reflectively, since the project also builds with earlier versions of Java.
+  */
+  private static ExecutorService newRoomExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOGGER.info("Virtual threads are not available, the rooms are controlled on platform threads");
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "qlearner-room");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+  * Publishes the progress of a training from the thread of the training, and the policy
+  * of its goal learnt so far, if any
+  *
+  * @param handle the handle of the training
+  * @param policy the policy, or null when the training ends
+  */
+  private void publishTrainingProgress(TrainingHandle handle, Policy policy) {
+    if (policy != null) {
+      policies.put(goalFingerprint(handle.getGoalDescription()), policy);
+    }
+    publishTrainingProgress(handle, true);
+  }
+
+  /**
+  * Publishes the progress of a training as the observable property training
+  *
+  * @param handle the handle of the training
+  * @param externalSession whether the progress is published outside of an operation of
+  * the artifact, i.e. from the thread of the training
+  */
+  private void publishTrainingProgress(TrainingHandle handle, boolean externalSession) {
+    if (!observable || !trainer.isLatestTraining(handle)) {
+      return;
+    }
+
+    if (!externalSession) {
+      getObsProperty("training").updateValues(handle.getProgress());
+      return;
+    }
+
+    beginExternalSession();
+    boolean success = false;
+    try {
+      getObsProperty("training").updateValues(handle.getProgress());
+      success = true;
+    } finally {
+      endExternalSession(success);
+    }
+  }
+
+  /**
+  * Returns the fingerprint of a goal description, which does not depend on the
+  * types of the numbers of the description (e.g., [2,3] and [2.0,3.0]). The Q matrices
+  * of the goals are kept by the fingerprints of their descriptions.
+  *
+  * @param goalDescription the goal description
+  * @return the fingerprint
+  */
+  static long goalFingerprint(Object[] goalDescription) {
+    StringBuilder description = new StringBuilder();
+    for (Object substate : goalDescription) {
+      description.append(substate instanceof Number ? String.valueOf(((Number) substate).intValue()) : substate)
+        .append(',');
+    }
+    return LearningEnvironment.fingerprint(description.toString());
   }
 
 /**
 * Computes a Q matrix for the state space and action space of the lab, and against
 * a goal description. For example, the goal description can be of the form [z1level, z2Level],
 * where z1Level is the desired value of the light level in Zone 1 of the lab,
-* and z2Level is the desired value of the light level in Zone 2 of the lab.
+* and z2Level is the desired value of the light level in Zone 2 of the lab. For a lab of
+* N zones, the goal description can be of the form [z1Level, ..., zNLevel].
 * For exercise 11, the possible goal descriptions are:
 * [0,0], [0,1], [0,2], [0,3], 
 * [1,0], [1,1], [1,2], [1,3], 
@@ -54,6 +533,20 @@ public class QLearner extends Artifact {
 **/
   @OPERATION
   public void calculateQ(Object[] goalDescription , Object episodesObj, Object alphaObj, Object gammaObj, Object epsilonObj, Object rewardObj) {
+    calculateQ(goalDescription, episodesObj, alphaObj, gammaObj, epsilonObj, rewardObj, new OpFeedbackParam<>());
+  }
+
+/**
+* Computes a Q matrix against a goal description, and returns the number of episodes
+* that have been used, which is less than the requested number of episodes if the
+* training has converged before (see {@link #setConvergence(Object, Object)}).
+*
+* @param  episodesUsed the (returned) number of episodes that have been used
+* @see #calculateQ(Object[], Object, Object, Object, Object, Object)
+**/
+  @OPERATION
+  public void calculateQ(Object[] goalDescription , Object episodesObj, Object alphaObj, Object gammaObj, Object epsilonObj, Object rewardObj,
+      OpFeedbackParam<Integer> episodesUsed) {
     
     // ensure that the right datatypes are used
     Integer episodes = Integer.valueOf(episodesObj.toString());
@@ -62,102 +555,288 @@ public class QLearner extends Artifact {
     Double epsilon = Double.valueOf(epsilonObj.toString());
     Integer reward = Integer.valueOf(rewardObj.toString());
 
+    try {
+      episodesUsed.set(trainer.train(goalDescription, episodes, alpha, gamma, epsilon, reward));
+    } catch (IllegalStateException e) {
+      failed(e.getMessage());
+      return;
+    }
+    publishMetrics();
+  }
 
-    // get all possible goal states from goal description
-    var goalStates = lab.getCompatibleStates(Arrays.asList(goalDescription));
-    LOGGER.info("Goal States: "+ goalStates);
+/**
+* Starts computing a Q matrix against a goal description in the background, and returns
+* the id of the training at once. The trainings started in the background run one after
+* another, and the other trainings against the lab of the artifact fail while a training
+* runs or is queued in the background.
+*
+*<p>
+* The progress of the latest training is published as the observable property
+* training(Id, Status, Episode, Episodes, Epsilon, MaxDeltaQ), where the status is "queued",
+* "running", "paused", "cancelled", "completed" or "failed", after the first episode and then
+* at most once per second. Whenever the progress is published, the policy of the goal is
+* compiled from the Q matrix learnt so far, so that {@link #getActionFromState} serves the
+* goal before the training completes.
+*</p>
+* @param  trainingId the (returned) id of the training, for {@link #pauseTraining},
+* {@link #resumeTraining} and {@link #cancelTraining}
+* @see #calculateQ(Object[], Object, Object, Object, Object, Object)
+**/
+  @OPERATION
+  public void startTraining(Object[] goalDescription, Object episodesObj, Object alphaObj, Object gammaObj,
+      Object epsilonObj, Object rewardObj, OpFeedbackParam<Integer> trainingId) {
 
-    // initialize Q(s, a) arbitrarly
-    double[][] currentQTable = initializeQTable();
+    // ensure that the right datatypes are used
+    int episodes = Integer.valueOf(episodesObj.toString());
+    double alpha = Double.valueOf(alphaObj.toString());
+    double gamma = Double.valueOf(gammaObj.toString());
+    double epsilon = Double.valueOf(epsilonObj.toString());
+    int reward = Integer.valueOf(rewardObj.toString());
 
+    TrainingHandle handle = trainer.startTraining(goalDescription, episodes, alpha, gamma, epsilon, reward);
+    trainingId.set(handle.getId());
+    if (observable) {
+      getObsProperty("training").updateValues(handle.getProgress());
+    }
+  }
 
-    // loop for each episode
-    for (int i = 0; i < episodes; i++) {
+/**
+* Pauses a training that runs in the background at the end of its current episode. The
+* policy of the goal keeps serving the Q matrix learnt so far.
+*
+* @param trainingIdObj the id of the training (see {@link #startTraining})
+**/
+  @OPERATION
+  public void pauseTraining(Object trainingIdObj) {
+    TrainingHandle handle = trainer.getTraining(Integer.valueOf(trainingIdObj.toString()));
+    if (handle == null || !handle.pause()) {
+      failed("No training " + trainingIdObj + " in progress");
+      return;
+    }
+    publishTrainingProgress(handle, false);
+  }
 
-      // Initialize S randomize state by doing 100 random actions
-      for (int j = 0; j < 10; j++) lab.performAction((int) (Math.random() * lab.getActionCount()));
-      int currState = lab.readCurrentState();
+/**
+* Resumes a paused training
+*
+* @param trainingIdObj the id of the training (see {@link #startTraining})
+**/
+  @OPERATION
+  public void resumeTraining(Object trainingIdObj) {
+    TrainingHandle handle = trainer.getTraining(Integer.valueOf(trainingIdObj.toString()));
+    if (handle == null || !handle.resume()) {
+      failed("No training " + trainingIdObj + " in progress");
+      return;
+    }
+    publishTrainingProgress(handle, false);
+  }
 
-      LOGGER.info("Iteration: " + i + " - Initial State: "+ currState);
+/**
+* Cancels a training at the end of its current episode. The Q matrix learnt so far is
+* checkpointed to the store, if any, so that a later training of the goal with the same
+* hyperparameters resumes from it, and the policy of the goal keeps serving it.
+*
+* @param trainingIdObj the id of the training (see {@link #startTraining})
+**/
+  @OPERATION
+  public void cancelTraining(Object trainingIdObj) {
+    TrainingHandle handle = trainer.getTraining(Integer.valueOf(trainingIdObj.toString()));
+    if (handle == null || !handle.cancel()) {
+      failed("No training " + trainingIdObj + " in progress");
+      return;
+    }
+    publishTrainingProgress(handle, false);
+  }
 
-      // loop for each step of episode
-      while (!goalStates.contains(currState)) {
+/**
+* Computes Q matrices for a set of goal descriptions in parallel. Each goal is learnt
+* by a worker of a fork-join pool against its own instance of the lab environment, and
+* the Q matrix of each goal is stored as soon as the goal is learnt.
+*
+*<p>
+* Independent environment instances are only available for simulated labs that run
+* in-process (see {@link SimulatedLab}). For any other lab, the goals are learnt one
+* after another against the lab of the artifact.
+*</p>
+*<p>
+* The operation fails, reporting the first goal that has failed, if the training of a goal
+* fails. The goals whose training has not started by then are not learnt, while the goals
+* in progress are learnt to the end.
+*</p>
+* @param  goalDescriptions  the desired goals against the which the Q matrices are calculated (e.g., [[2,3],[3,3]])
+* @param  episodesObj the number of episodes used for calculating each Q matrix
+* @param  alphaObj the learning rate with range [0,1].
+* @param  gammaObj the discount factor [0,1]
+* @param epsilonObj the exploration probability [0,1]
+* @param rewardObj the reward assigned when reaching the goal state
+**/
+  @OPERATION
+  public void calculateQForGoals(Object[] goalDescriptions, Object episodesObj, Object alphaObj, Object gammaObj, Object epsilonObj, Object rewardObj) {
 
-        // All A from S
-        List<Integer> applicableActions = lab.getApplicableActions(currState);
+    // ensure that the right datatypes are used
+    int episodes = Integer.valueOf(episodesObj.toString());
+    double alpha = Double.valueOf(alphaObj.toString());
+    double gamma = Double.valueOf(gammaObj.toString());
+    double epsilon = Double.valueOf(epsilonObj.toString());
+    int reward = Integer.valueOf(rewardObj.toString());
 
-        // Choose A from S using policy derived from Q (e-greedy)
-        int bestAction = getActionGreedy(currentQTable, applicableActions, currState, epsilon);
-        lab.performAction(bestAction);
+    List<Object[]> goals = new ArrayList<>();
+    for (Object goalDescription : goalDescriptions) {
+      goals.add(goalDescription instanceof List ? ((List<?>) goalDescription).toArray() : (Object[]) goalDescription);
+    }
 
-        // S_prime
-        int newState = lab.readCurrentState();
+    try {
+      trainer.trainGoals(goals, episodes, alpha, gamma, epsilon, reward);
+    } catch (IllegalStateException e) {
+      failed(e.getMessage());
+    } finally {
+      publishMetrics();
+    }
+  }
 
-        // Q(S, A)
-        double currQ = currentQTable[currState][bestAction];
+/**
+* Computes Q matrices for all the possible goal descriptions [z1Level, ..., zNLevel] in
+* parallel. The number of goal descriptions is the product of the number of light levels
+* of each zone, e.g. 16 for a lab of 2 zones with 4 light levels each, and the operation
+* fails beyond {@value #ALL_GOALS_LIMIT} goal descriptions (e.g. for 7 zones), for which
+* the goals should be learnt as they are needed, or by
+* {@link #calculateQForAllGoalsFromModel}.
+*
+* @see #calculateQForGoals(Object[], Object, Object, Object, Object, Object)
+**/
+  @OPERATION
+  public void calculateQForAllGoals(Object episodesObj, Object alphaObj, Object gammaObj, Object epsilonObj, Object rewardObj) {
+    long goalCount = 1;
+    for (int zone = 0; zone < lab.getZoneCount() && goalCount <= ALL_GOALS_LIMIT; zone++) {
+      goalCount *= lab.getStateAxisRadix(lab.getLightLevelAxis(zone));
+    }
+    if (goalCount > ALL_GOALS_LIMIT) {
+      failed("Too many goals to learn them all: more than " + ALL_GOALS_LIMIT + " goals for "
+        + lab.getZoneCount() + " zones");
+      return;
+    }
 
-        // Q(S_prime, A)
-        double primeQ = maxRewardQPrime(currentQTable, newState);
+    List<Object> goals = new ArrayList<>();
+    int[] levels = new int[lab.getZoneCount()];
+    do {
+      goals.add(Arrays.stream(levels).boxed().toArray());
+    } while (nextGoal(lab, levels));
+    calculateQForGoals(goals.toArray(), episodesObj, alphaObj, gammaObj, epsilonObj, rewardObj);
+  }
 
-        // Q(S, A) <- Q(S, A) + alpha * (Reward + gamma * max(S_prime, a) - Q(S, A))
- 
-        // S <- S_prime
-        currState = newState;
+/**
+* Computes Q matrices for all the possible goal descriptions [z1Level, ..., zNLevel] at
+* once by value iteration over a model of the transitions of the lab (see
+* {@link ValueIteration}), instead of learning each goal from episodes in the lab. The
+* model is either:
+* <ul>
+* <li> "observed": the model of the transitions that have been observed in the lab by the
+* previous trainings (see {@link #setPlanningSteps});
+* <li> "physics": a model that is built by a random walk on an in-process simulated lab
+* (see {@link SimulatedLab}), with the sunshine model of the lab if the lab is simulated, or
+* else with the fixed sunshine of the simulator flow.
+* </ul>
+* As in Q learning, the pairs of a state and an action that are not in the model have a
+* Q value of 0.
+*
+* @param modelObj the model, "observed" or "physics"
+* @param gammaObj the discount factor [0,1)
+* @param rewardObj the reward assigned when reaching the goal state
+**/
+  @OPERATION
+  public void calculateQForAllGoalsFromModel(Object modelObj, Object gammaObj, Object rewardObj) {
+    double gamma = Double.valueOf(gammaObj.toString());
+    int reward = Integer.valueOf(rewardObj.toString());
 
-        // reward val
-        int rewardVal = goalStates.contains(currState) ? reward : -1;
-        // S terminal
-        currentQTable[currState][bestAction] = currQ + alpha * (rewardVal + gamma * primeQ - currQ);
-      }
+    try {
+      trainer.solveGoals(modelObj.toString(), gamma, reward);
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      failed(e.getMessage());
+      return;
     }
-    // update q tables
-    int goalHash = 10 * ((int)goalDescription[0]) + ((int)goalDescription[1]);
-    qTables.put(goalHash, currentQTable);
+    publishMetrics();
   }
 
-  public double maxRewardQPrime(double[][] currentQTable, int state) {
-    double maxReward = 0.0;
+  /**
+  * Stores the Q matrix of a goal, and publishes the policy that is compiled from it (see
+  * {@link Policy}), and from the tile-coded Q function of the goal if the Q matrix has
+  * been compiled from one. The policy replaces the previous policy of the goal at once, so
+  * that decisions for the goal never wait for a training and never see a partial policy.
+  *
+  * @param goalDescription the goal description
+  * @param qTable the Q matrix, which is not updated afterwards
+  * @param environment the lab against which the Q matrix has been learnt
+  */
+  private void publishQTable(Object[] goalDescription, QTable qTable, Lab environment) {
+    long goalKey = goalFingerprint(goalDescription);
+    TileCodedQFunction qFunction = trainer.getQFunction(goalKey);
+    Policy policy = qFunction != null
+      ? Policy.compile(qFunction, qTable, environment)
+      : Policy.compile(qTable, environment);
+    qTables.put(goalKey, qTable);
+    policies.put(goalKey, policy);
+  }
 
-    List<Integer> applicableActions = lab.getApplicableActions(state);
+  /**
+  * Returns the policy of a goal, which is compiled from the Q matrix of the goal in the
+  * store if the goal has not been learnt
+  *
+  * @param goalDescription the goal description
+  * @return the policy, or null if there is no Q matrix of the goal
+  */
+  private Policy getPolicy(Object[] goalDescription) {
+    long goalKey = goalFingerprint(goalDescription);
+    Policy policy = policies.get(goalKey);
 
-    for (Integer action : applicableActions) {
-      if(currentQTable[state][action] > maxReward) {
-        maxReward = currentQTable[state][action];
+    if (policy == null) {
+      QTable qTable = trainer.readQTable(goalDescription);
+      if (qTable != null) {
+        publishQTable(goalDescription, qTable, lab);
+        policy = policies.get(goalKey);
       }
     }
-
-    return maxReward;
+    return policy;
   }
 
-  public int getActionGreedy(double[][] currentQTable, List<Integer> availableActions, int state, Double epsilon) {
-    double greedy = Math.random();
-    if (greedy < epsilon) {
-      int randomIdx = (int) (Math.random() * availableActions.size());
-      return availableActions.get(randomIdx);
-    }
-    // we check for the actions with highest reward
-    // if multiple we choose randomly
-    List<Integer> highestRewardActions = new ArrayList<>();
-    highestRewardActions.add(availableActions.get(0));
-    double highestReward = currentQTable[state][highestRewardActions.get(0)];
-    for (int i = 1; i < availableActions.size(); i++) {
-      if (currentQTable[state][availableActions.get(i)] > highestReward) {
-        highestReward = currentQTable[state][availableActions.get(i)];
-        highestRewardActions.clear();
-        highestRewardActions.add(availableActions.get(i));
-      } else if (currentQTable[state][availableActions.get(i)] == highestReward) {
-          highestRewardActions.add(availableActions.get(i));
+  /**
+  * Advances the light levels of a goal description to the next goal description, where
+  * the light level of the last zone varies fastest
+  *
+  * @param lab the lab of the goal descriptions
+  * @param levels the light levels of the zones, which are modified
+  * @return false if the given goal description was the last one
+  */
+  static boolean nextGoal(Lab lab, int[] levels) {
+    for (int zone = levels.length - 1; zone >= 0; zone--) {
+      if (++levels[zone] < lab.getStateAxisRadix(lab.getLightLevelAxis(zone))) {
+        return true;
       }
-      
+      levels[zone] = 0;
     }
-    int randomIdx = (int) (Math.random() * highestRewardActions.size());
-    return highestRewardActions.get(randomIdx);
+    return false;
+  }
+
+  public double maxRewardQPrime(QTable currentQTable, int state) {
+    return maxRewardQPrime(lab, currentQTable, state);
+  }
+
+  public double maxRewardQPrime(Lab environment, QTable currentQTable, int state) {
+    return ActionKernels.max(currentQTable, state, environment.getApplicableActionMask(state));
+  }
+
+  public int getActionGreedy(QTable currentQTable, int state, double epsilon) {
+    return ActionKernels.epsilonGreedy(currentQTable, state, lab.getApplicableActionMask(state), epsilon,
+      trainer.getRandom());
   }
   
 /**
 * Returns information about the next best action based on a provided state and the QTable for
 * a goal description. The returned information can be used by agents to invoke an action 
-* using a ThingArtifact.
+* using a ThingArtifact. The action is looked up in the policy that is compiled when the
+* Q matrix of the goal is learnt (see {@link Policy}), so a decision does not wait for
+* a training of the goal that is in progress. The decision only depends on the described
+* state, so it does not read the lab: a goal that has been learnt with tile coding (see
+* {@link #setTileCoding}) is decided with the action compiled for the state.
 *
 * @param  goalDescription  the desired goal against the which the Q matrix is calculated (e.g., [2,3])
 * @param  currentStateDescription the current state e.g. [2,2,true,false,true,true,2]
@@ -169,23 +848,27 @@ public class QLearner extends Artifact {
   public void getActionFromState(Object[] goalDescription, Object[] currentStateDescription,
       OpFeedbackParam<String> nextBestActionTag, OpFeedbackParam<Object[]> nextBestActionPayloadTags,
       OpFeedbackParam<Object[]> nextBestActionPayload) {
-        
-        int goalHash = 10 * Integer.valueOf(goalDescription[0].toString()) + Integer.valueOf(goalDescription[1].toString());
-
-        double[][] qMatrix = qTables.get(goalHash);
 
-        int currenState = lab.getCompatibleStates(Arrays.asList(currentStateDescription)).get(0);
-        
-        var actionsForState = qMatrix[currenState];
+        long start = System.nanoTime();
+        long goalKey = goalFingerprint(goalDescription);
+        Policy policy = getPolicy(goalDescription);
+        if (policy == null) {
+          failed("No Q matrix has been computed for the goal " + Arrays.toString(goalDescription));
+          return;
+        }
 
-        double bestAction = 0;
-        int best = 0;
+        int currenState = lab.getState(Arrays.asList(currentStateDescription));
+        if (currenState < 0) {
+          failed("Invalid state description: " + Arrays.toString(currentStateDescription));
+          return;
+        }
 
-        for (int i = 0; i < actionsForState.length; i++) {
-          if (actionsForState[i] > bestAction) {
-            bestAction = actionsForState[i];
-            best = i;
-          }
+        // the policy holds the applicable action of maximum Q value, and a state that is not
+        // in the policy has Q values of 0, so its first applicable action is taken
+        int best = policy.getAction(currenState);
+        if (best < 0) {
+          long mask = lab.getApplicableActionMask(currenState);
+          best = mask == 0 ? 0 : Long.numberOfTrailingZeros(mask);
         }
 
         var action = lab.getAction(best);
@@ -193,45 +876,258 @@ public class QLearner extends Artifact {
         nextBestActionTag.set(action.getActionTag());
         nextBestActionPayloadTags.set(action.getPayloadTags());
         nextBestActionPayload.set(action.getPayload());
+
+        // the time to the goal is measured from the first decision for the goal
+        controlStarts.computeIfAbsent(goalKey, k -> new long[]{start, 0})[1]++;
+        long latency = System.nanoTime() - start;
+        metrics.recordDecision(latency);
+        if (trace.tracesEpisodes()) {
+          trace.record(TraceRecorder.Kind.DECISION, goalKey, -1, -1, currenState, best, -1, 0.0, latency);
+        }
+
+        LabEvents.DecisionEvent event = new LabEvents.DecisionEvent();
+        if (event.shouldCommit()) {
+          event.goal = Arrays.toString(goalDescription);
+          event.state = currenState;
+          event.action = best;
+          event.commit();
+        }
+        publishMetrics();
       }
 
+/**
+* Notifies the artifact that a goal has been achieved by acting on the lab, so that the
+* time to the goal and the number of decisions since the first decision for the goal
+* are published (see {@link #getActionFromState}).
+*
+* @param  goalDescription  the achieved goal (e.g., [2,3])
+**/
+  @OPERATION
+  public void notifyGoalAchieved(Object[] goalDescription) {
+    long[] control = controlStarts.remove(goalFingerprint(goalDescription));
+    if (control == null) {
+      // the goal was achieved without any decision
+      return;
+    }
+
+    long timeToGoal = System.nanoTime() - control[0];
+    if (trace.tracesEpisodes()) {
+      trace.record(TraceRecorder.Kind.GOAL_ACHIEVED, goalFingerprint(goalDescription), -1, (int) control[1], -1, -1,
+        -1, 0.0, timeToGoal);
+    }
+
+    LabEvents.GoalAchievedEvent event = new LabEvents.GoalAchievedEvent();
+    if (event.shouldCommit()) {
+      event.goal = Arrays.toString(goalDescription);
+      event.decisions = (int) control[1];
+      event.timeToGoal = timeToGoal;
+      event.commit();
+    }
+
+    if (observable) {
+      getObsProperty("time_to_goal").updateValues(timeToGoal / 1e6, (int) control[1]);
+    }
+  }
+
+/**
+* Adds a room to the rooms that the artifact manages in pooled mode, e.g. one of the
+* meeting rooms of a building. The lab of the room must have the state space and action
+* space of the lab of the artifact, so that the rooms are controlled with the policies
+* that are learnt against the lab of the artifact. The rooms share the Thing Descriptions
+* that have the same URL, the tables of their state space and action space, and the HTTP
+* client of their transports, so that each room only takes the memory of its own state.
+*
+* @param roomName the name of the room
+* @param environmentURL the URL of the lab of the room (see {@link #init(String)})
+**/
+  @OPERATION
+  public void addRoom(String roomName, String environmentURL) {
+    if (rooms.containsKey(roomName)) {
+      failed("The room " + roomName + " has already been added");
+      return;
+    }
+
+    Lab room;
+    try {
+      room = createLab(environmentURL, discretization, roomPool);
+    } catch (IllegalStateException e) {
+      failed(e.getMessage());
+      return;
+    }
+    if (room.getSpaceFingerprint() != spaceFingerprint) {
+      room.close();
+      failed("The room " + roomName + " does not have the state space and action space of the lab");
+      return;
+    }
+    // the policies of indexed state spaces are only valid for the room if the states are shared
+    room.shareStateIndex(lab);
+    rooms.put(roomName, room);
+  }
+
+/**
+* Starts controlling a room towards a goal, on a thread of its own (see
+* {@link RoomController}). The control loop reads the state of the room on each tick of
+* its lab, and performs the action of the policy of the goal until the room reaches a goal
+* state, which is signalled as room_goal_achieved(RoomName, GoalDescription). The loop
+* keeps the room at the goal until the room is stopped or controlled towards another goal.
+*
+* @param roomName the name of the room (see {@link #addRoom})
+* @param goalDescription the goal description (e.g. [2,3]), which must have been learnt
+**/
+  @OPERATION
+  public void controlRoom(String roomName, Object[] goalDescription) {
+    Lab room = rooms.get(roomName);
+    if (room == null) {
+      failed("No room " + roomName);
+      return;
+    }
+    if (getPolicy(goalDescription) == null) {
+      failed("No Q matrix has been computed for the goal " + Arrays.toString(goalDescription));
+      return;
+    }
+
+    RoomController controller = new RoomController(roomName, room, goalDescription,
+      room.getCompatibleStatePredicate(Arrays.asList(goalDescription)), () -> getPolicy(goalDescription),
+      this::publishRoomGoalAchieved, trace);
+    RoomController previous = roomControllers.put(roomName, controller);
+    if (previous != null) {
+      previous.stop();
+    }
+    getRoomExecutor().execute(controller);
+  }
+
+/**
+* Stops controlling a room
+*
+* @param roomName the name of the room (see {@link #addRoom})
+**/
+  @OPERATION
+  public void stopRoom(String roomName) {
+    RoomController controller = roomControllers.remove(roomName);
+    if (controller == null) {
+      failed("The room " + roomName + " is not controlled");
+      return;
+    }
+    controller.stop();
+  }
+
+  /**
+  * Signals that a room has reached its goal, from the control loop of the room
+  */
+  private void publishRoomGoalAchieved(RoomController controller) {
+    if (!observable) {
+      return;
+    }
+
+    beginExternalSession();
+    boolean success = false;
+    try {
+      signal("room_goal_achieved", controller.getName(), controller.getGoalDescription());
+      success = true;
+    } finally {
+      endExternalSession(success);
+    }
+  }
+
+  /**
+  * Releases the resources of the artifact when it is disposed: the trainings are closed
+  * (see {@link Trainer#close()}), the control loops of the rooms are stopped and their
+  * executor is shut down, and the labs are closed
+  */
+  @Override
+  protected void dispose() {
+    trainer.close();
+    for (RoomController controller : roomControllers.values()) {
+      controller.stop();
+    }
+    roomControllers.clear();
+
+    synchronized (this) {
+      shutdown(roomExecutor);
+    }
+
+    for (Lab room : rooms.values()) {
+      room.close();
+    }
+    rooms.clear();
+    lab.close();
+  }
+
+  /**
+  * Shuts down an executor, and interrupts its tasks if they do not terminate within
+  * {@value #DISPOSE_TIMEOUT_SECONDS} seconds
+  *
+  * @param executor the executor, or null if it has not been created
+  */
+  static void shutdown(ExecutorService executor) {
+    if (executor == null) {
+      return;
+    }
+
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(DISPOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOGGER.warning("Interrupting the tasks that have not terminated");
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+  * Publishes the metrics of learning and control as observable properties
+  */
+  private void publishMetrics() {
+    if (!observable) {
+      return;
+    }
+
+    getObsProperty("episode_steps").updateValues(metrics.getLastEpisodeSteps(), metrics.getMeanEpisodeSteps());
+    getObsProperty("max_delta_q").updateValue(metrics.getLastMaxDeltaQ());
+    getObsProperty("action_rtt").updateValues(lab.getActionLatencies().getPercentileMillis(50),
+      lab.getActionLatencies().getPercentileMillis(99));
+    getObsProperty("status_rtt").updateValues(lab.getStatusLatencies().getPercentileMillis(50),
+      lab.getStatusLatencies().getPercentileMillis(99));
+    getObsProperty("decisions_per_second").updateValue(metrics.getDecisionRate());
+  }
+
     /**
     * Print the Q matrix
     *
     * @param qTable the Q matrix
     */
-  void printQTable(double[][] qTable) {
+  void printQTable(QTable qTable) {
     System.out.println("Q matrix");
-    for (int i = 0; i < qTable.length; i++) {
+    for (int i = 0; i < qTable.getStateCount(); i++) {
       System.out.print("From state " + i + ":  ");
-     for (int j = 0; j < qTable[i].length; j++) {
-      System.out.printf("%6.2f ", (qTable[i][j]));
+     for (int j = 0; j < qTable.getActionCount(); j++) {
+      System.out.printf("%6.2f ", (qTable.get(i, j)));
       }
       System.out.println();
     }
   }
 
-  /**
-  * Initialize a Q matrix
-  *
-  * @return the Q matrix
-  */
- private double[][] initializeQTable() {
-    double[][] qTable = new double[this.stateCount][this.actionCount];
-    for (int i = 0; i < stateCount; i++){
-      for(int j = 0; j < actionCount; j++){
-        qTable[i][j] = 0.0;
-      }
-    }
-    return qTable;
-  }
-
 @OPERATION
 public void discretizeLightLevel(Object lightLevel, OpFeedbackParam<Integer> discretizedLightLevel) {
   double value = ((Number) lightLevel).doubleValue();
   discretizedLightLevel.set(lab.discretizeLightLevel(value));
 }
 
+/**
+* Discretizes the light level of a zone with the discretization of the zone
+*
+* @param zone the zone, e.g. 1 for Zone 1
+* @param lightLevel the light level in lux
+* @param discretizedLightLevel the (returned) light level
+**/
+@OPERATION
+public void discretizeLightLevel(Object zone, Object lightLevel, OpFeedbackParam<Integer> discretizedLightLevel) {
+  double value = ((Number) lightLevel).doubleValue();
+  discretizedLightLevel.set(lab.discretizeLightLevel(((Number) zone).intValue() - 1, value));
+}
+
 @OPERATION
 public void discretizeSunshine(Object sunshine, OpFeedbackParam<Integer> discretizedSunshine) {
   double value = ((Number) sunshine).doubleValue();
@@ -0,0 +1,77 @@
+package tools;
+
+/**
+ * A Q matrix of a learning environment, with a Q value for each pair of a state and
+ * an action.
+ *
+ * <p> The implementations keep the Q values in a single contiguous block in row-major
+ * order (the Q values of a state are adjacent), either on the heap as doubles
+ * ({@link DoubleQTable}) or floats ({@link FloatQTable}), or off the heap as doubles
+ * ({@link OffHeapQTable}). For state spaces that are too large for a dense Q matrix,
+ * {@link SparseQTable} only keeps the Q values of the states that have been updated.
+ * </p>
+ */
+public interface QTable {
+
+  /**
+   * The type of the default implementation, see {@link #create(String, int, int)}
+   */
+  String DEFAULT_TYPE = "double";
+
+  /**
+   * Returns the number of states of the Q matrix
+   */
+  int getStateCount();
+
+  /**
+   * Returns the number of actions of the Q matrix
+   */
+  int getActionCount();
+
+  /**
+   * Returns the Q value of a state and an action
+   *
+   * @param state the state
+   * @param action the action
+   * @return the Q value
+   */
+  double get(int state, int action);
+
+  /**
+   * Sets the Q value of a state and an action
+   *
+   * @param state the state
+   * @param action the action
+   * @param value the Q value
+   */
+  void set(int state, int action, double value);
+
+  /**
+   * Returns the number of bytes that hold the Q values
+   */
+  long getByteSize();
+
+  /**
+   * Creates a Q matrix whose Q values are 0
+   *
+   * @param type the type of the implementation: "double", "float", "offheap" or "sparse"
+   * @param stateCount the number of states
+   * @param actionCount the number of actions
+   * @return the Q matrix
+   * @throws IllegalArgumentException if the type is unknown
+   */
+  static QTable create(String type, int stateCount, int actionCount) {
+    switch (type) {
+      case "double":
+        return new DoubleQTable(stateCount, actionCount);
+      case "float":
+        return new FloatQTable(stateCount, actionCount);
+      case "offheap":
+        return new OffHeapQTable(stateCount, actionCount);
+      case "sparse":
+        return new SparseQTable(stateCount, actionCount);
+      default:
+        throw new IllegalArgumentException("Unknown Q matrix type: " + type);
+    }
+  }
+}
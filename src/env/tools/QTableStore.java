@@ -0,0 +1,380 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+/**
+ * A persistent store of Q matrices, where each Q matrix is kept in a binary file
+ * that is memory-mapped when the Q matrix is first accessed.
+ *
+ * <p> Each Q matrix is keyed by a goal description, the fingerprint of the state
+ * space and action space of the learning environment (see
+ * {@link LearningEnvironment#getSpaceFingerprint()}), and the hyperparameters that
+ * are used for learning it. Each file starts with a header of {@value #HEADER_SIZE}
+ * bytes, followed by the Q values in row-major order:
+ * </p>
+ * <ul>
+ * <li> 0: magic number, 4: version
+ * <li> 8: key, 16: space fingerprint, 24: goal fingerprint
+ * <li> 32: number of states, 36: number of actions
+ * <li> 40: number of episodes, 44: number of completed episodes
+ * <li> 48: the time at which the training was completed, in milliseconds since the
+ * epoch, or 0 for a checkpoint and for the files written before the time was recorded
+ * <li> 56: number of rows, in the files of version {@value #ROWS_VERSION}
+ * </ul>
+ * <p> The file of a {@link SparseQTable} (version {@value #ROWS_VERSION}) only holds the
+ * rows of the states whose Q values are kept, each of which is the state as a long
+ * followed by the Q values of the state, so that the file scales with the number of
+ * visited states rather than with the state space. Q values of 0 are not read, so a
+ * sparse Q matrix that is read from a file only keeps the states with other Q values.
+ * </p>
+ * <p> A Q matrix whose number of completed episodes is lower than its number of
+ * episodes is a checkpoint of an interrupted training, which can be resumed.
+ * </p>
+ */
+public class QTableStore implements AutoCloseable {
+
+  private static final int MAGIC = 0x51544231; // "QTB1"
+  private static final int VERSION = 1;
+  private static final int ROWS_VERSION = 2;
+  private static final int HEADER_SIZE = 64;
+
+  private static final int KEY = 8;
+  private static final int SPACE_FINGERPRINT = 16;
+  private static final int GOAL_FINGERPRINT = 24;
+  private static final int STATE_COUNT = 32;
+  private static final int ACTION_COUNT = 36;
+  private static final int EPISODES = 40;
+  private static final int COMPLETED_EPISODES = 44;
+  private static final int COMPLETION_TIME = 48;
+  private static final int ROW_COUNT = 56;
+
+  private static final Logger LOGGER = Logger.getLogger(QTableStore.class.getName());
+
+  /**
+   * The memory mapping of the file of a Q matrix, whose monitor guards the accesses to
+   * the file, e.g. by concurrent trainings of the same goal
+   */
+  private static final class Mapping {
+
+    /**
+     * The mapped file, or null if the file has not been mapped yet
+     */
+    MappedByteBuffer buffer;
+  }
+
+  /**
+   * The directory of the store
+   */
+  private final Path directory;
+
+  /**
+   * The files of the store, indexed by key
+   */
+  private final Map<Long, Path> files = new ConcurrentHashMap<>();
+
+  /**
+   * The key and the completion time of the most recently completed Q matrix of each goal,
+   * indexed by the space fingerprint and the goal fingerprint
+   */
+  private final Map<String, long[]> completedKeys = new ConcurrentHashMap<>();
+
+  /**
+   * The mappings of the files, indexed by key
+   */
+  private final Map<Long, Mapping> mappings = new ConcurrentHashMap<>();
+
+  /**
+   * A {@link QTableStore} instance is constructed based on a directory. The headers of
+   * the files in the directory are read, but the files are only memory-mapped when
+   * their Q matrices are accessed.
+   *
+   * @param directory the directory of the store
+   * @throws IOException if the directory cannot be read
+   */
+  public QTableStore(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "qtable-*.bin")) {
+      for (Path file : stream) {
+        readHeader(file);
+      }
+    }
+    LOGGER.info("Found " + files.size() + " Q matrices in " + directory);
+  }
+
+  /**
+   * Returns the key of a Q matrix
+   *
+   * @param spaceFingerprint the fingerprint of the state space and action space
+   * @param goalFingerprint the fingerprint of the goal description
+   * @param hyperparameters the hyperparameters used for learning the Q matrix
+   * @return the key
+   */
+  public static long key(long spaceFingerprint, long goalFingerprint, Object... hyperparameters) {
+    return LearningEnvironment.fingerprint(spaceFingerprint + "|" + goalFingerprint + "|"
+      + Arrays.toString(hyperparameters));
+  }
+
+  /**
+   * Returns the number of completed episodes of a stored Q matrix
+   *
+   * @param key the key of the Q matrix
+   * @return the number of completed episodes, or -1 if there is no such Q matrix
+   */
+  public int getCompletedEpisodes(long key) {
+    if (!files.containsKey(key)) {
+      return -1;
+    }
+
+    Mapping mapping = map(key);
+    synchronized (mapping) {
+      return mapping.buffer.getInt(COMPLETED_EPISODES);
+    }
+  }
+
+  /**
+   * Reads a stored Q matrix into a given Q matrix
+   *
+   * @param key the key of the Q matrix
+   * @param qTable the Q matrix that receives the Q values, whose Q values are 0
+   * @return true if the Q matrix is stored, and its file holds all its Q values
+   */
+  public boolean read(long key, QTable qTable) {
+    if (!files.containsKey(key)) {
+      return false;
+    }
+
+    Mapping mapping = map(key);
+    synchronized (mapping) {
+      MappedByteBuffer buffer = mapping.buffer;
+      int stateCount = buffer.getInt(STATE_COUNT);
+      int actionCount = buffer.getInt(ACTION_COUNT);
+      if (stateCount != qTable.getStateCount() || actionCount != qTable.getActionCount()) {
+        return false;
+      }
+      boolean rows = buffer.getInt(4) == ROWS_VERSION;
+      int rowCount = rows ? buffer.getInt(ROW_COUNT) : stateCount;
+      if (rowCount < 0 || buffer.capacity() < size(rows, rowCount, actionCount)) {
+        LOGGER.warning("Ignoring the truncated Q matrix file " + files.get(key));
+        return false;
+      }
+
+      ByteBuffer values = values(buffer);
+      if (rows && !hasValidStates(values, rowCount, stateCount, actionCount)) {
+        LOGGER.warning("Ignoring the invalid Q matrix file " + files.get(key));
+        return false;
+      }
+
+      for (int row = 0; row < rowCount; row++) {
+        int state = rows ? (int) values.getLong() : row;
+        for (int action = 0; action < actionCount; action++) {
+          double q = values.getDouble();
+          if (q != 0.0) {
+            qTable.set(state, action, q);
+          }
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Returns whether the states of the rows of a file are in the state space
+   */
+  private static boolean hasValidStates(ByteBuffer values, int rowCount, int stateCount, int actionCount) {
+    int rowSize = (actionCount + 1) * Double.BYTES;
+    for (int row = 0; row < rowCount; row++) {
+      long state = values.getLong(row * rowSize);
+      if (state < 0 || state >= stateCount) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the key of the most recently completed Q matrix for a goal in a given
+   * state space and action space, regardless of its hyperparameters
+   *
+   * @param spaceFingerprint the fingerprint of the state space and action space
+   * @param goalFingerprint the fingerprint of the goal description
+   * @return the key, if there is such a Q matrix
+   */
+  public Optional<Long> findCompleted(long spaceFingerprint, long goalFingerprint) {
+    long[] completed = completedKeys.get(spaceFingerprint + "|" + goalFingerprint);
+    return completed == null ? Optional.empty() : Optional.of(completed[0]);
+  }
+
+  /**
+   * Writes a Q matrix to the store, and forces the changes to the storage device
+   *
+   * @param key the key of the Q matrix
+   * @param spaceFingerprint the fingerprint of the state space and action space
+   * @param goalFingerprint the fingerprint of the goal description
+   * @param qTable the Q matrix
+   * @param episodes the number of episodes for learning the Q matrix
+   * @param completedEpisodes the number of episodes that have been completed
+   * @throws IOException if the Q matrix cannot be written
+   */
+  public void write(long key, long spaceFingerprint, long goalFingerprint, QTable qTable,
+      int episodes, int completedEpisodes) throws IOException {
+
+    int stateCount = qTable.getStateCount();
+    int actionCount = qTable.getActionCount();
+    Path file = directory.resolve(String.format("qtable-%016x.bin", key));
+    long completionTime = completedEpisodes >= episodes ? System.currentTimeMillis() : 0L;
+
+    // a sparse Q matrix is written as the rows of the states whose Q values are kept
+    boolean rows = qTable instanceof SparseQTable;
+    int[] states = rows ? ((SparseQTable) qTable).getStates() : null;
+    int rowCount = rows ? states.length : stateCount;
+    long size = size(rows, rowCount, actionCount);
+
+    Mapping mapping = mappings.computeIfAbsent(key, k -> new Mapping());
+    synchronized (mapping) {
+      // the file is extended if the Q matrix has more rows, or if the file is truncated
+      if (mapping.buffer == null || mapping.buffer.capacity() < size) {
+        mapping.buffer = mapFile(file, size);
+      }
+
+      MappedByteBuffer buffer = mapping.buffer;
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, rows ? ROWS_VERSION : VERSION);
+      buffer.putLong(KEY, key);
+      buffer.putLong(SPACE_FINGERPRINT, spaceFingerprint);
+      buffer.putLong(GOAL_FINGERPRINT, goalFingerprint);
+      buffer.putInt(STATE_COUNT, stateCount);
+      buffer.putInt(ACTION_COUNT, actionCount);
+      buffer.putInt(ROW_COUNT, rows ? rowCount : 0);
+
+      ByteBuffer values = values(buffer);
+      for (int row = 0; row < rowCount; row++) {
+        int state = rows ? states[row] : row;
+        if (rows) {
+          values.putLong(state);
+        }
+        for (int action = 0; action < actionCount; action++) {
+          values.putDouble(qTable.get(state, action));
+        }
+      }
+      buffer.putInt(EPISODES, episodes);
+      buffer.putInt(COMPLETED_EPISODES, completedEpisodes);
+      buffer.putLong(COMPLETION_TIME, completionTime);
+      buffer.force();
+    }
+    files.put(key, file);
+
+    if (completedEpisodes >= episodes) {
+      registerCompleted(spaceFingerprint + "|" + goalFingerprint, key, completionTime);
+    }
+  }
+
+  /**
+   * Registers a completed Q matrix of a goal, unless a Q matrix of the goal has been
+   * completed later
+   */
+  private void registerCompleted(String goal, long key, long completionTime) {
+    completedKeys.merge(goal, new long[]{key, completionTime},
+      (previous, completed) -> completed[1] >= previous[1] ? completed : previous);
+  }
+
+  /**
+   * Forces the changes of the memory-mapped files to the storage device and releases
+   * the mappings, which are unmapped once they are no longer referenced. The Q matrices
+   * that are accessed afterwards are mapped again.
+   */
+  @Override
+  public void close() {
+    for (Mapping mapping : mappings.values()) {
+      synchronized (mapping) {
+        if (mapping.buffer != null) {
+          mapping.buffer.force();
+          mapping.buffer = null;
+        }
+      }
+    }
+    mappings.clear();
+  }
+
+  /**
+   * Reads the header of a file, and registers the Q matrix of the file
+   */
+  private void readHeader(Path file) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      while (header.hasRemaining() && channel.read(header) != -1) {
+      }
+    }
+
+    if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC
+        || (header.getInt(4) != VERSION && header.getInt(4) != ROWS_VERSION)) {
+      LOGGER.warning("Ignoring invalid Q matrix file " + file);
+      return;
+    }
+
+    long key = header.getLong(KEY);
+    files.put(key, file);
+
+    if (header.getInt(COMPLETED_EPISODES) >= header.getInt(EPISODES)) {
+      registerCompleted(header.getLong(SPACE_FINGERPRINT) + "|" + header.getLong(GOAL_FINGERPRINT), key,
+        header.getLong(COMPLETION_TIME));
+    }
+  }
+
+  /**
+   * Returns the mapping of the file of a Q matrix, which is memory-mapped if it has not
+   * been mapped yet
+   */
+  private Mapping map(long key) {
+    Mapping mapping = mappings.computeIfAbsent(key, k -> new Mapping());
+    synchronized (mapping) {
+      if (mapping.buffer == null) {
+        try {
+          mapping.buffer = mapFile(files.get(key), 0);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+    return mapping;
+  }
+
+  /**
+   * Memory-maps a file, which is created or extended to a given size if it is smaller
+   */
+  private static MappedByteBuffer mapFile(Path file, long size) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+    }
+  }
+
+  /**
+   * Returns a view of the Q values of a memory-mapped file
+   */
+  private static ByteBuffer values(MappedByteBuffer buffer) {
+    ByteBuffer view = buffer.duplicate();
+    view.position(HEADER_SIZE);
+    return view.slice();
+  }
+
+  /**
+   * Returns the size of the file of a Q matrix
+   *
+   * @param rows whether the file holds the rows of the kept states of a sparse Q matrix
+   * @param rowCount the number of rows, i.e. of states of a dense Q matrix
+   * @param actionCount the number of actions
+   */
+  private static long size(boolean rows, int rowCount, int actionCount) {
+    return HEADER_SIZE + (long) rowCount * (rows ? actionCount + 1 : actionCount) * Double.BYTES;
+  }
+}
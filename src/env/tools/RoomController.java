@@ -0,0 +1,158 @@
+package tools;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+import java.util.logging.*;
+
+/**
+ * The control loop of a room of a building, i.e. of one of the labs that a
+ * {@link QLearner} manages in pooled mode (see {@link QLearner#addRoom}), which keeps the
+ * light levels of the room at a goal.
+ *
+ * <p> On each tick of the lab of the room, the loop reads the state of the room, and
+ * performs the action of the policy of the goal unless the room is in a goal state, so
+ * a room takes at most one decision per tick, also when it cannot reach its goal or when
+ * its lab is simulated in-process. The policy of a goal that has been learnt with tile
+ * coding decides over the status of the room (see {@link Policy#hasQFunction()}). The
+ * loop blocks while it waits for the next tick of the lab, so each loop runs on a thread
+ * of its own, which is a virtual thread when the JVM supports them, so that hundreds of
+ * rooms do not take hundreds of platform threads.
+ * </p>
+ */
+final class RoomController implements Runnable {
+
+  private static final Logger LOGGER = Logger.getLogger(RoomController.class.getName());
+
+  private final String name;
+  private final Lab lab;
+  private final Object[] goalDescription;
+  private final IntPredicate goalStates;
+  private final Supplier<Policy> policy;
+  private final Consumer<RoomController> onGoalAchieved;
+  private final TraceRecorder trace;
+  private final long roomTag;
+  private final double[] status; // the status of the room, for the policies that decide over it
+
+  private volatile boolean running = true;
+  private volatile Thread thread;
+  private volatile long decisions;
+
+  /**
+   * A {@link RoomController} instance is constructed based on the name and the lab of a
+   * room, the goal of the room, and the policy of the goal
+   *
+   * @param name the name of the room
+   * @param lab the lab of the room
+   * @param goalDescription the goal description, e.g. [2,3]
+   * @param goalStates the test of whether a state of the lab is a goal state
+   * @param policy the supplier of the latest policy of the goal, or of null if no Q
+   * matrix has been learnt for the goal
+   * @param onGoalAchieved the callback that is invoked from the loop whenever the room
+   * enters a goal state
+   * @param trace the trace of the decisions of the room, which is dumped if the loop fails
+   */
+  RoomController(String name, Lab lab, Object[] goalDescription, IntPredicate goalStates, Supplier<Policy> policy,
+      Consumer<RoomController> onGoalAchieved, TraceRecorder trace) {
+    this.name = name;
+    this.lab = lab;
+    this.goalDescription = goalDescription.clone();
+    this.goalStates = goalStates;
+    this.policy = policy;
+    this.onGoalAchieved = onGoalAchieved;
+    this.trace = trace;
+    this.roomTag = LearningEnvironment.fingerprint(name);
+    this.status = new double[lab.getStateAxisCount()];
+  }
+
+  String getName() {
+    return name;
+  }
+
+  Object[] getGoalDescription() {
+    return goalDescription.clone();
+  }
+
+  /**
+   * Stops the loop, which ends after the action or the wait in progress
+   */
+  void stop() {
+    running = false;
+    Thread current = thread;
+    if (current != null) {
+      current.interrupt();
+    }
+  }
+
+  @Override
+  public void run() {
+    thread = Thread.currentThread();
+    boolean atGoal = false;
+
+    try {
+      while (running) {
+        int state = lab.readCurrentState();
+
+        if (goalStates.test(state)) {
+          if (!atGoal) {
+            atGoal = true;
+            if (trace.tracesEpisodes()) {
+              trace.record(TraceRecorder.Kind.GOAL_ACHIEVED, roomTag, -1, (int) decisions, state, -1, -1, 0.0, 0L);
+            }
+            onGoalAchieved.accept(this);
+          }
+          awaitNextTick();
+          continue;
+        }
+        atGoal = false;
+
+        Policy current = policy.get();
+        if (current == null) {
+          LOGGER.warning("No Q matrix has been computed for the goal " + Arrays.toString(goalDescription)
+            + " of the room " + name);
+          return;
+        }
+
+        // a state that is not in the policy has Q values of 0, so its first applicable
+        // action is taken
+        int action = current.hasQFunction()
+          ? current.getAction(lab.getCurrentStatus(status), lab.getApplicableActionMask(state))
+          : current.getAction(state);
+        if (action < 0) {
+          long mask = lab.getApplicableActionMask(state);
+          action = mask == 0 ? 0 : Long.numberOfTrailingZeros(mask);
+        }
+        long start = System.nanoTime();
+        lab.performAction(action);
+        decisions++;
+        if (trace.tracesEpisodes()) {
+          trace.record(TraceRecorder.Kind.DECISION, roomTag, -1, -1, state, action, -1, 0.0, System.nanoTime() - start);
+        }
+        awaitNextTick();
+      }
+    } catch (InterruptedException e) {
+      // the loop has been stopped
+    } catch (RuntimeException e) {
+      LOGGER.severe("The control of the room " + name + " failed: " + e);
+      trace.dumpOnFailure(roomTag, e);
+    } finally {
+      running = false;
+      thread = null;
+    }
+  }
+
+  /**
+   * Waits until the status of the next tick of the lab is expected to be readable, since
+   * the state of the room only changes on the next tick
+   */
+  private void awaitNextTick() throws InterruptedException {
+    Thread.sleep(Math.max(1, lab.getMillisUntilNextTick()));
+  }
+
+  @Override
+  public String toString() {
+    return "Room " + name + " at " + Arrays.toString(goalDescription) + ": " + (running ? "running" : "stopped")
+      + ", " + decisions + " decisions";
+  }
+}
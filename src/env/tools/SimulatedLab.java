@@ -0,0 +1,252 @@
+package tools;
+
+import java.util.*;
+import java.util.logging.*;
+
+/**
+* A class that extends {@link Lab} for representing a simulated lab that runs
+* in-process, instead of the Node-RED flow that is accessed over HTTP.
+*
+* <p> A SimulatedLab instance has the same state space and action space as a
+* {@link Lab} that is constructed based on the W3C Web of Things Thing Description
+* of the simulated lab. The environment is simulated by a {@link LabSimulator},
+* whose time advances by one tick per performed action rather than per second.
+* </p>
+*
+* <p> A SimulatedLab can be selected with a URL of the form
+* <code>sim:&lt;sunshine model&gt;[?seed=&lt;seed&gt;][&amp;zones=&lt;number of zones&gt;]</code>,
+* e.g. "sim:fixed?seed=42", "sim:daylight" or "sim:fixed?seed=42&amp;zones=8". By
+* default, the simulated lab has 2 zones.
+* </p>
+*/
+public class SimulatedLab extends Lab {
+
+  /**
+  * The scheme of the URLs that select a simulated lab
+  */
+  public static final String URL_SCHEME = "sim:";
+
+  private static final Logger LOGGER = Logger.getLogger(SimulatedLab.class.getName());
+
+  private final LabSimulator simulator;
+
+  /**
+  * A {@link SimulatedLab} instance is constructed based on a sunshine model and the
+  * seed of the random number generator of the simulator, with the default discretization
+  *
+  * @param sunshineModel the sunshine model
+  * @param seed the seed of the random number generator
+  */
+  public SimulatedLab(LabSimulator.SunshineModel sunshineModel, long seed) {
+    this(sunshineModel, seed, Discretization.DEFAULT);
+  }
+
+  /**
+  * A {@link SimulatedLab} instance is constructed based on a sunshine model, the
+  * seed of the random number generator of the simulator, and the discretization of
+  * the status of the simulator
+  *
+  * @param sunshineModel the sunshine model
+  * @param seed the seed of the random number generator
+  * @param discretization the discretization of the light levels and of the sunshine
+  */
+  public SimulatedLab(LabSimulator.SunshineModel sunshineModel, long seed, Discretization discretization) {
+    this(sunshineModel, 2, seed, discretization);
+  }
+
+  /**
+  * A {@link SimulatedLab} instance is constructed based on a sunshine model, the number
+  * of zones, the seed of the random number generator of the simulator, and the
+  * discretization of the status of the simulator
+  *
+  * @param sunshineModel the sunshine model
+  * @param zoneCount the number of zones, at most {@value Lab#MAX_ZONES}
+  * @param seed the seed of the random number generator
+  * @param discretization the discretization of the light levels and of the sunshine
+  * @throws IllegalArgumentException if the number of zones is not supported
+  */
+  public SimulatedLab(LabSimulator.SunshineModel sunshineModel, int zoneCount, long seed,
+      Discretization discretization) {
+    this(sunshineModel, zoneCount, seed, discretization, null);
+  }
+
+  /**
+  * A {@link SimulatedLab} instance is constructed based on a sunshine model, the number
+  * of zones, the seed of the random number generator of the simulator, the
+  * discretization of the status of the simulator, and the pool of the lab (see
+  * {@link LabPool})
+  *
+  * @param sunshineModel the sunshine model
+  * @param zoneCount the number of zones, at most {@value Lab#MAX_ZONES}
+  * @param seed the seed of the random number generator
+  * @param discretization the discretization of the light levels and of the sunshine
+  * @param pool the pool of the lab, or null
+  * @throws IllegalArgumentException if the number of zones is not supported
+  */
+  SimulatedLab(LabSimulator.SunshineModel sunshineModel, int zoneCount, long seed, Discretization discretization,
+      LabPool pool) {
+    super(checkZoneCount(zoneCount), discretization, pool);
+    this.simulator = new LabSimulator(sunshineModel, zoneCount, seed);
+
+    createActionSpace();
+    LOGGER.info("The simulated lab has " + zoneCount + " zones, a state space of n=" + getStateSpaceSize()
+      + " and an action space of m=" + actionSpace.size());
+  }
+
+  private static int checkZoneCount(int zoneCount) {
+    if (zoneCount < 1 || zoneCount > MAX_ZONES) {
+      throw new IllegalArgumentException("Unsupported number of zones: " + zoneCount);
+    }
+    return zoneCount;
+  }
+
+  /**
+  * Returns true if the given URL selects a simulated lab
+  *
+  * @param url the URL
+  */
+  public static boolean isSimulatedLabURL(String url) {
+    return url.startsWith(URL_SCHEME);
+  }
+
+  /**
+  * Creates a {@link SimulatedLab} instance based on a URL of the form
+  * <code>sim:&lt;sunshine model&gt;[?seed=&lt;seed&gt;][&amp;zones=&lt;number of zones&gt;]</code>, with the
+  * default discretization
+  *
+  * @param url the URL
+  * @return the simulated lab
+  */
+  public static SimulatedLab fromURL(String url) {
+    return fromURL(url, Discretization.DEFAULT);
+  }
+
+  /**
+  * Creates a {@link SimulatedLab} instance based on a URL of the form
+  * <code>sim:&lt;sunshine model&gt;[?seed=&lt;seed&gt;][&amp;zones=&lt;number of zones&gt;]</code>, and a
+  * discretization
+  *
+  * @param url the URL
+  * @param discretization the discretization of the light levels and of the sunshine
+  * @return the simulated lab
+  */
+  public static SimulatedLab fromURL(String url, Discretization discretization) {
+    return fromURL(url, discretization, null);
+  }
+
+  /**
+  * Creates a {@link SimulatedLab} instance based on a URL of the form
+  * <code>sim:&lt;sunshine model&gt;[?seed=&lt;seed&gt;][&amp;zones=&lt;number of zones&gt;]</code>, a
+  * discretization, and the pool of the lab (see {@link LabPool})
+  *
+  * @param url the URL
+  * @param discretization the discretization of the light levels and of the sunshine
+  * @param pool the pool of the lab, or null
+  * @return the simulated lab
+  */
+  static SimulatedLab fromURL(String url, Discretization discretization, LabPool pool) {
+    String spec = url.substring(URL_SCHEME.length());
+    String model = spec;
+    long seed = System.nanoTime();
+    int zoneCount = 2;
+
+    int query = spec.indexOf('?');
+    if (query != -1) {
+      model = spec.substring(0, query);
+      for (String param : spec.substring(query + 1).split("&")) {
+        String[] keyValue = param.split("=", 2);
+        if (keyValue.length == 2 && "seed".equals(keyValue[0])) {
+          seed = Long.parseLong(keyValue[1]);
+        } else if (keyValue.length == 2 && "zones".equals(keyValue[0])) {
+          zoneCount = Integer.parseInt(keyValue[1]);
+        }
+      }
+    }
+
+    LabSimulator.SunshineModel sunshineModel = model.isEmpty()
+      ? LabSimulator.SunshineModel.FIXED
+      : LabSimulator.SunshineModel.valueOf(model.toUpperCase());
+
+    return new SimulatedLab(sunshineModel, zoneCount, seed, discretization, pool);
+  }
+
+  /**
+  * Returns the simulator of the lab
+  */
+  public LabSimulator getSimulator() {
+    return simulator;
+  }
+
+  /**
+  * @see {@link LearningEnvironment#readCurrentState()}
+  */
+  @Override
+  public int readCurrentState() {
+    for (int zone = 0; zone < zones.size(); zone++) {
+      currentStatus[getLightLevelAxis(zone)] = simulator.getLevel(zone);
+      currentStatus[getLightAxis(zone)] = simulator.getLight(zone) ? 1 : 0;
+      currentStatus[getBlindsAxis(zone)] = simulator.getBlinds(zone) ? 1 : 0;
+      currentState[getLightLevelAxis(zone)] = discretizeLightLevel(zone, currentStatus[getLightLevelAxis(zone)]);
+      currentState[getLightAxis(zone)] = (int) currentStatus[getLightAxis(zone)];
+      currentState[getBlindsAxis(zone)] = (int) currentStatus[getBlindsAxis(zone)];
+    }
+    currentStatus[getSunshineAxis()] = simulator.getSunshine();
+    currentState[getSunshineAxis()] = discretizeSunshine(currentStatus[getSunshineAxis()]);
+
+    return encodeState(currentState);
+  }
+
+  /**
+  * Performs an action in the simulated lab and advances its time by one tick
+  *
+  * @see {@link LearningEnvironment#performAction(int)}
+  */
+  @Override
+  public void performAction(int action) {
+    Action a = actionSpace.get(action);
+    simulator.applyAction((String) a.getPayloadTags()[0], (Boolean) a.getPayload()[0]);
+    simulator.step();
+  }
+
+  /**
+  * @see {@link LearningEnvironment#supportsReset()}
+  */
+  @Override
+  public boolean supportsReset() {
+    return true;
+  }
+
+  /**
+  * Sets all the lights and blinds of the simulated lab to their values in a state and
+  * advances its time by one tick, as a single action
+  *
+  * @see {@link LearningEnvironment#reset(int)}
+  */
+  @Override
+  public void reset(int state) {
+    for (Map.Entry<String, Boolean> actuator : getActuatorValues(state).entrySet()) {
+      simulator.applyAction(actuator.getKey(), actuator.getValue());
+    }
+    simulator.step();
+  }
+
+  /**
+  * Creates the action space of the simulated lab, in the same order as the action
+  * space of a {@link Lab} that is constructed based on the Thing Description of the
+  * simulated lab
+  */
+  private void createActionSpace() {
+
+    this.affordanceTypes = getZoneAffordanceTypes(zones);
+
+    for (String affType : affordanceTypes) {
+      String property = affType.substring(affType.lastIndexOf('#') + "#Set".length());
+
+      for (boolean propValue : Arrays.asList(false, true)) {
+        Action action = new Action(affType, new Object[]{property}, new Object[]{propValue}, null);
+        actionSpace.put(actionSpace.size(), action);
+      }
+    }
+    setApplicableActions();
+  }
+}
@@ -0,0 +1,101 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * A {@link QTable} that only keeps the Q values of the states that have been
+ * updated, for state spaces that are too large for a dense Q matrix. The Q value of
+ * a state that has not been updated is 0.
+ *
+ * <p> The rows of the updated states are kept in a single array of doubles, in the
+ * order in which the states were first updated, and the row of each state is found
+ * with a {@link LongIntHashMap}, so that the memory scales with the number of visited
+ * states.
+ * </p>
+ */
+public final class SparseQTable implements QTable {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final int stateCount;
+  private final int actionCount;
+
+  /**
+   * The row of each updated state
+   */
+  private final LongIntHashMap rows = new LongIntHashMap(INITIAL_CAPACITY);
+
+  /**
+   * The Q values of the rows, in row-major order
+   */
+  private double[] values;
+
+  private int rowCount;
+
+  /**
+   * A {@link SparseQTable} instance is constructed based on the number of states and
+   * actions, with Q values of 0
+   *
+   * @param stateCount the number of states
+   * @param actionCount the number of actions
+   */
+  public SparseQTable(int stateCount, int actionCount) {
+    this.stateCount = stateCount;
+    this.actionCount = actionCount;
+    this.values = new double[INITIAL_CAPACITY / 2 * actionCount];
+  }
+
+  @Override
+  public int getStateCount() {
+    return stateCount;
+  }
+
+  @Override
+  public int getActionCount() {
+    return actionCount;
+  }
+
+  @Override
+  public double get(int state, int action) {
+    int row = rows.get(state);
+    return row == LongIntHashMap.NO_VALUE ? 0.0 : values[row * actionCount + action];
+  }
+
+  @Override
+  public void set(int state, int action, double value) {
+    int row = rows.putIfAbsent(state, rowCount);
+    if (row == LongIntHashMap.NO_VALUE) {
+      row = rowCount++;
+      if (rowCount * actionCount > values.length) {
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+    }
+    values[row * actionCount + action] = value;
+  }
+
+  @Override
+  public long getByteSize() {
+    return rows.getByteSize() + (long) values.length * Double.BYTES;
+  }
+
+  /**
+   * Returns the number of states whose Q values are kept
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the states whose Q values are kept, in the order in which they were
+   * first updated
+   */
+  public int[] getStates() {
+    int[] states = new int[rowCount];
+    for (int slot = 0; slot < rows.capacity(); slot++) {
+      if (rows.keyAt(slot) != LongIntHashMap.EMPTY) {
+        states[rows.valueAt(slot)] = (int) rows.keyAt(slot);
+      }
+    }
+    return states;
+  }
+}
@@ -0,0 +1,76 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * An index of the states of a state space that is too large for its states to be
+ * numbered with int values, which assigns the indexes 0, 1, 2, ... to the mixed-radix
+ * keys of the states in the order in which they are first indexed, so that the memory
+ * scales with the number of visited states.
+ *
+ * <p> The index of each key is found with a {@link LongIntHashMap}. The index can be
+ * shared by the threads that learn with the same learning environment.
+ * </p>
+ */
+final class StateIndex {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * The index of each key
+   */
+  private final LongIntHashMap indexes = new LongIntHashMap(INITIAL_CAPACITY);
+
+  /**
+   * The key of each index
+   */
+  private long[] keys = new long[INITIAL_CAPACITY / 2];
+
+  private int size;
+
+  /**
+   * Returns the index of a key, which is assigned the next index if it has not been
+   * indexed yet
+   *
+   * @param key the mixed-radix key of a state, which is not negative
+   * @return the index
+   */
+  synchronized int indexOf(long key) {
+    if (size == Integer.MAX_VALUE) {
+      throw new IllegalStateException("Too many states");
+    }
+
+    int index = indexes.putIfAbsent(key, size);
+    if (index != LongIntHashMap.NO_VALUE) {
+      return index;
+    }
+
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, (int) Math.min(keys.length * 2L, Integer.MAX_VALUE));
+    }
+    keys[size] = key;
+    return size++;
+  }
+
+  /**
+   * Returns the key of an index
+   *
+   * @param index the index
+   * @return the key
+   * @throws IndexOutOfBoundsException if no key has the index
+   */
+  synchronized long keyOf(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("No state has the index " + index);
+    }
+    return keys[index];
+  }
+
+  /**
+   * Returns the number of indexed keys
+   */
+  synchronized int size() {
+    return size;
+  }
+
+}
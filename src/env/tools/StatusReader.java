@@ -0,0 +1,286 @@
+package tools;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.*;
+
+/**
+ * A reader of the status of a lab that is aware of the update period of the lab.
+ *
+ * <p> The lab recomputes its status once per tick, and advances the hour of its status
+ * on every tick (e.g., by 0.1 per second in the simulated lab). The reader estimates
+ * the time of the ticks from the observed changes of the hour, and:
+ * </p>
+ * <ul>
+ * <li> after an action, returns the first status that has been computed on a tick
+ * after the action. The status read that follows the action gives the hour before the
+ * next tick, and the next read waits for the estimated time of the next tick, instead
+ * of returning a status that does not reflect the action yet or polling the lab;
+ * <li> otherwise, returns the latest status while no tick is expected to have taken
+ * place since it was read, and for at most a staleness bound. Concurrent reads are
+ * coalesced into a single request.
+ * </ul>
+ * <p> The time of a tick is estimated from the time at which the first read that gives
+ * the new hour was issued, slightly ahead of the time that is waited after a tick. The
+ * estimate therefore tends to precede the actual tick, and a read that precedes the
+ * tick is followed by reads shortly after, until the new hour is observed. This keeps
+ * the estimate from drifting behind the ticks of the lab when it is read once per tick
+ * (see {@link #getNanosUntilNextTick()}).
+ * </p>
+ * <p> The update period of the lab is not known in advance (e.g. a {@link LabServer} may
+ * tick faster than the Node-RED flow), and is measured from the estimated times of the
+ * observed ticks and the number of ticks by which the hour has advanced between them,
+ * starting from a given estimate.
+ * </p>
+ * <p> If the status has no hour, statuses are returned as they are read.
+ * </p>
+ */
+public class StatusReader {
+
+  /**
+   * The time that is waited after the estimated time of a tick, to allow the lab to
+   * complete the tick
+   */
+  private static final long TICK_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  /**
+   * The time by which the estimated time of a tick is advanced, so that a late estimate
+   * is corrected by a read that precedes the tick
+   */
+  private static final long TICK_BIAS_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /**
+   * The number of ticks after which a read after an action gives up waiting for a
+   * status with a new hour
+   */
+  private static final int MAX_WAITED_TICKS = 3;
+
+  /**
+   * The advance of the hour of the status on each tick of the lab
+   */
+  private static final double HOUR_PER_TICK = 0.1;
+
+  /**
+   * The largest number of ticks between two observed ticks from which the update period
+   * is measured, i.e. one day of the lab
+   */
+  private static final int MAX_MEASURED_TICKS = 240;
+
+  /**
+   * The weight of the estimated update period against a new measurement, such that a
+   * single misestimated tick does not disturb the estimate
+   */
+  private static final int TICK_SMOOTHING = 4;
+
+  private static final Logger LOGGER = Logger.getLogger(StatusReader.class.getName());
+
+  private final LabTransport transport;
+  private final int hourSlot;
+  private final long maxStalenessNanos;
+
+  /**
+   * The estimated update period of the lab, which is measured from the observed ticks
+   */
+  private volatile long tickNanos;
+
+  private double[] lastStatus;
+  private long lastStatusNanos;
+
+  /**
+   * The estimated time of the latest observed tick, or -1 if no tick has been observed
+   */
+  private long lastTickNanos = -1;
+
+  /**
+   * Whether an action has been performed since the latest status was read
+   */
+  private boolean actionPerformed;
+
+  /**
+   * The read that is in progress, to which concurrent reads are coalesced
+   */
+  private CompletableFuture<double[]> readInProgress;
+
+  /**
+   * A {@link StatusReader} instance is constructed based on a transport, the slot of
+   * the hour in the status schema of the transport, and the initial estimate of the
+   * update period of the lab
+   *
+   * @param transport the transport
+   * @param hourSlot the slot of the hour in the status schema
+   * @param tickMillis the update period of the lab in milliseconds that is assumed until
+   * it is measured
+   * @param maxStalenessMillis the maximum age of a status that is returned without a new read
+   */
+  public StatusReader(LabTransport transport, int hourSlot, long tickMillis, long maxStalenessMillis) {
+    this.transport = transport;
+    this.hourSlot = hourSlot;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+  }
+
+  /**
+   * Notifies the reader that an action has been performed on the lab
+   */
+  public synchronized void notifyAction() {
+    actionPerformed = true;
+  }
+
+  /**
+   * Returns the time until the status of the next tick is expected to be readable,
+   * i.e., until shortly after the estimated time of the first tick that has not been
+   * observed. If that tick is overdue, or no tick has been observed yet, a short time is
+   * returned so that the tick is found by the next reads, unless the lab has not ticked
+   * for several update periods.
+   *
+   * @return the time in nanoseconds
+   */
+  public synchronized long getNanosUntilNextTick() {
+    if (lastTickNanos < 0) {
+      return TICK_MARGIN_NANOS;
+    }
+    long now = System.nanoTime();
+    long due = lastTickNanos + tickNanos + TICK_MARGIN_NANOS - now;
+    if (due > 0) {
+      return due;
+    }
+    return -due > MAX_WAITED_TICKS * tickNanos ? tickNanos : TICK_MARGIN_NANOS;
+  }
+
+  /**
+   * Returns the status of the lab
+   *
+   * @return the values of the slots of the status schema
+   * @throws IOException if the status cannot be read
+   */
+  public double[] read() throws IOException {
+    boolean afterAction;
+
+    synchronized (this) {
+      afterAction = actionPerformed;
+      actionPerformed = false;
+
+      if (!afterAction && lastStatus != null && isFresh(System.nanoTime())) {
+        return lastStatus;
+      }
+    }
+
+    return afterAction ? readAfterAction() : readCoalesced();
+  }
+
+  /**
+   * Reads the first status that has been computed on a tick after an action
+   */
+  private double[] readAfterAction() throws IOException {
+    // the status read that follows the action, which may still precede the next tick
+    long actionNanos = System.nanoTime();
+    double[] status = transport.readStatus();
+    record(status, actionNanos);
+
+    double hour = status[hourSlot];
+    if (Double.isNaN(hour)) {
+      return status;
+    }
+
+    while (true) {
+      LockSupport.parkNanos(getNanosUntilNextTick());
+
+      long readNanos = System.nanoTime();
+      status = transport.readStatus();
+      record(status, readNanos);
+
+      if (status[hourSlot] != hour) {
+        return status;
+      }
+      if (System.nanoTime() - actionNanos > MAX_WAITED_TICKS * tickNanos) {
+        LOGGER.warning("The hour of the lab has not advanced after an action");
+        return status;
+      }
+    }
+  }
+
+  /**
+   * Reads the status, or waits for a read that is in progress
+   */
+  private double[] readCoalesced() throws IOException {
+    CompletableFuture<double[]> read;
+    boolean reader = false;
+
+    synchronized (this) {
+      if (readInProgress == null) {
+        readInProgress = new CompletableFuture<>();
+        reader = true;
+      }
+      read = readInProgress;
+    }
+
+    if (reader) {
+      try {
+        long readNanos = System.nanoTime();
+        double[] status = transport.readStatus();
+        record(status, readNanos);
+        read.complete(status);
+      } catch (IOException | RuntimeException e) {
+        read.completeExceptionally(e);
+      } finally {
+        synchronized (this) {
+          readInProgress = null;
+        }
+      }
+    }
+
+    try {
+      return read.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Records a status that has been read by a request issued at a given time, and the
+   * estimated time of a tick if the hour has changed. The tick took place after the
+   * previous read was issued.
+   */
+  private synchronized void record(double[] status, long nanos) {
+    if (lastStatus != null && status[hourSlot] != lastStatus[hourSlot]) {
+      long tick = Math.max(lastStatusNanos, nanos - TICK_MARGIN_NANOS - TICK_BIAS_NANOS);
+      if (lastTickNanos >= 0) {
+        measureTickPeriod(tick - lastTickNanos, status[hourSlot] - lastStatus[hourSlot]);
+      }
+      lastTickNanos = tick;
+    }
+    lastStatus = status;
+    lastStatusNanos = nanos;
+  }
+
+  /**
+   * Updates the estimated update period of the lab with the time between two observed
+   * ticks, over which the hour has advanced by a number of ticks
+   */
+  private void measureTickPeriod(long nanos, double hours) {
+    // the hour of the lab wraps at midnight
+    long ticks = Math.round((hours < 0 ? hours + 24 : hours) / HOUR_PER_TICK);
+    if (nanos > 0 && ticks >= 1 && ticks <= MAX_MEASURED_TICKS) {
+      tickNanos += (nanos / ticks - tickNanos) / TICK_SMOOTHING;
+    }
+  }
+
+  /**
+   * Returns whether the latest status is younger than the staleness bound, and the first
+   * tick that has not been observed is not due yet. If no tick has been observed, the
+   * latest status is only returned for a short time, so that the first tick is found.
+   */
+  private boolean isFresh(long now) {
+    if (now - lastStatusNanos > maxStalenessNanos) {
+      return false;
+    }
+    if (lastTickNanos < 0) {
+      return now - lastStatusNanos < TICK_MARGIN_NANOS;
+    }
+    return now < lastTickNanos + tickNanos;
+  }
+}
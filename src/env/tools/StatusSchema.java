@@ -0,0 +1,225 @@
+package tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import ch.unisg.ics.interactions.wot.td.schemas.DataSchema;
+import ch.unisg.ics.interactions.wot.td.schemas.ObjectSchema;
+
+/**
+ * A schema of the status of a lab that is compiled from the {@link ObjectSchema} of
+ * the status property of the W3C Web of Things Thing Description of the lab.
+ *
+ * <p> The schema assigns a slot to each semantic type of interest (e.g.,
+ * "http://example.org/was#Z1Level"), and decodes a JSON status payload directly into
+ * an array of doubles indexed by slot, where booleans are decoded to 0 or 1. The
+ * keys of the payload are matched against the precompiled property names of the
+ * schema, so that decoding does not build a generic map of the payload.
+ * </p>
+ */
+public class StatusSchema {
+
+  /**
+   * The property names (JSON keys) of the slots, in UTF-8
+   */
+  private final byte[][] keys;
+
+  /**
+   * A {@link StatusSchema} instance is constructed based on the property names of its slots
+   *
+   * @param propertyNames the property name (JSON key) of each slot
+   */
+  public StatusSchema(String... propertyNames) {
+    this.keys = new byte[propertyNames.length][];
+    for (int slot = 0; slot < propertyNames.length; slot++) {
+      keys[slot] = propertyNames[slot].getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Compiles the schema of a status property. The property of each slot is found by
+   * its semantic type, or else by a property name that equals the fragment of the
+   * semantic type (e.g., "Z1Level" for "http://example.org/was#Z1Level").
+   *
+   * @param schema the schema of the status property
+   * @param semanticTypes the semantic type of each slot
+   * @return the compiled schema
+   */
+  public static StatusSchema compile(ObjectSchema schema, String... semanticTypes) {
+    return new StatusSchema(resolvePropertyNames(schema, semanticTypes));
+  }
+
+  /**
+   * Returns the property names of the slots of the schema of a status property (see
+   * {@link #compile(ObjectSchema, String...)})
+   *
+   * @param schema the schema of the status property
+   * @param semanticTypes the semantic type of each slot
+   * @return the property name of each slot
+   */
+  public static String[] resolvePropertyNames(ObjectSchema schema, String... semanticTypes) {
+    String[] propertyNames = new String[semanticTypes.length];
+
+    for (int slot = 0; slot < semanticTypes.length; slot++) {
+      String semanticType = semanticTypes[slot];
+      propertyNames[slot] = semanticType.substring(semanticType.indexOf('#') + 1);
+
+      for (Map.Entry<String, DataSchema> property : schema.getProperties().entrySet()) {
+        if (property.getValue().getSemanticTypes().contains(semanticType)) {
+          propertyNames[slot] = property.getKey();
+        }
+      }
+    }
+    return propertyNames;
+  }
+
+  /**
+   * Returns the number of slots of the schema
+   */
+  public int getSlotCount() {
+    return keys.length;
+  }
+
+  /**
+   * Decodes a flat JSON object into an array indexed by slot. Values of other keys are
+   * skipped, and slots without a value are set to NaN, which the caller must treat as
+   * missing rather than as a value (see {@link Lab#readCurrentState()}).
+   *
+   * @param payload the JSON object in UTF-8
+   * @param status the array that receives the values of the slots
+   * @return the given array
+   * @throws IllegalArgumentException if the payload is not a flat JSON object
+   */
+  public double[] decode(byte[] payload, double[] status) {
+    try {
+      return decodeObject(payload, status);
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Incomplete status: " + new String(payload, StandardCharsets.UTF_8));
+    }
+  }
+
+  private double[] decodeObject(byte[] payload, double[] status) {
+    Arrays.fill(status, Double.NaN);
+
+    int i = skipWhitespace(payload, 0);
+    expect(payload, i++, '{');
+
+    while (true) {
+      i = skipWhitespace(payload, i);
+      if (payload[i] == '}') {
+        return status;
+      }
+
+      // the key
+      expect(payload, i++, '"');
+      int keyStart = i;
+      while (payload[i] != '"') {
+        i++;
+      }
+      int slot = findSlot(payload, keyStart, i);
+      i = skipWhitespace(payload, i + 1);
+      expect(payload, i++, ':');
+      i = skipWhitespace(payload, i);
+
+      // the value
+      int valueStart = i;
+      if (payload[i] == '"') {
+        i++;
+        while (payload[i] != '"') {
+          i += payload[i] == '\\' ? 2 : 1;
+        }
+        i++;
+      } else {
+        while (payload[i] != ',' && payload[i] != '}' && payload[i] > ' ') {
+          i++;
+        }
+      }
+      if (slot >= 0) {
+        status[slot] = parseValue(payload, valueStart, i);
+      }
+
+      i = skipWhitespace(payload, i);
+      if (payload[i] == ',') {
+        i++;
+      }
+    }
+  }
+
+  private int findSlot(byte[] payload, int start, int end) {
+    for (int slot = 0; slot < keys.length; slot++) {
+      byte[] key = keys[slot];
+      if (key.length == end - start && Arrays.equals(key, 0, key.length, payload, start, end)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Parses a JSON literal (true, false, or a number) to a double
+   */
+  private static double parseValue(byte[] payload, int start, int end) {
+    if (payload[start] == 't') {
+      return 1;
+    }
+    if (payload[start] == 'f') {
+      return 0;
+    }
+    if (payload[start] == 'n' || payload[start] == '"') {
+      return Double.NaN;
+    }
+
+    int i = start;
+    boolean negative = payload[i] == '-';
+    if (negative) {
+      i++;
+    }
+
+    long mantissa = 0;
+    int exponent = 0;
+    int digits = 0;
+
+    for (; i < end && payload[i] >= '0' && payload[i] <= '9'; i++) {
+      if (digits++ < 18) {
+        mantissa = mantissa * 10 + (payload[i] - '0');
+      } else {
+        exponent++;
+      }
+    }
+    if (i < end && payload[i] == '.') {
+      for (i++; i < end && payload[i] >= '0' && payload[i] <= '9'; i++) {
+        if (digits++ < 18) {
+          mantissa = mantissa * 10 + (payload[i] - '0');
+          exponent--;
+        }
+      }
+    }
+    if (i < end && (payload[i] == 'e' || payload[i] == 'E')) {
+      i++;
+      boolean negativeExponent = payload[i] == '-';
+      if (payload[i] == '-' || payload[i] == '+') {
+        i++;
+      }
+      int e = 0;
+      for (; i < end && payload[i] >= '0' && payload[i] <= '9'; i++) {
+        e = e * 10 + (payload[i] - '0');
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+
+    double value = exponent < 0 ? mantissa / Math.pow(10, -exponent) : mantissa * Math.pow(10, exponent);
+    return negative ? -value : value;
+  }
+
+  private static int skipWhitespace(byte[] payload, int i) {
+    while (payload[i] <= ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  private static void expect(byte[] payload, int i, char c) {
+    if (payload[i] != c) {
+      throw new IllegalArgumentException("Expected '" + c + "' at position " + i + " of the status");
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package tools;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import ch.unisg.ics.interactions.wot.td.ThingDescription;
+import ch.unisg.ics.interactions.wot.td.ThingDescription.TDFormat;
+import ch.unisg.ics.interactions.wot.td.io.TDGraphReader;
+
+/**
+ * A local cache of the descriptions of labs (see {@link LabDescription}) that are derived
+ * from their W3C Web of Things Thing Descriptions, so that a lab starts without fetching
+ * and parsing the Turtle of its Thing Description, and also starts without network
+ * access once its Thing Description has been cached.
+ *
+ * <p> The description of each URL is kept in a binary file, which starts with a header
+ * of {@value #HEADER_SIZE} bytes followed by the description:
+ * </p>
+ * <ul>
+ * <li> 0: magic number, 4: version
+ * <li> 8: fingerprint of the URL, 16: content hash of the Thing Description
+ * <li> 24: fingerprint of the description, which detects truncated or corrupted files
+ * </ul>
+ * <p> A cached description is returned at once, and the Thing Description is fetched
+ * again in the background: if its content hash has changed, the cached description is
+ * replaced, and the lab uses the new description from its next start.
+ * </p>
+ * <p> The cache is in the directory given by the system property
+ * {@value #DIRECTORY_PROPERTY}, by default .cache/was-lab-tds in the home directory of the user.
+ * </p>
+ */
+public final class ThingDescriptionCache {
+
+  /**
+   * The system property of the directory of the cache
+   */
+  public static final String DIRECTORY_PROPERTY = "tools.tdCacheDirectory";
+
+  private static final int MAGIC = 0x54444331; // "TDC1"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 32;
+
+  /**
+   * The timeouts of fetching a Thing Description
+   */
+  private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+  private static final int READ_TIMEOUT_MILLIS = 10_000;
+
+  private static final Logger LOGGER = Logger.getLogger(ThingDescriptionCache.class.getName());
+
+  /**
+   * The executor of the background refreshes of the cached descriptions
+   */
+  private static final ExecutorService REFRESHES = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "td-cache-refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static volatile ThingDescriptionCache defaultCache;
+
+  private final Path directory;
+
+  /**
+   * A {@link ThingDescriptionCache} instance is constructed based on its directory, which
+   * is created when the first description is written
+   *
+   * @param directory the directory of the cache
+   */
+  public ThingDescriptionCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the cache in the directory of the system property {@value #DIRECTORY_PROPERTY}
+   */
+  public static ThingDescriptionCache getDefault() {
+    if (defaultCache == null) {
+      synchronized (ThingDescriptionCache.class) {
+        if (defaultCache == null) {
+          String directory = System.getProperty(DIRECTORY_PROPERTY);
+          defaultCache = new ThingDescriptionCache(directory != null
+            ? Paths.get(directory)
+            : Paths.get(System.getProperty("user.home"), ".cache", "was-lab-tds"));
+        }
+      }
+    }
+    return defaultCache;
+  }
+
+  /**
+   * Returns the description of the lab of a Thing Description, from the cache if the
+   * Thing Description has been cached, or else by fetching and parsing the Thing
+   * Description and caching its description
+   *
+   * @param url the URL of the Thing Description
+   * @return the description
+   * @throws IOException if the Thing Description is not cached and cannot be fetched
+   * @throws IllegalArgumentException if the lab has more than {@value Lab#MAX_ZONES} zones
+   */
+  public LabDescription getDescription(String url) throws IOException {
+    Path file = getFile(url);
+    long[] contentHash = new long[1];
+
+    LabDescription cached = read(file, url, contentHash);
+    if (cached != null) {
+      REFRESHES.execute(() -> refresh(url, file, contentHash[0]));
+      return cached;
+    }
+
+    String content = fetch(url);
+    LabDescription description = parse(content);
+    write(file, url, LearningEnvironment.fingerprint(content), description);
+    return description;
+  }
+
+  /**
+   * Fetches a Thing Description again, and replaces its cached description if its content
+   * has changed
+   */
+  private void refresh(String url, Path file, long cachedContentHash) {
+    try {
+      String content = fetch(url);
+      long contentHash = LearningEnvironment.fingerprint(content);
+      if (contentHash != cachedContentHash) {
+        write(file, url, contentHash, parse(content));
+        LOGGER.warning("The Thing Description at " + url + " has changed, the lab uses it from its next start");
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.fine("The cached Thing Description at " + url + " cannot be refreshed: " + e.getMessage());
+    }
+  }
+
+  private Path getFile(String url) {
+    return directory.resolve(String.format("td-%016x.bin", LearningEnvironment.fingerprint(url)));
+  }
+
+  /**
+   * Reads the cached description of a URL
+   *
+   * @param contentHash the array that receives the content hash of the cached Thing
+   * Description
+   * @return the description, or null if the description is not cached or is invalid
+   */
+  private static LabDescription read(Path file, String url, long[] contentHash) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+
+    try {
+      byte[] bytes = Files.readAllBytes(file);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      if (bytes.length < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION
+          || in.readLong() != LearningEnvironment.fingerprint(url)) {
+        LOGGER.warning("Ignoring invalid Thing Description cache file " + file);
+        return null;
+      }
+      contentHash[0] = in.readLong();
+      long descriptionFingerprint = in.readLong();
+
+      if (descriptionFingerprint != fingerprint(bytes, HEADER_SIZE)) {
+        LOGGER.warning("Ignoring corrupted Thing Description cache file " + file);
+        return null;
+      }
+      return LabDescription.read(in);
+    } catch (IOException e) {
+      LOGGER.warning("Ignoring unreadable Thing Description cache file " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Writes the description of a URL to the cache. The file is replaced atomically, so
+   * that a concurrent start never reads a partial file.
+   */
+  private void write(Path file, String url, long contentHash, LabDescription description) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(LearningEnvironment.fingerprint(url));
+      out.writeLong(contentHash);
+      out.writeLong(0); // the fingerprint of the description, once it has been written
+      description.write(out);
+      out.flush();
+
+      byte[] content = bytes.toByteArray();
+      long descriptionFingerprint = fingerprint(content, HEADER_SIZE);
+      for (int i = 0; i < Long.BYTES; i++) {
+        content[HEADER_SIZE - 1 - i] = (byte) (descriptionFingerprint >>> (8 * i));
+      }
+
+      Files.createDirectories(directory);
+      Path temporary = Files.createTempFile(directory, "td-", ".tmp");
+      Files.write(temporary, content);
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.warning("The Thing Description at " + url + " cannot be cached: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the 64-bit FNV-1a hash of the bytes of a file from an offset
+   */
+  private static long fingerprint(byte[] bytes, int offset) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = offset; i < bytes.length; i++) {
+      hash ^= bytes[i] & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * Fetches the content of a Thing Description
+   */
+  private static String fetch(String url) throws IOException {
+    URLConnection connection = new URL(url).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+    try (InputStream in = connection.getInputStream()) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Parses the Turtle of a Thing Description, and derives the description of its lab
+   */
+  private static LabDescription parse(String content) throws IOException {
+    ThingDescription td = TDGraphReader.readFromString(TDFormat.RDF_TURTLE, content);
+    if (td == null) {
+      throw new IOException("The Thing Description cannot be parsed");
+    }
+    return LabDescription.fromThingDescription(td);
+  }
+}
@@ -0,0 +1,260 @@
+package tools;
+
+import java.util.SplittableRandom;
+
+/**
+ * A linear approximation of the Q values of a learning environment over the continuous
+ * values of its status (e.g. the light levels and the sunshine in lux), with tile
+ * coding, instead of a Q value per discretized state.
+ *
+ * <p> The status is covered by several tilings, i.e. grids of tiles that are offset
+ * from each other by a fraction of a tile, so that each status activates one tile of
+ * each tiling, and the Q value of an action is the sum of the weights of the action for
+ * the active tiles. Neighbouring statuses share most of their active tiles, so an update
+ * generalizes to the statuses around it, while the offsets of the tilings resolve the
+ * status more finely than a single tile. The tilings are offset asymmetrically (by 1, 3,
+ * 5, ... times the fraction of a tile in the successive dimensions), which avoids the
+ * diagonal artefacts of uniform offsets. The dimensions without a tile width (e.g. the
+ * status of the lights) are not tiled, and each of their values has tiles of its own.
+ * </p>
+ * <p> The tiles are hashed into a fixed number of features, so the memory of the weights
+ * does not depend on the number of tiles per dimension nor on the number of dimensions.
+ * The weights are a primitive array with the weights of the actions of each feature
+ * adjacent, and the active features of a status are computed into an array of the
+ * caller, so evaluating and updating the Q values does not allocate.
+ * </p>
+ */
+public final class TileCodedQFunction {
+
+  private final int tilings;
+  private final int actionCount;
+  private final int featureMask;
+
+  /**
+   * The reciprocal of the tile width of each dimension, or 0 for the dimensions that are
+   * not tiled
+   */
+  private final double[] tileScales;
+
+  /**
+   * The offset of each tiling in each dimension, in tiles, indexed by
+   * tiling * dimensions + dimension
+   */
+  private final double[] offsets;
+
+  /**
+   * The weights, indexed by feature * actionCount + action
+   */
+  private final double[] weights;
+
+  /**
+   * A {@link TileCodedQFunction} instance is constructed based on the number of tilings,
+   * the tile width of each dimension of the status, the number of features into which
+   * the tiles are hashed, and the number of actions. The weights are 0.
+   *
+   * @param tilings the number of tilings, i.e. of active features per status
+   * @param tileWidths the width of the tiles of each dimension, or 0 for a dimension that
+   * is not tiled, whose values are truncated to integers
+   * @param features the number of features, a power of two
+   * @param actionCount the number of actions
+   * @throws IllegalArgumentException if a parameter is not positive, or if the number of
+   * features is not a power of two
+   */
+  public TileCodedQFunction(int tilings, double[] tileWidths, int features, int actionCount) {
+    if (tilings < 1 || actionCount < 1 || features < 1 || Integer.bitCount(features) != 1
+        || (long) features * actionCount > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Invalid tile coding: " + tilings + " tilings, " + features + " features, "
+        + actionCount + " actions");
+    }
+
+    int dimensions = tileWidths.length;
+    this.tilings = tilings;
+    this.actionCount = actionCount;
+    this.featureMask = features - 1;
+    this.tileScales = new double[dimensions];
+    this.offsets = new double[tilings * dimensions];
+    this.weights = new double[features * actionCount];
+
+    for (int dimension = 0; dimension < dimensions; dimension++) {
+      if (tileWidths[dimension] < 0) {
+        throw new IllegalArgumentException("Negative tile width of dimension " + dimension);
+      }
+      tileScales[dimension] = tileWidths[dimension] == 0 ? 0 : 1 / tileWidths[dimension];
+      for (int tiling = 0; tiling < tilings; tiling++) {
+        offsets[tiling * dimensions + dimension] = (tiling * (2.0 * dimension + 1) / tilings) % 1.0;
+      }
+    }
+  }
+
+  /**
+   * A {@link TileCodedQFunction} instance is constructed as a copy of another
+   */
+  private TileCodedQFunction(TileCodedQFunction qFunction) {
+    this.tilings = qFunction.tilings;
+    this.actionCount = qFunction.actionCount;
+    this.featureMask = qFunction.featureMask;
+    this.tileScales = qFunction.tileScales;
+    this.offsets = qFunction.offsets;
+    this.weights = qFunction.weights.clone();
+  }
+
+  /**
+   * Returns a copy of the Q function, whose weights do not change with the weights of
+   * this function, e.g. for deciding with the Q function while it is learnt
+   */
+  public TileCodedQFunction copy() {
+    return new TileCodedQFunction(this);
+  }
+
+  public int getTilings() {
+    return tilings;
+  }
+
+  public int getActionCount() {
+    return actionCount;
+  }
+
+  /**
+   * Returns the number of bytes of the weights
+   */
+  public long getByteSize() {
+    return (long) weights.length * Double.BYTES;
+  }
+
+  /**
+   * Computes the active features of a status, one per tiling
+   *
+   * @param status the values of the dimensions of the status
+   * @param features the array that receives the features, of length {@link #getTilings()}
+   */
+  public void activate(double[] status, int[] features) {
+    int dimensions = tileScales.length;
+
+    for (int tiling = 0; tiling < tilings; tiling++) {
+      long hash = 0xcbf29ce484222325L ^ tiling;
+      for (int dimension = 0; dimension < dimensions; dimension++) {
+        double scale = tileScales[dimension];
+        long coordinate = scale == 0
+          ? (long) status[dimension]
+          : (long) Math.floor(status[dimension] * scale + offsets[tiling * dimensions + dimension]);
+        hash = (hash ^ coordinate) * 0x100000001b3L;
+      }
+      // the high bits of the hash are mixed into the bits of the feature
+      hash ^= hash >>> 29;
+      hash *= 0xbf58476d1ce4e5b9L;
+      hash ^= hash >>> 32;
+      features[tiling] = (int) hash & featureMask;
+    }
+  }
+
+  /**
+   * Returns the Q value of an action for a status
+   *
+   * @param features the active features of the status (see {@link #activate})
+   * @param action the action
+   * @return the Q value
+   */
+  public double get(int[] features, int action) {
+    double q = 0.0;
+    for (int tiling = 0; tiling < tilings; tiling++) {
+      q += weights[features[tiling] * actionCount + action];
+    }
+    return q;
+  }
+
+  /**
+   * Returns the maximum Q value of the applicable actions for a status
+   *
+   * @param features the active features of the status
+   * @param actionMask the mask of the applicable actions
+   * @return the maximum Q value, or 0 if no action is applicable
+   */
+  public double max(int[] features, long actionMask) {
+    if (actionMask == 0) {
+      return 0.0;
+    }
+
+    double max = Double.NEGATIVE_INFINITY;
+    for (long mask = actionMask; mask != 0; mask &= mask - 1) {
+      max = Math.max(max, get(features, Long.numberOfTrailingZeros(mask)));
+    }
+    return max;
+  }
+
+  /**
+   * Returns the first applicable action with the maximum Q value for a status
+   *
+   * @param features the active features of the status
+   * @param actionMask the mask of the applicable actions
+   * @return the action, or -1 if no action is applicable
+   */
+  public int argmax(int[] features, long actionMask) {
+    int best = -1;
+    double max = Double.NEGATIVE_INFINITY;
+
+    for (long mask = actionMask; mask != 0; mask &= mask - 1) {
+      int action = Long.numberOfTrailingZeros(mask);
+      double q = get(features, action);
+      if (best < 0 || q > max) {
+        max = q;
+        best = action;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns a random applicable action with probability epsilon, and otherwise an
+   * applicable action with the maximum Q value, where ties are broken uniformly at random
+   * (see {@link ActionKernels#epsilonGreedy})
+   *
+   * @param features the active features of the status
+   * @param actionMask the mask of the applicable actions
+   * @param epsilon the exploration probability
+   * @param random the random number generator
+   * @return the action, or -1 if no action is applicable
+   */
+  public int epsilonGreedy(int[] features, long actionMask, double epsilon, SplittableRandom random) {
+    if (random.nextDouble() < epsilon) {
+      return ActionKernels.random(actionMask, random);
+    }
+
+    int best = -1;
+    int ties = 0;
+    double max = Double.NEGATIVE_INFINITY;
+
+    for (long mask = actionMask; mask != 0; mask &= mask - 1) {
+      int action = Long.numberOfTrailingZeros(mask);
+      double q = get(features, action);
+
+      if (best < 0 || q > max) {
+        max = q;
+        best = action;
+        ties = 1;
+      } else if (q == max && random.nextInt(++ties) == 0) {
+        best = action;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Moves the Q value of an action for a status towards a target, by a gradient step of
+   * the weights of its active features. The learning rate is divided among the tilings,
+   * so that the Q value moves by alpha times its error.
+   *
+   * @param features the active features of the status
+   * @param action the action
+   * @param target the target of the Q value, e.g. r + gamma * max Q(s', a')
+   * @param alpha the learning rate
+   * @return the absolute change of the Q value
+   */
+  public double update(int[] features, int action, double target, double alpha) {
+    double delta = alpha * (target - get(features, action));
+    double step = delta / tilings;
+    for (int tiling = 0; tiling < tilings; tiling++) {
+      weights[features[tiling] * actionCount + action] += step;
+    }
+    return Math.abs(delta);
+  }
+}
@@ -0,0 +1,116 @@
+package tools;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Instant;
+
+/**
+ * A decoder of the dumps of a {@link TraceRecorder}, which prints their records as a
+ * timeline, one line per record with its time since the first record, followed by the
+ * number of records of each kind and the mean latency of the steps.
+ *
+ * <p> Usage: TraceDecoder &lt;dump&gt;, e.g. gradle decodeTrace -Ptrace=/tmp/lab-trace-1.trc
+ * </p>
+ */
+public final class TraceDecoder {
+
+  private TraceDecoder() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: TraceDecoder <dump>");
+      System.exit(2);
+    }
+    decode(Paths.get(args[0]), System.out);
+  }
+
+  /**
+   * Prints the timeline of a dump
+   *
+   * @param file the dump
+   * @param out the output of the timeline
+   * @throws IOException if the dump cannot be read or is not a dump of a trace
+   */
+  public static void decode(Path file, PrintStream out) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != TraceRecorder.MAGIC || in.readInt() != TraceRecorder.VERSION) {
+        throw new IOException("Not a trace dump: " + file);
+      }
+      long count = in.readLong();
+      in.readLong(); // the nanoTime of the time base, only meaningful in the JVM of the dump
+      long baseMillis = in.readLong();
+
+      TraceRecorder.Kind[] kinds = TraceRecorder.Kind.values();
+      long[] kindCounts = new long[kinds.length];
+      long stepLatency = 0;
+      long firstNanos = -1;
+
+      for (long record = 0; record < count; record++) {
+        long sequence = in.readLong();
+        long nanos = in.readLong();
+        int kindOrdinal = in.readInt();
+        int episode = in.readInt();
+        int step = in.readInt();
+        int state = in.readInt();
+        int action = in.readInt();
+        int nextState = in.readInt();
+        double value = Double.longBitsToDouble(in.readLong());
+        long latencyNanos = in.readLong();
+        long tag = in.readLong();
+
+        if (kindOrdinal < 0 || kindOrdinal >= kinds.length) {
+          throw new IOException("Invalid kind " + kindOrdinal + " of record " + sequence);
+        }
+        TraceRecorder.Kind kind = kinds[kindOrdinal];
+        kindCounts[kindOrdinal]++;
+
+        if (firstNanos < 0) {
+          firstNanos = nanos;
+          out.println("Trace of " + count + " records from " + Instant.ofEpochMilli(baseMillis + nanos / 1_000_000));
+        }
+
+        StringBuilder line = new StringBuilder(String.format("%12.3f ms #%-8d %-13s %016x", (nanos - firstNanos) / 1e6,
+          sequence, kind, tag));
+        switch (kind) {
+          case EPISODE_START:
+            line.append(" episode ").append(episode).append(" from state ").append(state).append(" epsilon ")
+              .append(value);
+            break;
+          case STEP:
+            stepLatency += latencyNanos;
+            line.append(" episode ").append(episode).append(" step ").append(step).append(": ").append(state)
+              .append(" -a").append(action).append("-> ").append(nextState).append(" reward ").append(value)
+              .append(String.format(" in %.3f ms", latencyNanos / 1e6));
+            break;
+          case EPISODE_END:
+            line.append(" episode ").append(episode).append(" after ").append(step).append(" steps in state ")
+              .append(state).append(" max delta Q ").append(value)
+              .append(String.format(" in %.3f ms", latencyNanos / 1e6));
+            break;
+          case DECISION:
+            line.append(" state ").append(state).append(" -> action ").append(action)
+              .append(String.format(" in %.3f ms", latencyNanos / 1e6));
+            break;
+          case GOAL_ACHIEVED:
+            line.append(" after ").append(step).append(" decisions")
+              .append(String.format(" in %.3f ms", latencyNanos / 1e6));
+            break;
+          default:
+            break;
+        }
+        out.println(line);
+      }
+
+      for (TraceRecorder.Kind kind : kinds) {
+        if (kindCounts[kind.ordinal()] > 0) {
+          out.println(kind + ": " + kindCounts[kind.ordinal()]);
+        }
+      }
+      long steps = kindCounts[TraceRecorder.Kind.STEP.ordinal()];
+      if (steps > 0) {
+        out.println(String.format("Mean step latency: %.3f ms", stepLatency / 1e6 / steps));
+      }
+    }
+  }
+}
@@ -0,0 +1,274 @@
+package tools;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+
+/**
+ * A recorder of the trace of the trainings and of the control of a learner, which keeps
+ * the latest records in a preallocated ring buffer of fixed-size binary records, so that
+ * a run can be reconstructed afterwards without logging on the hot path.
+ *
+ * <p> Recording a record takes an atomic increment and a few array writes, without
+ * locks, allocation or formatting, and can be done from any thread. Each record is
+ * stamped with its sequence number, which is cleared while the record is written, so
+ * that a dump taken while records are written skips the records that are incomplete or
+ * that have been overwritten by the next round of the ring.
+ * </p>
+ * <p> The records of episodes and decisions are recorded from {@link Level#EPISODES},
+ * and the records of the steps of the episodes from {@link Level#STEPS}. The steps of
+ * one episode out of the sampling period of the recorder are recorded, so that the trace
+ * holds whole episodes.
+ * </p>
+ * <p> A dump starts with a header of {@value #HEADER_SIZE} bytes (magic number, version,
+ * number of records, and the {@link System#nanoTime()} and wall-clock time in
+ * milliseconds since the epoch of the time base of the records), followed by records of
+ * {@value #RECORD_SIZE} bytes in the order of their sequence numbers:
+ * </p>
+ * <ul>
+ * <li> 0: the sequence number of the record
+ * <li> 8: the time of the record in nanoseconds since the time base
+ * <li> 16: the kind of the record (see {@link Kind}), 20: the episode
+ * <li> 24: the step, 28: the state
+ * <li> 32: the action, 36: the next state
+ * <li> 40: the value of the record, i.e. the exploration probability of an episode, the
+ * reward of a step or the largest change of a Q value of an episode
+ * <li> 48: the latency of the record in nanoseconds, e.g. of the action and status read
+ * of a step
+ * <li> 56: the tag of the record, i.e. the fingerprint of the goal or of the room
+ * </ul>
+ * <p> Dumps are decoded into a timeline by {@link TraceDecoder}.
+ * </p>
+ */
+public final class TraceRecorder {
+
+  /**
+   * The levels of detail of a trace
+   */
+  public enum Level {
+    OFF, EPISODES, STEPS
+  }
+
+  /**
+   * The kinds of records
+   */
+  public enum Kind {
+    EPISODE_START, STEP, EPISODE_END, DECISION, GOAL_ACHIEVED, FAILURE
+  }
+
+  static final int MAGIC = 0x54524331; // "TRC1"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final int RECORD_SIZE = 64;
+
+  /**
+   * The default number of records of the ring buffer
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  private static final int RECORD_LONGS = RECORD_SIZE / Long.BYTES;
+
+  private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private static final Logger LOGGER = Logger.getLogger(TraceRecorder.class.getName());
+
+  private final long[] ring;
+  private final long mask;
+  private final AtomicLong nextSequence = new AtomicLong();
+  private final long baseNanos = System.nanoTime();
+  private final long baseMillis = System.currentTimeMillis();
+
+  private volatile Level level = Level.EPISODES;
+  private volatile int sampling = 1;
+
+  /**
+   * A {@link TraceRecorder} instance is constructed based on the number of records of
+   * its ring buffer, which is preallocated
+   *
+   * @param capacity the number of records, a power of two
+   * @throws IllegalArgumentException if the capacity is not a power of two
+   */
+  public TraceRecorder(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1 || capacity > Integer.MAX_VALUE / RECORD_LONGS) {
+      throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+    }
+    this.ring = new long[capacity * RECORD_LONGS];
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Sets the level of detail of the trace
+   *
+   * @param level the level
+   * @param sampling the period of the episodes whose steps are recorded, e.g. 10 for the
+   * steps of one episode out of 10
+   * @throws IllegalArgumentException if the sampling period is not positive
+   */
+  public void setLevel(Level level, int sampling) {
+    if (sampling < 1) {
+      throw new IllegalArgumentException("The sampling period must be positive: " + sampling);
+    }
+    this.sampling = sampling;
+    this.level = level;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  /**
+   * Returns whether episodes and decisions are recorded
+   */
+  public boolean tracesEpisodes() {
+    return level != Level.OFF;
+  }
+
+  /**
+   * Returns whether the steps of an episode are recorded
+   *
+   * @param episode the episode, from 0
+   */
+  public boolean tracesSteps(int episode) {
+    return level == Level.STEPS && episode % sampling == 0;
+  }
+
+  /**
+   * Records a record, regardless of the level of the trace
+   *
+   * @param kind the kind of the record
+   * @param tag the fingerprint of the goal or of the room of the record
+   * @param episode the episode, or -1
+   * @param step the step, or -1
+   * @param state the state, or -1
+   * @param action the action, or -1
+   * @param nextState the next state, or -1
+   * @param value the exploration probability of an episode start, the reward of a step
+   * or the largest change of a Q value of an episode end
+   * @param latencyNanos the latency of the record in nanoseconds, or 0
+   */
+  public void record(Kind kind, long tag, int episode, int step, int state, int action, int nextState, double value,
+      long latencyNanos) {
+    long sequence = nextSequence.getAndIncrement();
+    int base = (int) (sequence & mask) * RECORD_LONGS;
+
+    // the record is invalid until its stamp is written back
+    SLOTS.setOpaque(ring, base, 0L);
+    VarHandle.storeStoreFence();
+    ring[base + 1] = System.nanoTime() - baseNanos;
+    ring[base + 2] = pack(kind.ordinal(), episode);
+    ring[base + 3] = pack(step, state);
+    ring[base + 4] = pack(action, nextState);
+    ring[base + 5] = Double.doubleToRawLongBits(value);
+    ring[base + 6] = latencyNanos;
+    ring[base + 7] = tag;
+    SLOTS.setRelease(ring, base, sequence + 1);
+  }
+
+  private static long pack(int high, int low) {
+    return ((long) high << 32) | (low & 0xffffffffL);
+  }
+
+  /**
+   * Returns the number of records that have been recorded since the recorder has been
+   * constructed, including the records that have been overwritten
+   */
+  public long getRecordCount() {
+    return nextSequence.get();
+  }
+
+  /**
+   * Writes the records of the ring buffer to a file, which is replaced
+   *
+   * @param file the file
+   * @return the number of records that have been written
+   * @throws IOException if the file cannot be written
+   */
+  public int dump(Path file) throws IOException {
+    long[] records = snapshot();
+    int count = records.length / RECORD_LONGS;
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(count);
+      out.writeLong(baseNanos);
+      out.writeLong(baseMillis);
+
+      for (int record = 0; record < count; record++) {
+        int base = record * RECORD_LONGS;
+        out.writeLong(records[base] - 1);
+        out.writeLong(records[base + 1]);
+        for (int field = 2; field < 5; field++) {
+          out.writeInt((int) (records[base + field] >>> 32));
+          out.writeInt((int) records[base + field]);
+        }
+        out.writeLong(records[base + 5]);
+        out.writeLong(records[base + 6]);
+        out.writeLong(records[base + 7]);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Records a failure and writes the records of the ring buffer to a temporary file, so
+   * that the steps that have led to the failure can be decoded
+   *
+   * @param tag the fingerprint of the goal or of the room that has failed
+   * @param failure the failure
+   * @return the file, or null if the records cannot be written
+   */
+  public Path dumpOnFailure(long tag, Throwable failure) {
+    record(Kind.FAILURE, tag, -1, -1, -1, -1, -1, 0.0, 0L);
+    try {
+      Path file = Files.createTempFile("lab-trace-", ".trc");
+      int count = dump(file);
+      LOGGER.severe("Dumped the trace of " + count + " records to " + file + " after " + failure);
+      return file;
+    } catch (IOException e) {
+      LOGGER.severe("The trace cannot be dumped: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Copies the valid records of the ring buffer, in the order of their sequence numbers.
+   * A record is valid if it has the same stamp before and after it has been copied, and
+   * if it has not been overwritten by the next round of the ring.
+   */
+  private long[] snapshot() {
+    long end = nextSequence.get();
+    long start = Math.max(0, end - (mask + 1));
+    long[] records = new long[(int) (end - start) * RECORD_LONGS];
+    int count = 0;
+
+    for (long sequence = start; sequence < end; sequence++) {
+      int base = (int) (sequence & mask) * RECORD_LONGS;
+      long stamp = (long) SLOTS.getAcquire(ring, base);
+      if (stamp != sequence + 1) {
+        continue;
+      }
+
+      int target = count * RECORD_LONGS;
+      for (int field = 1; field < RECORD_LONGS; field++) {
+        records[target + field] = (long) SLOTS.getOpaque(ring, base + field);
+      }
+      VarHandle.loadLoadFence();
+      if ((long) SLOTS.getOpaque(ring, base) == stamp) {
+        records[target] = stamp;
+        count++;
+      }
+    }
+    return Arrays.copyOf(records, count * RECORD_LONGS);
+  }
+
+  @Override
+  public String toString() {
+    return "Trace of level " + level + " (sampling " + sampling + "), " + getRecordCount() + " records, "
+      + (mask + 1) + " records kept";
+  }
+}
@@ -0,0 +1,1246 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.logging.*;
+
+/**
+ * The training of the goals of a {@link QLearner} against its lab: the episodes of Q
+ * learning, with planning updates over the model of the transitions observed in the lab
+ * (Dyna-Q) or with tile coding, the value iteration over a model of the lab, the replay of
+ * experience logs, and the checkpoints of the Q matrices in the store. The trainer holds
+ * the settings of the trainings, which the operations of the artifact set, and passes the
+ * learnt Q matrices to the artifact, which publishes them.
+ *
+ * <p> The trainings in the background run one after another against the lab of the
+ * artifact and its model, so the trainings on the thread of the artifact only get the
+ * model (see {@link #acquireLabModel()}) while no training runs or is queued in the
+ * background.
+ * </p>
+ */
+final class Trainer {
+
+  /**
+   * The receiver of the Q matrices that are learnt, i.e. the artifact
+   */
+  @FunctionalInterface
+  interface QTableConsumer {
+
+    /**
+     * Receives the Q matrix of a goal, which is not updated afterwards
+     *
+     * @param goalDescription the goal description
+     * @param qTable the Q matrix
+     * @param environment the lab against which the Q matrix has been learnt
+     */
+    void accept(Object[] goalDescription, QTable qTable, Lab environment);
+  }
+
+  // the maximum number of steps of an episode, since some goals cannot be reached in the lab (e.g. [0,3])
+  private static final int MAX_EPISODE_STEPS = 200;
+
+  // the number of states above which the Q matrices only keep the Q values of the visited states
+  static final int SPARSE_QTABLE_STATE_COUNT = 1 << 16;
+
+  // the number of episodes after which a Q matrix is checkpointed to the store
+  private static final int CHECKPOINT_EPISODES = 10;
+
+  // the largest number of values of value iteration, i.e. of states times goals
+  private static final int VALUE_ITERATION_VALUE_LIMIT = 1 << 24;
+
+  // the largest change of a value in the last sweep of value iteration, and the largest number of sweeps
+  private static final double VALUE_ITERATION_TOLERANCE = 1e-9;
+  private static final int VALUE_ITERATION_MAX_SWEEPS = 10_000;
+
+  // the number of random steps per observed pair of a state and an action without a newly observed pair after
+  // which the model of the physics of the lab is built, and the largest number of steps per pair of the state space
+  private static final int PHYSICS_MODEL_STEPS_PER_OBSERVED_PAIR = 100;
+  private static final int PHYSICS_MODEL_STEPS_PER_PAIR = 10;
+
+  // the number of features into which the tiles of the tile-coded Q functions are hashed, whatever their resolution
+  private static final int TILE_CODING_FEATURES = 1 << 12;
+
+  // the range in lux over which the tiles of the light levels and of the sunshine are counted
+  private static final double TILE_CODING_LUX_RANGE = 1000;
+
+  private static final Logger LOGGER = Logger.getLogger(Trainer.class.getName());
+
+  private final Lab lab; // the lab of the artifact
+  private final String environmentURL; // the URL of the lab, used for creating independent instances of it
+  private final Discretization discretization; // the discretization of the status of the lab
+  private final int stateCount; // the number of possible states in the lab
+  private final int actionCount; // the number of possible actions in the lab
+  private final long spaceFingerprint; // the fingerprint of the state space and action space of the lab
+  private final LearnerMetrics metrics; // the counters of learning and control, shared with the artifact
+  private final TraceRecorder trace; // the trace of the learner, shared with the artifact
+  private final QTableConsumer onLearnt; // the receiver of the learnt Q matrices
+  private final BiConsumer<TrainingHandle, Policy> onProgress; // the receiver of the progress of the trainings in the background
+
+  private final TransitionModel labModel; // the model of the transitions observed in the lab, shared by all the goals
+  private final Map<Long, TileCodedQFunction> qFunctions; // the tile-coded Q functions of the goals whose latest training learnt one, by goal fingerprint
+  private final Map<Long, Integer> trainedEpisodes; // the number of episodes used by the latest training of each goal, by goal fingerprint
+  private final Map<Integer, TrainingHandle> trainings; // the trainings that run or are queued in the background, by id
+  private volatile int lastTrainingId; // the id of the latest training that has been started in the background
+  private ForkJoinPool trainingPool; // the pool used for learning several goals in parallel
+  private ExecutorService backgroundTrainings; // the executor of the trainings that run in the background, one after another
+
+  private String qTableType = QTable.DEFAULT_TYPE; // the type of the Q matrices, see QTable#create
+  private int planningSteps; // the number of simulated (Dyna-Q) updates performed after each step in the lab
+  private boolean exploringStarts; // whether the episodes start by resetting the lab to under-visited configurations
+  private int tileCodingTilings; // the number of tilings of the tile-coded Q functions, or 0 for learning Q matrices
+  private int tileCodingTiles; // the number of tiles per dimension of each tiling over TILE_CODING_LUX_RANGE
+  private TrainingSchedule schedule = TrainingSchedule.DEFAULT; // the decay of epsilon and alpha, and the convergence criterion of the trainings
+  private SplittableRandom random = new SplittableRandom(); // the random number generator of the trainings, which can be seeded for reproducible runs
+  private QTableStore store; // the persistent store of the Q matrices, if any
+  private volatile ExperienceLog experienceLog; // the log of the transitions observed in the lab, if any
+
+  /**
+   * Creates the trainer of the goals of a lab
+   *
+   * @param lab the lab of the artifact
+   * @param environmentURL the URL of the lab (see {@link QLearner#createLab(String, Discretization)})
+   * @param discretization the discretization of the status of the lab
+   * @param metrics the counters of learning and control
+   * @param trace the trace of the learner
+   * @param onLearnt the receiver of the Q matrices that are learnt, on the thread of the
+   * training
+   * @param onProgress the receiver of the progress of the trainings in the background, with
+   * the policy learnt so far, or with null when the training ends, on the thread of the
+   * training
+   */
+  Trainer(Lab lab, String environmentURL, Discretization discretization, LearnerMetrics metrics,
+      TraceRecorder trace, QTableConsumer onLearnt, BiConsumer<TrainingHandle, Policy> onProgress) {
+    this.lab = lab;
+    this.environmentURL = environmentURL;
+    this.discretization = discretization;
+    this.stateCount = lab.getStateCount();
+    this.actionCount = lab.getActionCount();
+    this.spaceFingerprint = lab.getSpaceFingerprint();
+    this.metrics = metrics;
+    this.trace = trace;
+    this.onLearnt = onLearnt;
+    this.onProgress = onProgress;
+    this.labModel = new TransitionModel(stateCount, actionCount);
+    this.qFunctions = new ConcurrentHashMap<>();
+    this.trainedEpisodes = new ConcurrentHashMap<>();
+    this.trainings = new ConcurrentHashMap<>();
+  }
+
+  void setQTableType(String qTableType) {
+    this.qTableType = qTableType;
+  }
+
+  void setPlanningSteps(int planningSteps) {
+    this.planningSteps = planningSteps;
+  }
+
+  void setExploringStarts(boolean exploringStarts) {
+    this.exploringStarts = exploringStarts;
+  }
+
+  void setTileCoding(int tilings, int tiles) {
+    this.tileCodingTilings = tilings;
+    this.tileCodingTiles = tiles;
+  }
+
+  TrainingSchedule getSchedule() {
+    return schedule;
+  }
+
+  void setSchedule(TrainingSchedule schedule) {
+    this.schedule = schedule;
+  }
+
+  /**
+   * Returns the random number generator of the trainings, which is only used by the thread
+   * of the artifact
+   */
+  SplittableRandom getRandom() {
+    return random;
+  }
+
+  void setRandomSeed(long seed) {
+    this.random = new SplittableRandom(seed);
+  }
+
+  void setStore(QTableStore store) {
+    this.store = store;
+  }
+
+  /**
+   * Starts logging the transitions that are observed in the lab to an experience log,
+   * which replaces the previous log, if any
+   *
+   * @param logFile the path of the log file, to which the transitions are appended if it exists
+   * @throws IOException if the log cannot be opened
+   * @throws IllegalStateException if the states of the lab are not stable across runs, or
+   * if a training runs or is queued in the background, since it appends to the previous log
+   */
+  void setExperienceLog(Path logFile) throws IOException {
+    if (lab.isStateSpaceIndexed()) {
+      throw new IllegalStateException("The states of the lab are not stable across runs, the transitions cannot be logged");
+    }
+    if (!trainings.isEmpty()) {
+      throw new IllegalStateException("A training runs in the background, the experience log cannot be replaced");
+    }
+
+    ExperienceLog previousLog = experienceLog;
+    experienceLog = new ExperienceLog(logFile, spaceFingerprint, lab.getStateAxisCount());
+    if (previousLog != null) {
+      previousLog.close();
+    }
+  }
+
+  /**
+   * Returns the tile-coded Q function of a goal, if the latest training of the goal has
+   * learnt one
+   *
+   * @param goalKey the fingerprint of the goal
+   * @return the Q function, or null
+   */
+  TileCodedQFunction getQFunction(long goalKey) {
+    return qFunctions.get(goalKey);
+  }
+
+  /**
+   * Returns the number of episodes used by the latest training of a goal
+   *
+   * @param goalDescription the goal description
+   * @return the number of episodes, or null if the goal has not been learnt from episodes
+   */
+  Integer getTrainedEpisodes(Object[] goalDescription) {
+    return trainedEpisodes.get(QLearner.goalFingerprint(goalDescription));
+  }
+
+  /**
+   * Returns a training that runs or is queued in the background
+   *
+   * @param trainingId the id of the training
+   * @return the handle of the training, or null if it has ended
+   */
+  TrainingHandle getTraining(int trainingId) {
+    return trainings.get(trainingId);
+  }
+
+  /**
+   * Returns whether a training is the latest training that has been started in the
+   * background, whose progress is published
+   */
+  boolean isLatestTraining(TrainingHandle handle) {
+    return handle.getId() == lastTrainingId;
+  }
+
+  /**
+   * Learns a Q matrix against a goal description on the lab of the artifact
+   *
+   * @param goalDescription the goal description
+   * @param episodes the number of episodes
+   * @param alpha the learning rate
+   * @param gamma the discount factor
+   * @param epsilon the exploration probability
+   * @param reward the reward assigned when reaching a goal state
+   * @return the number of episodes that have been used
+   * @throws IllegalStateException if a training runs or is queued in the background
+   */
+  int train(Object[] goalDescription, int episodes, double alpha, double gamma, double epsilon, int reward) {
+    QTable qTable = trainGoal(lab, acquireLabModel(), random, goalDescription, episodes, alpha, gamma, epsilon,
+      reward, null);
+    onLearnt.accept(goalDescription, qTable, lab);
+    return getTrainedEpisodes(goalDescription);
+  }
+
+  /**
+   * Starts learning a Q matrix against a goal description on the lab of the artifact in
+   * the background, after the trainings that have been started before
+   *
+   * @param goalDescription the goal description
+   * @param episodes the number of episodes
+   * @param alpha the learning rate
+   * @param gamma the discount factor
+   * @param epsilon the exploration probability
+   * @param reward the reward assigned when reaching a goal state
+   * @return the handle of the training
+   */
+  TrainingHandle startTraining(Object[] goalDescription, int episodes, double alpha, double gamma, double epsilon,
+      int reward) {
+
+    // the generator of the trainer is only used by the thread of the artifact
+    SplittableRandom trainingRandom = random.split();
+    TrainingHandle handle = new TrainingHandle(++lastTrainingId, goalDescription, episodes);
+    trainings.put(handle.getId(), handle);
+
+    getBackgroundTrainings().execute(() -> {
+      if (!handle.start()) {
+        trainings.remove(handle.getId());
+        return;
+      }
+
+      boolean success = false;
+      try {
+        QTable qTable = trainGoal(lab, labModel, trainingRandom, handle.getGoalDescription(), episodes, alpha,
+          gamma, epsilon, reward, handle);
+        onLearnt.accept(handle.getGoalDescription(), qTable, lab);
+        success = true;
+      } catch (RuntimeException e) {
+        LOGGER.severe("Training " + handle.getId() + " failed: " + e);
+      } finally {
+        handle.end(success);
+        trainings.remove(handle.getId());
+        onProgress.accept(handle, null);
+        LOGGER.info(handle.toString());
+      }
+    });
+    return handle;
+  }
+
+  /**
+   * Learns Q matrices against a list of goal descriptions in parallel, each against its
+   * own instance of the lab if the lab runs in-process, or else one after another against
+   * the lab of the artifact. The goals whose training has not started when the training of
+   * a goal fails are not learnt, while the goals in progress are learnt to the end.
+   *
+   * @param goals the goal descriptions
+   * @param episodes the number of episodes of each goal
+   * @param alpha the learning rate
+   * @param gamma the discount factor
+   * @param epsilon the exploration probability
+   * @param reward the reward assigned when reaching a goal state
+   * @throws IllegalStateException if the training of a goal fails, with the first goal that
+   * has failed, or if the goals are learnt against the lab of the artifact while a training
+   * runs or is queued in the background
+   */
+  void trainGoals(List<Object[]> goals, int episodes, double alpha, double gamma, double epsilon, int reward) {
+    if (!(lab instanceof SimulatedLab)) {
+      LOGGER.warning("The lab does not run in-process, the goals are learnt one after another");
+      TransitionModel model = acquireLabModel();
+      for (Object[] goal : goals) {
+        onLearnt.accept(goal, trainGoal(lab, model, random, goal, episodes, alpha, gamma, epsilon, reward, null),
+          lab);
+      }
+      return;
+    }
+
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    AtomicReference<String> failure = new AtomicReference<>();
+    for (Object[] goal : goals) {
+      SplittableRandom goalRandom = random.split();
+      tasks.add(getTrainingPool().submit(() -> {
+        // the goals that have not started are not learnt once a goal has failed
+        if (failure.get() != null) {
+          return;
+        }
+        try {
+          Lab environment = QLearner.createLab(environmentURL, discretization);
+          // the Q matrices of indexed state spaces are only valid for the lab of the artifact if the states are shared
+          environment.shareStateIndex(lab);
+          TransitionModel model = new TransitionModel(stateCount, actionCount);
+          onLearnt.accept(goal, trainGoal(environment, model, goalRandom, goal, episodes, alpha, gamma, epsilon,
+            reward, null), environment);
+          LOGGER.info("Learnt goal " + Arrays.toString(goal) + " in " + getTrainedEpisodes(goal) + " episodes");
+        } catch (RuntimeException e) {
+          String message = "Learning goal " + Arrays.toString(goal) + " failed: " + e;
+          LOGGER.severe(message);
+          failure.compareAndSet(null, message);
+        }
+      }));
+    }
+
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+
+    if (failure.get() != null) {
+      throw new IllegalStateException(failure.get());
+    }
+  }
+
+  /**
+   * Computes Q matrices for all the possible goal descriptions [z1Level, ..., zNLevel] at
+   * once by value iteration over a model of the transitions of the lab (see
+   * {@link ValueIteration}), in the order of {@link QLearner#nextGoal(Lab, int[])}
+   *
+   * @param modelName the model, "observed" for the model of the transitions observed in the
+   * lab, or "physics" for a model built on an in-process simulated lab
+   * @param gamma the discount factor [0,1)
+   * @param reward the reward assigned when reaching the goal state
+   * @throws IllegalArgumentException if the model is unknown
+   * @throws IllegalStateException if the state space is too large, if the model has no
+   * observed transitions, or if the observed model is used while a training runs or is
+   * queued in the background
+   */
+  void solveGoals(String modelName, double gamma, int reward) {
+    int goalCount = 1;
+    for (int zone = 0; zone < lab.getZoneCount(); zone++) {
+      goalCount *= lab.getStateAxisRadix(lab.getLightLevelAxis(zone));
+    }
+    if (lab.isStateSpaceIndexed() || (long) stateCount * goalCount > VALUE_ITERATION_VALUE_LIMIT) {
+      throw new IllegalStateException("The state space is too large for value iteration: " + lab.getStateSpaceSize()
+        + " states, " + goalCount + " goals");
+    }
+
+    long start = System.nanoTime();
+    TransitionModel model;
+    if ("observed".equals(modelName)) {
+      model = acquireLabModel();
+    } else if ("physics".equals(modelName)) {
+      model = buildPhysicsModel();
+      if (model == null) {
+        throw new IllegalStateException("The simulated lab does not have the state space and action space of the lab");
+      }
+    } else {
+      throw new IllegalArgumentException("Unknown model: " + modelName + ", expected observed or physics");
+    }
+    if (model.getObservedPairCount() == 0) {
+      throw new IllegalStateException("The model has no observed transitions");
+    }
+    long modelNanos = System.nanoTime() - start;
+
+    // the goal of each state is given by its light levels, where the last zone varies fastest
+    int[] goalOfState = new int[stateCount];
+    for (int state = 0; state < stateCount; state++) {
+      int goal = 0;
+      for (int zone = 0; zone < lab.getZoneCount(); zone++) {
+        int axis = lab.getLightLevelAxis(zone);
+        goal = goal * lab.getStateAxisRadix(axis) + lab.getSubstate(state, axis);
+      }
+      goalOfState[state] = goal;
+    }
+
+    ValueIteration solver = ValueIteration.compile(model, lab, goalOfState, goalCount);
+    int sweeps = solver.solve(gamma, reward, VALUE_ITERATION_TOLERANCE, VALUE_ITERATION_MAX_SWEEPS);
+
+    QTable[] goalQTables = new QTable[goalCount];
+    for (int goal = 0; goal < goalCount; goal++) {
+      goalQTables[goal] = initializeQTable();
+    }
+    solver.copyQValues(gamma, reward, goalQTables);
+
+    int[] levels = new int[lab.getZoneCount()];
+    int goal = 0;
+    qFunctions.clear();
+    do {
+      onLearnt.accept(Arrays.stream(levels).boxed().toArray(), goalQTables[goal++], lab);
+    } while (QLearner.nextGoal(lab, levels));
+
+    LOGGER.info("Solved " + goalCount + " goals with a model of " + model.getObservedPairCount() + " pairs in "
+      + sweeps + " sweeps and " + (System.nanoTime() - start - modelNanos) / 1_000_000 + " ms (model: "
+      + modelNanos / 1_000_000 + " ms)");
+  }
+
+  /**
+   * Computes a Q matrix against a goal description by replaying the transitions of an
+   * experience log, whose transitions are discretized again from their statuses if they
+   * have been logged with the status of the lab (see {@link #discretizeTransitions})
+   *
+   * @param goalDescription the goal description
+   * @param logFile the path of the log file
+   * @param passes the number of passes over the transitions of the log
+   * @param alpha the learning rate
+   * @param gamma the discount factor
+   * @param reward the reward assigned when reaching a goal state
+   * @throws IOException if the log cannot be read, or is not a log of the lab
+   */
+  void replay(Object[] goalDescription, Path logFile, int passes, double alpha, double gamma, int reward)
+      throws IOException {
+    ExperienceLog.Transitions transitions = ExperienceLog.read(logFile, spaceFingerprint, lab.getStateAxisCount());
+
+    int[] states = transitions.states;
+    int[] actions = transitions.actions;
+    int[] nextStates = transitions.nextStates;
+    int size = transitions.size;
+    if (transitions.statusCount > 0) {
+      states = new int[transitions.size];
+      actions = new int[transitions.size];
+      nextStates = new int[transitions.size];
+      size = discretizeTransitions(transitions, states, actions, nextStates);
+      LOGGER.info("Discretized " + size + " of " + transitions.size + " transitions from their statuses");
+    }
+
+    IntPredicate goalStates = lab.getCompatibleStatePredicate(Arrays.asList(goalDescription));
+    QTable currentQTable = initializeQTable();
+    long start = System.nanoTime();
+
+    for (int pass = 0; pass < passes; pass++) {
+      for (int i = 0; i < size; i++) {
+        updateQ(lab, currentQTable, goalStates, states[i], actions[i], nextStates[i], alpha, gamma, reward);
+      }
+    }
+
+    LOGGER.info("Replayed " + size + " transitions " + passes + " times in "
+      + (System.nanoTime() - start) / 1000000 + " ms");
+    putQFunction(QLearner.goalFingerprint(goalDescription), null);
+    onLearnt.accept(goalDescription, currentQTable, lab);
+  }
+
+  /**
+   * Reads the most recently completed Q matrix of a goal description from the store,
+   * whatever the hyperparameters and the schedule of its training, which are logged by
+   * the key of the Q matrix and its number of episodes
+   *
+   * @param goalDescription the goal description
+   * @return the Q matrix, or null if the store does not hold a Q matrix of the goal
+   */
+  QTable readQTable(Object[] goalDescription) {
+    if (store == null) {
+      return null;
+    }
+
+    Optional<Long> key = store.findCompleted(spaceFingerprint, QLearner.goalFingerprint(goalDescription));
+    QTable qTable = initializeQTable();
+
+    if (key.isPresent() && store.read(key.get(), qTable)) {
+      LOGGER.info(String.format("Read the Q matrix of %s from the store (key %016x, %d episodes)",
+        Arrays.toString(goalDescription), key.get(), store.getCompletedEpisodes(key.get())));
+      return qTable;
+    }
+    return null;
+  }
+
+  /**
+   * Initialize a Q matrix of the configured type, or a sparse Q matrix for large state
+   * spaces, whose Q values are 0
+   *
+   * @return the Q matrix
+   */
+  QTable initializeQTable() {
+    String type = stateCount > SPARSE_QTABLE_STATE_COUNT ? "sparse" : qTableType;
+    return QTable.create(type, stateCount, actionCount);
+  }
+
+  /**
+   * Cancels the trainings in the background, shuts down the executors of the trainings,
+   * and closes the experience log and the store
+   */
+  void close() {
+    for (TrainingHandle handle : trainings.values()) {
+      handle.cancel();
+    }
+
+    synchronized (this) {
+      QLearner.shutdown(backgroundTrainings);
+      QLearner.shutdown(trainingPool);
+    }
+
+    ExperienceLog log = experienceLog;
+    experienceLog = null;
+    if (log != null) {
+      try {
+        log.close();
+      } catch (IOException e) {
+        LOGGER.severe(e.getMessage());
+      }
+    }
+    if (store != null) {
+      store.close();
+    }
+  }
+
+  /**
+   * Returns the model of the transitions observed in the lab of the artifact, for learning
+   * against the lab on the thread of the artifact
+   *
+   * @return the model
+   * @throws IllegalStateException if a training runs or is queued in the background, since
+   * it learns against the lab and updates the model
+   */
+  private TransitionModel acquireLabModel() {
+    if (!trainings.isEmpty()) {
+      throw new IllegalStateException("A training runs in the background, see startTraining");
+    }
+    return labModel;
+  }
+
+  /**
+   * Returns the pool used for learning several goals in parallel
+   */
+  private synchronized ForkJoinPool getTrainingPool() {
+    if (trainingPool == null) {
+      trainingPool = new ForkJoinPool();
+    }
+    return trainingPool;
+  }
+
+  /**
+   * Returns the executor of the trainings that run in the background
+   */
+  private synchronized ExecutorService getBackgroundTrainings() {
+    if (backgroundTrainings == null) {
+      backgroundTrainings = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "qlearner-training");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return backgroundTrainings;
+  }
+
+  /**
+   * Discretizes the transitions of an experience log from their logged statuses, with the
+   * discretization of the lab. The next state of a transition is discretized from its
+   * status, and its state is the next state of the latest previous transition that has
+   * reached the same logged state.
+   *
+   * @param transitions the transitions of the log, with their statuses
+   * @param states the array that receives the states of the discretized transitions
+   * @param actions the array that receives the actions of the discretized transitions
+   * @param nextStates the array that receives the next states of the discretized transitions
+   * @return the number of discretized transitions, without the transitions from a state
+   * that no previous transition has reached
+   */
+  private int discretizeTransitions(ExperienceLog.Transitions transitions, int[] states, int[] actions,
+      int[] nextStates) {
+    Map<Integer, Integer> reachedStates = new HashMap<>(); // the discretized state of each logged state
+    double[] status = new double[transitions.statusCount];
+    int[] substates = new int[lab.getStateAxisCount()];
+    int size = 0;
+
+    for (int i = 0; i < transitions.size; i++) {
+      for (int value = 0; value < status.length; value++) {
+        status[value] = transitions.statuses[i * status.length + value];
+      }
+      int nextState = lab.encodeStatus(status, substates);
+      Integer state = reachedStates.get(transitions.states[i]);
+      reachedStates.put(transitions.nextStates[i], nextState);
+
+      if (state != null && state >= 0 && nextState >= 0 && transitions.actions[i] < actionCount) {
+        states[size] = state;
+        actions[size] = transitions.actions[i];
+        nextStates[size] = nextState;
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Builds a model of the transitions of the lab by a random walk on an in-process
+   * simulated lab. Since only a small part of the state space is reachable, the walk stops
+   * once it has not observed a new pair of a state and an action for
+   * {@value #PHYSICS_MODEL_STEPS_PER_OBSERVED_PAIR} steps per observed pair, and after at
+   * most {@value #PHYSICS_MODEL_STEPS_PER_PAIR} steps per pair of the state space.
+   *
+   * @return the model, or null if the simulated lab does not have the state space and
+   * action space of the lab
+   */
+  private TransitionModel buildPhysicsModel() {
+    Lab simulatedLab = lab instanceof SimulatedLab
+      ? QLearner.createLab(environmentURL, discretization)
+      : new SimulatedLab(LabSimulator.SunshineModel.FIXED, lab.getZoneCount(), 0, discretization);
+    if (simulatedLab.getSpaceFingerprint() != spaceFingerprint) {
+      return null;
+    }
+
+    TransitionModel model = new TransitionModel(stateCount, actionCount);
+    SplittableRandom walkRandom = random.split();
+    long maxSteps = (long) stateCount * actionCount * PHYSICS_MODEL_STEPS_PER_PAIR;
+
+    int state = simulatedLab.readCurrentState();
+    int observedPairCount = 0;
+    long lastNewPairStep = 0;
+    for (long step = 0; step < maxSteps; step++) {
+      int action = ActionKernels.random(simulatedLab.getApplicableActionMask(state), walkRandom);
+      simulatedLab.performAction(action);
+      int nextState = simulatedLab.readCurrentState();
+      model.observe(state, action, nextState);
+      state = nextState;
+
+      if (model.getObservedPairCount() > observedPairCount) {
+        observedPairCount = model.getObservedPairCount();
+        lastNewPairStep = step;
+      } else if (step - lastNewPairStep >= (long) observedPairCount * PHYSICS_MODEL_STEPS_PER_OBSERVED_PAIR) {
+        break;
+      }
+    }
+    return model;
+  }
+
+  /**
+   * Learns a Q matrix against a goal description. If the store holds the Q matrix of the
+   * goal for the same hyperparameters, the Q matrix is read from the store, and if the
+   * store holds a checkpoint of it, the training is resumed from the checkpoint.
+   *
+   * @param environment the lab that is learnt
+   * @param model the model that learns the transitions observed in the lab
+   * @param random the random number generator used for exploring the lab and for planning
+   * @param goalDescription the goal description
+   * @param episodes the number of episodes
+   * @param alpha the learning rate
+   * @param gamma the discount factor
+   * @param epsilon the exploration probability
+   * @param reward the reward assigned when reaching a goal state
+   * @param handle the handle of the training if it runs in the background, or null
+   * @return the Q matrix, which is compiled from the tile-coded Q function of the goal if
+   * the goal is learnt with tile coding (see {@link #getQFunction})
+   */
+  private QTable trainGoal(Lab environment, TransitionModel model, SplittableRandom random,
+      Object[] goalDescription, int episodes,
+      double alpha, double gamma, double epsilon, int reward, TrainingHandle handle) {
+
+    // get the test of the goal states from goal description
+    IntPredicate goalStates = environment.getCompatibleStatePredicate(Arrays.asList(goalDescription));
+    LOGGER.info("Goal: "+ Arrays.toString(goalDescription));
+    long goalFingerprint = QLearner.goalFingerprint(goalDescription);
+
+    // the settings are read once, since their operations may change them while the
+    // training runs in the background
+    TrainingSchedule schedule = this.schedule;
+    int planningSteps = this.planningSteps;
+    ExploringStarts starts = exploringStarts ? new ExploringStarts(environment, model, goalStates) : null;
+    int tilings = tileCodingTilings;
+    int tiles = tileCodingTiles;
+    TileCodedQFunction qFunction = tilings > 0 ? createTileCodedQFunction(environment, tilings, tiles) : null;
+
+    // initialize Q(s, a) arbitrarly
+    QTable currentQTable = initializeQTable();
+    int firstEpisode = 0;
+    IntConsumer checkpoint = completedEpisodes -> {};
+
+    // the Q matrices compiled from tile-coded Q functions are not stored, since the keys do not cover the tile coding
+    if (store != null && qFunction == null) {
+      // the key of the default schedule is the key of the Q matrices stored before schedules
+      long key = schedule == TrainingSchedule.DEFAULT
+        ? QTableStore.key(spaceFingerprint, goalFingerprint, episodes, alpha, gamma, epsilon, reward, planningSteps)
+        : QTableStore.key(spaceFingerprint, goalFingerprint, episodes, alpha, gamma, epsilon, reward, planningSteps,
+          schedule);
+
+      if (store.read(key, currentQTable)) {
+        firstEpisode = store.getCompletedEpisodes(key);
+        if (firstEpisode >= episodes) {
+          LOGGER.info("Read the Q matrix of " + Arrays.toString(goalDescription) + " from the store");
+          trainedEpisodes.put(goalFingerprint, 0);
+          putQFunction(goalFingerprint, null);
+          return currentQTable;
+        }
+        LOGGER.info("Resuming the Q matrix of " + Arrays.toString(goalDescription) + " from episode " + firstEpisode);
+      }
+
+      checkpoint = completedEpisodes -> {
+        try {
+          store.write(key, spaceFingerprint, goalFingerprint, currentQTable, episodes, completedEpisodes);
+        } catch (IOException e) {
+          LOGGER.severe(e.getMessage());
+        }
+      };
+    }
+
+    EpisodeLearner learner = qFunction != null
+      ? new TileCodingLearner(environment, goalStates, qFunction, currentQTable, random, gamma, reward,
+        schedule.hasConvergence())
+      : new QTableLearner(environment, model, goalStates, currentQTable, random, gamma, reward, planningSteps,
+        schedule.hasConvergence());
+
+    int completedEpisodes;
+    try {
+      completedEpisodes = runEpisodes(environment, model, starts, random, goalDescription, goalStates, learner,
+        firstEpisode, episodes, alpha, epsilon, reward, schedule, handle, checkpoint);
+    } catch (RuntimeException e) {
+      trace.dumpOnFailure(goalFingerprint, e);
+      throw e;
+    }
+    trainedEpisodes.put(goalFingerprint, completedEpisodes - firstEpisode);
+    putQFunction(goalFingerprint, qFunction);
+    return currentQTable;
+  }
+
+  /**
+   * Runs the episodes of a training against a set of goal states on a lab, in which a
+   * learner chooses the actions and learns from the steps in the lab (see
+   * {@link EpisodeLearner})
+   *
+   * @param environment the lab that is learnt
+   * @param model the model that learns the transitions observed in the lab
+   * @param starts the exploring starts of the episodes, or null for starting the episodes
+   * with random actions
+   * @param random the random number generator used for exploring the lab
+   * @param goalDescription the goal description
+   * @param goalStates the goal states
+   * @param learner the learner of the Q values
+   * @param firstEpisode the first episode, which is greater than 0 when a training is resumed
+   * @param episodes the number of episodes
+   * @param alpha the learning rate of the first episode
+   * @param epsilon the exploration probability of the first episode
+   * @param reward the reward assigned when reaching a goal state
+   * @param schedule the decay of the exploration probability and of the learning rate, and
+   * the convergence criterion
+   * @param handle the handle of the training if it runs in the background, or null
+   * @param checkpoint the consumer of the number of completed episodes, invoked every
+   * {@value #CHECKPOINT_EPISODES} episodes and at the end of the training
+   * @return the number of completed episodes, which is less than the number of episodes
+   * if the training has converged before or has been cancelled
+   */
+  private int runEpisodes(Lab environment, TransitionModel model, ExploringStarts starts, SplittableRandom random,
+      Object[] goalDescription, IntPredicate goalStates, EpisodeLearner learner,
+      int firstEpisode, int episodes, double alpha, double epsilon, int reward,
+      TrainingSchedule schedule, TrainingHandle handle, IntConsumer checkpoint) {
+
+    ExperienceLog log = experienceLog;
+    double[] status = new double[environment.getStateAxisCount()];
+    TraceRecorder trace = this.trace;
+    long goalTag = QLearner.goalFingerprint(goalDescription);
+    long labActions = 0;
+    boolean converging = schedule.hasConvergence();
+    int convergedEpisodes = 0;
+    int completedEpisodes = episodes;
+
+    // loop for each episode
+    for (int i = firstEpisode; i < episodes; i++) {
+      if (handle != null && !handle.awaitRunning()) {
+        LOGGER.info("Cancelled after " + i + " of " + episodes + " episodes");
+        completedEpisodes = i;
+        checkpoint.accept(i);
+        break;
+      }
+
+      double episodeAlpha = schedule.getAlpha(alpha, i);
+      double episodeEpsilon = schedule.getEpsilon(epsilon, i);
+
+      int currState = startEpisode(environment, starts, random);
+      labActions += starts != null ? 1 : 10;
+      learner.startEpisode(currState);
+
+      long episodeStart = System.nanoTime();
+      boolean tracingSteps = trace.tracesSteps(i);
+      if (trace.tracesEpisodes()) {
+        trace.record(TraceRecorder.Kind.EPISODE_START, goalTag, i, 0, currState, -1, -1, episodeEpsilon, 0L);
+      }
+
+      int step = 0;
+
+      // loop for each step of episode
+      for (; step < MAX_EPISODE_STEPS && !goalStates.test(currState); step++) {
+
+        // Choose A from S using policy derived from Q (e-greedy), among the applicable actions
+        long mask = environment.getApplicableActionMask(currState);
+        int bestAction = learner.chooseAction(currState, mask, episodeEpsilon);
+        long actionStart = tracingSteps ? System.nanoTime() : 0L;
+        environment.performAction(bestAction);
+        labActions++;
+
+        // S_prime
+        int newState = environment.readCurrentState();
+        if (tracingSteps) {
+          trace.record(TraceRecorder.Kind.STEP, goalTag, i, step, currState, bestAction, newState,
+            goalStates.test(newState) ? reward : -1, System.nanoTime() - actionStart);
+        }
+
+        model.observe(currState, bestAction, newState);
+        logTransition(log, environment, status, currState, bestAction, newState, step);
+        learner.learn(currState, mask, bestAction, newState, episodeAlpha);
+
+        // S <- S_prime
+        currState = newState;
+      }
+
+      double maxDeltaQ = learner.maxDeltaQ;
+      metrics.recordEpisode(step, maxDeltaQ);
+      if (trace.tracesEpisodes()) {
+        trace.record(TraceRecorder.Kind.EPISODE_END, goalTag, i, step, currState, -1, -1, maxDeltaQ,
+          System.nanoTime() - episodeStart);
+      }
+
+      LabEvents.EpisodeEvent event = new LabEvents.EpisodeEvent();
+      if (event.shouldCommit()) {
+        event.goal = Arrays.toString(goalDescription);
+        event.episode = i;
+        event.steps = step;
+        event.goalReached = goalStates.test(currState);
+        event.maxDeltaQ = maxDeltaQ;
+        event.commit();
+      }
+
+      // the policy of a training in the background is served while the goal is learnt
+      if (handle != null && handle.recordEpisode(i + 1, episodeEpsilon, maxDeltaQ)) {
+        onProgress.accept(handle, learner.compilePolicy());
+      }
+
+      // the training has converged after a window of episodes without significant changes.
+      // An episode without steps, e.g. one that starts at a goal state, makes no update, and
+      // neither extends nor resets the window
+      if (step > 0) {
+        convergedEpisodes = schedule.isConverged(maxDeltaQ, learner.policyChanged) ? convergedEpisodes + 1 : 0;
+      }
+      if (converging && convergedEpisodes >= schedule.getConvergenceWindow() && i + 1 < episodes) {
+        LOGGER.info("Converged after " + (i + 1) + " of " + episodes + " episodes");
+        completedEpisodes = i + 1;
+        // the training is complete, so it is not resumed from the store
+        checkpoint.accept(episodes);
+        break;
+      }
+
+      if ((i + 1) % CHECKPOINT_EPISODES == 0 || i + 1 == episodes) {
+        checkpoint.accept(i + 1);
+      }
+    }
+
+    if (log != null) {
+      try {
+        log.flush();
+      } catch (IOException e) {
+        LOGGER.severe(e.getMessage());
+      }
+    }
+
+    learner.complete();
+    LOGGER.info("Learnt " + learner + " (" + labActions + " actions in the lab)");
+    return completedEpisodes;
+  }
+
+  /**
+   * Keeps the tile-coded Q function of a goal, from which the policy of the goal is
+   * compiled, or forgets it if the goal has been learnt without tile coding
+   *
+   * @param goalKey the fingerprint of the goal
+   * @param qFunction the Q function, or null
+   */
+  private void putQFunction(long goalKey, TileCodedQFunction qFunction) {
+    if (qFunction != null) {
+      qFunctions.put(goalKey, qFunction);
+    } else {
+      qFunctions.remove(goalKey);
+    }
+  }
+
+  /**
+   * Creates a tile-coded Q function over the status of a lab, which tiles the light levels
+   * and the sunshine, but not the lights and the blinds
+   *
+   * @param environment the lab
+   * @param tilings the number of tilings
+   * @param tiles the number of tiles per dimension of each tiling
+   * @return the Q function, whose weights are 0
+   */
+  private TileCodedQFunction createTileCodedQFunction(Lab environment, int tilings, int tiles) {
+    double[] tileWidths = new double[environment.getStateAxisCount()];
+    for (int zone = 0; zone < environment.getZoneCount(); zone++) {
+      tileWidths[environment.getLightLevelAxis(zone)] = TILE_CODING_LUX_RANGE / tiles;
+    }
+    tileWidths[environment.getSunshineAxis()] = TILE_CODING_LUX_RANGE / tiles;
+    return new TileCodedQFunction(tilings, tileWidths, TILE_CODING_FEATURES, actionCount);
+  }
+
+  /**
+   * Starts an episode, by resetting the lab to an under-visited configuration with a single
+   * command if the episodes start by exploring starts, or else by performing 10 random
+   * actions
+   *
+   * @param starts the exploring starts of the training, or null
+   * @return the initial state of the episode
+   */
+  private int startEpisode(Lab environment, ExploringStarts starts, SplittableRandom random) {
+    if (starts != null) {
+      int configuration = starts.chooseConfiguration(random);
+      environment.reset(configuration);
+      int state = environment.readCurrentState();
+      starts.recordStart(configuration, state);
+      return state;
+    }
+
+    // Initialize S randomize state by doing 10 random actions
+    for (int j = 0; j < 10; j++) environment.performAction(random.nextInt(environment.getActionCount()));
+    return environment.readCurrentState();
+  }
+
+  /**
+   * Appends a transition that has been observed in the lab to an experience log, if any,
+   * with the status of the lab from which the next state has been discretized
+   *
+   * @param status the array that receives the status of the lab
+   */
+  private static void logTransition(ExperienceLog log, Lab environment, double[] status, int state, int action,
+      int newState, int step) {
+    if (log != null) {
+      try {
+        log.append(state, action, newState, step, environment.getCurrentStatus(status));
+      } catch (IOException e) {
+        LOGGER.severe(e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Updates the Q value of a state and an action based on a transition to a next state:
+   * Q(S, A) <- Q(S, A) + alpha * (Reward + gamma * max(S_prime, a) - Q(S, A)), where
+   * max(S_prime, a) is 0 if S_prime is a goal state
+   *
+   * @return the absolute change of the Q value
+   */
+  private static double updateQ(Lab environment, QTable currentQTable, IntPredicate goalStates, int state,
+      int action, int newState, double alpha, double gamma, int reward) {
+
+    // Q(S, A)
+    double currQ = currentQTable.get(state, action);
+
+    // reward val, and max Q(S_prime, a) which is 0 if S_prime is terminal
+    boolean terminal = goalStates.test(newState);
+    int rewardVal = terminal ? reward : -1;
+    double primeQ = terminal
+      ? 0.0
+      : ActionKernels.max(currentQTable, newState, environment.getApplicableActionMask(newState));
+
+    double deltaQ = alpha * (rewardVal + gamma * primeQ - currQ);
+    currentQTable.set(state, action, currQ + deltaQ);
+    return Math.abs(deltaQ);
+  }
+
+  /**
+   * The learning of the Q values of a goal in the episodes of a training (see
+   * {@link #runEpisodes}): the choice of the actions, and the updates of the Q values after
+   * each step in the lab, which track the largest change of a Q value and whether the
+   * greedy action of a state has changed in the current episode
+   */
+  private abstract static class EpisodeLearner {
+
+    double maxDeltaQ; // the largest change of a Q value in the current episode
+    boolean policyChanged; // whether the greedy action of a state has changed in the current episode
+
+    /**
+     * Starts an episode in a state, which is the current state of the lab
+     */
+    void startEpisode(int state) {
+      maxDeltaQ = 0.0;
+      policyChanged = false;
+    }
+
+    /**
+     * Chooses an applicable action of a state, which is the current state of the lab
+     * (e-greedy)
+     */
+    abstract int chooseAction(int state, long mask, double epsilon);
+
+    /**
+     * Learns from a step in the lab, from a state with its mask of applicable actions to a
+     * new state, which is the current state of the lab
+     */
+    abstract void learn(int state, long mask, int action, int newState, double alpha);
+
+    /**
+     * Returns the policy of the Q values learnt so far
+     */
+    abstract Policy compilePolicy();
+
+    /**
+     * Completes the Q values at the end of the training
+     */
+    void complete() {
+    }
+  }
+
+  /**
+   * The learning of a Q matrix (Q learning), with planning updates after each step in the
+   * lab for transitions simulated by the transition model (Dyna-Q)
+   */
+  private static final class QTableLearner extends EpisodeLearner {
+
+    private final Lab environment;
+    private final TransitionModel model;
+    private final IntPredicate goalStates;
+    private final QTable qTable;
+    private final SplittableRandom random;
+    private final double gamma;
+    private final int reward;
+    private final int planningSteps;
+    private final boolean converging; // whether the greedy actions are compared
+
+    QTableLearner(Lab environment, TransitionModel model, IntPredicate goalStates, QTable qTable,
+        SplittableRandom random, double gamma, int reward, int planningSteps, boolean converging) {
+      this.environment = environment;
+      this.model = model;
+      this.goalStates = goalStates;
+      this.qTable = qTable;
+      this.random = random;
+      this.gamma = gamma;
+      this.reward = reward;
+      this.planningSteps = planningSteps;
+      this.converging = converging;
+    }
+
+    @Override
+    int chooseAction(int state, long mask, double epsilon) {
+      return ActionKernels.epsilonGreedy(qTable, state, mask, epsilon, random);
+    }
+
+    @Override
+    void learn(int state, long mask, int action, int newState, double alpha) {
+      // the greedy action of S is only compared if the convergence is tested
+      int greedyAction = converging ? ActionKernels.argmax(qTable, state, mask) : 0;
+      maxDeltaQ = Math.max(maxDeltaQ, updateQ(environment, qTable, goalStates, state, action, newState, alpha,
+        gamma, reward));
+      policyChanged |= converging && ActionKernels.argmax(qTable, state, mask) != greedyAction;
+
+      // planning: repeat the update for transitions simulated by the model
+      for (int n = 0; n < planningSteps; n++) {
+        long pair = model.sampleObservedPair(random);
+        int planningState = model.getPairState(pair);
+        int planningAction = model.getPairAction(pair);
+        long planningMask = converging ? environment.getApplicableActionMask(planningState) : 0L;
+        int greedyPlanningAction = converging ? ActionKernels.argmax(qTable, planningState, planningMask) : 0;
+        maxDeltaQ = Math.max(maxDeltaQ, updateQ(environment, qTable, goalStates, planningState, planningAction,
+          model.sampleNextState(planningState, planningAction, random), alpha, gamma, reward));
+        policyChanged |= converging
+          && ActionKernels.argmax(qTable, planningState, planningMask) != greedyPlanningAction;
+      }
+    }
+
+    @Override
+    Policy compilePolicy() {
+      return Policy.compile(qTable, environment);
+    }
+
+    @Override
+    public String toString() {
+      return "a Q matrix with " + planningSteps + " planning updates per step";
+    }
+  }
+
+  /**
+   * The learning of a linear approximation of the Q values over the status of a lab, with
+   * tile coding (see {@link QLearner#setTileCoding}), without planning updates, since the
+   * transition model only knows the discretized states. The approximation is compiled
+   * into a Q matrix at the mean status of each visited state, and its policy decides over
+   * the status of the lab (see {@link Policy#hasQFunction()}).
+   */
+  private static final class TileCodingLearner extends EpisodeLearner {
+
+    private final Lab environment;
+    private final IntPredicate goalStates;
+    private final TileCodedQFunction qFunction;
+    private final QTable qTable; // the Q matrix into which the approximation is compiled
+    private final SplittableRandom random;
+    private final double gamma;
+    private final int reward;
+    private final boolean converging; // whether the greedy actions are compared
+
+    private final double[] status;
+    private int[] features; // the active features of the current status
+    private int[] nextFeatures;
+
+    /**
+     * The row of the sums of the statuses of each visited state, by state
+     */
+    private final LongIntHashMap visitedStates = new LongIntHashMap(64);
+
+    /**
+     * The sum of the statuses of each visited state and their number, in rows of
+     * {@link Lab#getStateAxisCount()} + 1 values
+     */
+    private double[] statusSums;
+
+    TileCodingLearner(Lab environment, IntPredicate goalStates, TileCodedQFunction qFunction, QTable qTable,
+        SplittableRandom random, double gamma, int reward, boolean converging) {
+      this.environment = environment;
+      this.goalStates = goalStates;
+      this.qFunction = qFunction;
+      this.qTable = qTable;
+      this.random = random;
+      this.gamma = gamma;
+      this.reward = reward;
+      this.converging = converging;
+      this.status = new double[environment.getStateAxisCount()];
+      this.features = new int[qFunction.getTilings()];
+      this.nextFeatures = new int[qFunction.getTilings()];
+      this.statusSums = new double[64 * (status.length + 1)];
+    }
+
+    @Override
+    void startEpisode(int state) {
+      super.startEpisode(state);
+      qFunction.activate(environment.getCurrentStatus(status), features);
+      addStatus(state);
+    }
+
+    @Override
+    int chooseAction(int state, long mask, double epsilon) {
+      return qFunction.epsilonGreedy(features, mask, epsilon, random);
+    }
+
+    @Override
+    void learn(int state, long mask, int action, int newState, double alpha) {
+      qFunction.activate(environment.getCurrentStatus(status), nextFeatures);
+      addStatus(newState);
+
+      // the greedy action of S is only compared if the convergence is tested
+      int greedyAction = converging ? qFunction.argmax(features, mask) : 0;
+      double target = goalStates.test(newState)
+        ? reward
+        : -1 + gamma * qFunction.max(nextFeatures, environment.getApplicableActionMask(newState));
+      maxDeltaQ = Math.max(maxDeltaQ, qFunction.update(features, action, target, alpha));
+      policyChanged |= converging && qFunction.argmax(features, mask) != greedyAction;
+
+      int[] swap = features;
+      features = nextFeatures;
+      nextFeatures = swap;
+    }
+
+    /**
+     * Adds the current status to the sum of the statuses of a visited state
+     */
+    private void addStatus(int state) {
+      int stride = status.length + 1;
+      int rows = visitedStates.size();
+      int row = visitedStates.putIfAbsent(state, rows);
+      if (row == LongIntHashMap.NO_VALUE) {
+        row = rows;
+        if ((row + 1) * stride > statusSums.length) {
+          statusSums = Arrays.copyOf(statusSums, statusSums.length * 2);
+        }
+      }
+
+      int offset = row * stride;
+      for (int axis = 0; axis < status.length; axis++) {
+        statusSums[offset + axis] += status[axis];
+      }
+      statusSums[offset + status.length]++;
+    }
+
+    /**
+     * Sets the Q values of the applicable actions of each visited state to the Q values of
+     * the approximation at the mean status of the state
+     */
+    @Override
+    void complete() {
+      double[] meanStatus = new double[status.length];
+      int[] meanFeatures = new int[qFunction.getTilings()];
+      int stride = status.length + 1;
+
+      for (int slot = 0; slot < visitedStates.capacity(); slot++) {
+        long key = visitedStates.keyAt(slot);
+        if (key == LongIntHashMap.EMPTY) {
+          continue;
+        }
+        int offset = visitedStates.valueAt(slot) * stride;
+        for (int axis = 0; axis < meanStatus.length; axis++) {
+          meanStatus[axis] = statusSums[offset + axis] / statusSums[offset + status.length];
+        }
+        qFunction.activate(meanStatus, meanFeatures);
+
+        int state = (int) key;
+        for (long mask = environment.getApplicableActionMask(state); mask != 0; mask &= mask - 1) {
+          int action = Long.numberOfTrailingZeros(mask);
+          qTable.set(state, action, qFunction.get(meanFeatures, action));
+        }
+      }
+    }
+
+    /**
+     * Returns the policy of the approximation learnt so far, with a copy of the
+     * approximation, which keeps being learnt
+     */
+    @Override
+    Policy compilePolicy() {
+      complete();
+      return Policy.compile(qFunction.copy(), qTable, environment);
+    }
+
+    @Override
+    public String toString() {
+      return "a tile-coded Q function of " + qFunction.getByteSize() + " bytes compiled for "
+        + visitedStates.size() + " visited states";
+    }
+  }
+}
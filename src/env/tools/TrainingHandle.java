@@ -0,0 +1,184 @@
+package tools;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The handle of a training that runs in the background (see
+ * {@link QLearner#startTraining}), which holds the progress of the training and
+ * through which the training is paused, resumed or cancelled.
+ *
+ * <p> The training checks its handle before each episode, so a training is paused or
+ * cancelled at the end of the episode in progress.
+ * </p>
+ */
+final class TrainingHandle {
+
+  /**
+   * The status of a training
+   */
+  enum Status {
+    QUEUED, RUNNING, PAUSED, CANCELLED, COMPLETED, FAILED;
+
+    @Override
+    public String toString() {
+      return name().toLowerCase();
+    }
+  }
+
+  /**
+   * The time between two reports of the progress of a training
+   */
+  private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final int id;
+  private final Object[] goalDescription;
+  private final int episodes;
+
+  private Status status = Status.QUEUED;
+  private boolean started;
+  private int episode;
+  private double epsilon;
+  private double maxDeltaQ;
+  private long lastReportNanos;
+
+  TrainingHandle(int id, Object[] goalDescription, int episodes) {
+    this.id = id;
+    this.goalDescription = goalDescription.clone();
+    this.episodes = episodes;
+  }
+
+  int getId() {
+    return id;
+  }
+
+  Object[] getGoalDescription() {
+    return goalDescription.clone();
+  }
+
+  /**
+   * Starts the training, unless it has been cancelled while it was queued. A training
+   * that has been paused while it was queued starts paused.
+   *
+   * @return false if the training has been cancelled
+   */
+  synchronized boolean start() {
+    if (status == Status.CANCELLED) {
+      return false;
+    }
+    started = true;
+    if (status == Status.QUEUED) {
+      status = Status.RUNNING;
+    }
+    return true;
+  }
+
+  /**
+   * Waits while the training is paused
+   *
+   * @return false if the training has been cancelled
+   */
+  synchronized boolean awaitRunning() {
+    while (status == Status.PAUSED) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        status = Status.CANCELLED;
+      }
+    }
+    return status != Status.CANCELLED;
+  }
+
+  /**
+   * Pauses the training, if it is queued or running
+   *
+   * @return false if the training has ended
+   */
+  synchronized boolean pause() {
+    if (status == Status.RUNNING || status == Status.QUEUED) {
+      status = Status.PAUSED;
+    }
+    return status == Status.PAUSED;
+  }
+
+  /**
+   * Resumes the training, if it is paused
+   *
+   * @return false if the training has ended
+   */
+  synchronized boolean resume() {
+    if (status == Status.PAUSED) {
+      status = started ? Status.RUNNING : Status.QUEUED;
+      notifyAll();
+    }
+    return !isEnded();
+  }
+
+  /**
+   * Cancels the training, if it has not ended
+   *
+   * @return false if the training has ended
+   */
+  synchronized boolean cancel() {
+    if (isEnded()) {
+      return false;
+    }
+    status = Status.CANCELLED;
+    notifyAll();
+    return true;
+  }
+
+  /**
+   * Ends the training, unless it has been cancelled
+   *
+   * @param success whether the training has completed, or else failed
+   */
+  synchronized void end(boolean success) {
+    if (status != Status.CANCELLED) {
+      status = success ? Status.COMPLETED : Status.FAILED;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Records the progress of the training after an episode
+   *
+   * @param completedEpisodes the number of completed episodes
+   * @param epsilon the exploration probability of the episode
+   * @param maxDeltaQ the largest change of a Q value in the episode
+   * @return whether the progress is due to be reported, i.e. after the first episode and
+   * then at most once per second
+   */
+  synchronized boolean recordEpisode(int completedEpisodes, double epsilon, double maxDeltaQ) {
+    this.episode = completedEpisodes;
+    this.epsilon = epsilon;
+    this.maxDeltaQ = maxDeltaQ;
+
+    long now = System.nanoTime();
+    if (lastReportNanos == 0 || now - lastReportNanos >= REPORT_INTERVAL_NANOS) {
+      lastReportNanos = now;
+      return true;
+    }
+    return false;
+  }
+
+  synchronized boolean isEnded() {
+    return status == Status.CANCELLED || status == Status.COMPLETED || status == Status.FAILED;
+  }
+
+  /**
+   * Returns the progress of the training: its id, status, number of completed episodes,
+   * number of requested episodes, latest exploration probability and latest largest
+   * change of a Q value, as the values of an observable property
+   */
+  synchronized Object[] getProgress() {
+    return new Object[]{id, status.toString(), episode, episodes, epsilon, maxDeltaQ};
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Training " + id + " of " + Arrays.toString(goalDescription) + ": " + status + ", episode " + episode
+      + " of " + episodes;
+  }
+}
@@ -0,0 +1,129 @@
+package tools;
+
+/**
+ * The schedule of a Q learning training: the decay of the exploration probability and
+ * of the learning rate over the episodes, and the criterion for stopping the training
+ * before the requested number of episodes once it has converged.
+ *
+ * <p> In episode i (from 0), the exploration probability is max(epsilon * epsilonDecay^i,
+ * minEpsilon), and the learning rate is max(alpha * alphaDecay^i, minAlpha). The training
+ * has converged when, in each of the last convergenceWindow episodes, no Q value has
+ * changed by more than the convergence threshold and the greedy action of no state has
+ * changed. By default, the exploration probability and the learning rate are constant,
+ * and all the requested episodes are run.
+ * </p>
+ */
+public class TrainingSchedule {
+
+  /**
+   * The default schedule, with a constant exploration probability and learning rate and
+   * without early stopping
+   */
+  public static final TrainingSchedule DEFAULT = new TrainingSchedule(1, 0, 1, 0, 0, 0);
+
+  private final double epsilonDecay;
+  private final double minEpsilon;
+  private final double alphaDecay;
+  private final double minAlpha;
+  private final int convergenceWindow;
+  private final double convergenceThreshold;
+
+  /**
+   * A {@link TrainingSchedule} instance is constructed based on the decay factors and
+   * floors of the exploration probability and of the learning rate, and on the
+   * convergence criterion
+   *
+   * @param epsilonDecay the factor of the exploration probability per episode, in (0,1]
+   * @param minEpsilon the floor of the exploration probability
+   * @param alphaDecay the factor of the learning rate per episode, in (0,1]
+   * @param minAlpha the floor of the learning rate
+   * @param convergenceWindow the number of consecutive converged episodes after which
+   * the training stops, or 0 for running all the requested episodes
+   * @param convergenceThreshold the largest change of a Q value in a converged episode
+   * @throws IllegalArgumentException if a decay factor is not in (0,1], or if a floor,
+   * the window or the threshold is negative
+   */
+  public TrainingSchedule(double epsilonDecay, double minEpsilon, double alphaDecay, double minAlpha,
+      int convergenceWindow, double convergenceThreshold) {
+    if (!(epsilonDecay > 0 && epsilonDecay <= 1) || !(alphaDecay > 0 && alphaDecay <= 1)) {
+      throw new IllegalArgumentException("The decay factors must be in (0,1]");
+    }
+    if (minEpsilon < 0 || minAlpha < 0 || convergenceWindow < 0 || convergenceThreshold < 0) {
+      throw new IllegalArgumentException("The floors, the window and the threshold must not be negative");
+    }
+
+    this.epsilonDecay = epsilonDecay;
+    this.minEpsilon = minEpsilon;
+    this.alphaDecay = alphaDecay;
+    this.minAlpha = minAlpha;
+    this.convergenceWindow = convergenceWindow;
+    this.convergenceThreshold = convergenceThreshold;
+  }
+
+  /**
+   * Returns a schedule with the decay of this schedule and another convergence criterion
+   */
+  public TrainingSchedule withConvergence(int convergenceWindow, double convergenceThreshold) {
+    return new TrainingSchedule(epsilonDecay, minEpsilon, alphaDecay, minAlpha, convergenceWindow,
+      convergenceThreshold);
+  }
+
+  /**
+   * Returns a schedule with the convergence criterion of this schedule and another decay
+   */
+  public TrainingSchedule withDecay(double epsilonDecay, double minEpsilon, double alphaDecay, double minAlpha) {
+    return new TrainingSchedule(epsilonDecay, minEpsilon, alphaDecay, minAlpha, convergenceWindow,
+      convergenceThreshold);
+  }
+
+  /**
+   * Returns the exploration probability of an episode
+   *
+   * @param epsilon the exploration probability of the first episode
+   * @param episode the episode, from 0
+   */
+  public double getEpsilon(double epsilon, int episode) {
+    return epsilonDecay == 1 ? epsilon : Math.max(epsilon * Math.pow(epsilonDecay, episode), minEpsilon);
+  }
+
+  /**
+   * Returns the learning rate of an episode
+   *
+   * @param alpha the learning rate of the first episode
+   * @param episode the episode, from 0
+   */
+  public double getAlpha(double alpha, int episode) {
+    return alphaDecay == 1 ? alpha : Math.max(alpha * Math.pow(alphaDecay, episode), minAlpha);
+  }
+
+  /**
+   * Returns whether the training stops once it has converged
+   */
+  public boolean hasConvergence() {
+    return convergenceWindow > 0;
+  }
+
+  /**
+   * Returns the number of consecutive converged episodes after which the training stops
+   */
+  public int getConvergenceWindow() {
+    return convergenceWindow;
+  }
+
+  /**
+   * Returns whether an episode has converged
+   *
+   * @param maxDeltaQ the largest change of a Q value in the episode
+   * @param policyChanged whether the greedy action of a state has changed in the episode
+   */
+  public boolean isConverged(double maxDeltaQ, boolean policyChanged) {
+    return maxDeltaQ <= convergenceThreshold && !policyChanged;
+  }
+
+  @Override
+  public String toString() {
+    return "epsilon decay " + epsilonDecay + " (min " + minEpsilon + "), alpha decay " + alphaDecay
+      + " (min " + minAlpha + "), convergence window " + convergenceWindow + " (threshold "
+      + convergenceThreshold + ")";
+  }
+}
@@ -0,0 +1,245 @@
+package tools;
+
+import java.util.*;
+
+/**
+ * A tabular model of the transitions of a learning environment, learnt from the
+ * observed (state, action, next state) tuples.
+ *
+ * <p> For each observed pair of a state and an action, the model counts how often
+ * each next state has been observed, so that next states can be sampled with their
+ * observed frequencies (e.g., the next state may depend on the sunshine out of the lab).
+ * The model does not depend on a goal, so the same model can be used for learning
+ * different goals.
+ * </p>
+ */
+public class TransitionModel {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final int stateCount;
+  private final int actionCount;
+
+  /**
+  * The index of each observed pair of a state and an action in {@link #observedPairs},
+  * by the pair encoded as state * actionCount + action
+  */
+  private final LongIntHashMap pairIndexes = new LongIntHashMap(INITIAL_CAPACITY * 2);
+
+  /**
+  * The observed pairs, in the order of their first observation, encoded as
+  * state * actionCount + action
+  */
+  private long[] observedPairs = new long[INITIAL_CAPACITY];
+  private int observedPairCount;
+
+  /**
+  * The observed next states of each observed pair
+  */
+  private int[][] nextStates = new int[INITIAL_CAPACITY][];
+
+  /**
+  * The number of observations of each next state in {@link #nextStates}
+  */
+  private int[][] nextStateCounts = new int[INITIAL_CAPACITY][];
+
+  /**
+  * The number of distinct next states of each observed pair
+  */
+  private int[] outcomeCounts = new int[INITIAL_CAPACITY];
+
+  /**
+  * The number of observations of each observed pair
+  */
+  private int[] totalCounts = new int[INITIAL_CAPACITY];
+
+  /**
+  * A {@link TransitionModel} instance is constructed based on the size of the state
+  * space and the action space of a learning environment. The memory of the model scales
+  * with the number of observed pairs of a state and an action, rather than with the size
+  * of the state space.
+  *
+  * @param stateCount the size of the state space
+  * @param actionCount the size of the action space
+  */
+  public TransitionModel(int stateCount, int actionCount) {
+    this.stateCount = stateCount;
+    this.actionCount = actionCount;
+  }
+
+  /**
+  * Records an observed transition
+  *
+  * @param state the state in which the action was performed
+  * @param action the action
+  * @param nextState the state that was observed after the action
+  */
+  public void observe(int state, int action, int nextState) {
+    long pair = (long) state * actionCount + action;
+    int index = pairIndexes.putIfAbsent(pair, observedPairCount);
+    if (index == LongIntHashMap.NO_VALUE) {
+      index = insert(pair);
+    }
+    totalCounts[index]++;
+
+    int outcomes = outcomeCounts[index];
+    for (int i = 0; i < outcomes; i++) {
+      if (nextStates[index][i] == nextState) {
+        nextStateCounts[index][i]++;
+        return;
+      }
+    }
+
+    if (outcomes == nextStates[index].length) {
+      nextStates[index] = Arrays.copyOf(nextStates[index], outcomes * 2);
+      nextStateCounts[index] = Arrays.copyOf(nextStateCounts[index], outcomes * 2);
+    }
+    nextStates[index][outcomes] = nextState;
+    nextStateCounts[index][outcomes] = 1;
+    outcomeCounts[index]++;
+  }
+
+  /**
+  * Returns the number of distinct pairs of a state and an action that have been observed
+  */
+  public int getObservedPairCount() {
+    return observedPairCount;
+  }
+
+  /**
+  * Returns the number of transitions that have been observed
+  */
+  public long getObservationCount() {
+    long observations = 0;
+    for (int i = 0; i < observedPairCount; i++) {
+      observations += totalCounts[i];
+    }
+    return observations;
+  }
+
+  /**
+  * Returns the number of observations of a pair of a state and an action
+  *
+  * @param state the state
+  * @param action the action
+  * @return the number of observations, 0 if the pair has not been observed
+  */
+  public int getObservationCount(int state, int action) {
+    int index = pairIndexes.get((long) state * actionCount + action);
+    return index == LongIntHashMap.NO_VALUE ? 0 : totalCounts[index];
+  }
+
+  /**
+  * Returns an observed pair of a state and an action, chosen uniformly at random.
+  * The pair is encoded as state * actionCount + action.
+  *
+  * @param random the random number generator
+  * @return the pair
+  */
+  public long sampleObservedPair(SplittableRandom random) {
+    return observedPairs[random.nextInt(observedPairCount)];
+  }
+
+  /**
+  * Returns the state of a pair that is encoded as state * actionCount + action
+  */
+  public int getPairState(long pair) {
+    return (int) (pair / actionCount);
+  }
+
+  /**
+  * Returns the action of a pair that is encoded as state * actionCount + action
+  */
+  public int getPairAction(long pair) {
+    return (int) (pair % actionCount);
+  }
+
+  /**
+  * Returns a next state of an observed pair of a state and an action, chosen with
+  * the observed frequencies of the next states
+  *
+  * @param state the state
+  * @param action the action
+  * @param random the random number generator
+  * @return the next state
+  */
+  public int sampleNextState(int state, int action, SplittableRandom random) {
+    int index = pairIndexes.get((long) state * actionCount + action);
+    int sample = random.nextInt(totalCounts[index]);
+
+    for (int i = 0; i < outcomeCounts[index]; i++) {
+      sample -= nextStateCounts[index][i];
+      if (sample < 0) {
+        return nextStates[index][i];
+      }
+    }
+    return nextStates[index][outcomeCounts[index] - 1];
+  }
+
+  /**
+  * Returns an observed pair of a state and an action, encoded as state * actionCount + action
+  *
+  * @param index the index of the pair, in the order of the first observations of the pairs
+  */
+  public long getObservedPair(int index) {
+    return observedPairs[index];
+  }
+
+  /**
+  * Returns the number of distinct next states of an observed pair
+  *
+  * @param index the index of the pair (see {@link #getObservedPair(int)})
+  */
+  public int getOutcomeCount(int index) {
+    return outcomeCounts[index];
+  }
+
+  /**
+  * Returns a next state of an observed pair
+  *
+  * @param index the index of the pair (see {@link #getObservedPair(int)})
+  * @param outcome the outcome, from 0 to the number of distinct next states
+  */
+  public int getOutcomeState(int index, int outcome) {
+    return nextStates[index][outcome];
+  }
+
+  /**
+  * Returns the observed frequency of a next state of an observed pair
+  *
+  * @param index the index of the pair (see {@link #getObservedPair(int)})
+  * @param outcome the outcome, from 0 to the number of distinct next states
+  */
+  public double getOutcomeProbability(int index, int outcome) {
+    return (double) nextStateCounts[index][outcome] / totalCounts[index];
+  }
+
+  public int getStateCount() {
+    return stateCount;
+  }
+
+  public int getActionCount() {
+    return actionCount;
+  }
+
+  /**
+  * Adds a pair without observations, whose index has been put in {@link #pairIndexes},
+  * and returns its index
+  */
+  private int insert(long pair) {
+    if (observedPairCount == observedPairs.length) {
+      int capacity = observedPairCount * 2;
+      observedPairs = Arrays.copyOf(observedPairs, capacity);
+      nextStates = Arrays.copyOf(nextStates, capacity);
+      nextStateCounts = Arrays.copyOf(nextStateCounts, capacity);
+      outcomeCounts = Arrays.copyOf(outcomeCounts, capacity);
+      totalCounts = Arrays.copyOf(totalCounts, capacity);
+    }
+
+    int index = observedPairCount++;
+    observedPairs[index] = pair;
+    nextStates[index] = new int[2];
+    nextStateCounts[index] = new int[2];
+    return index;
+  }
+}
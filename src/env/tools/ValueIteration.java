@@ -0,0 +1,233 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * A solver that computes the Q matrices of all the goals of a learning environment at
+ * once, by value iteration over a {@link TransitionModel} instead of sampling episodes.
+ *
+ * <p> The goals are the light levels of all the zones, so each state belongs to exactly
+ * one goal. As in Q learning, a transition into a state of the goal is rewarded with the
+ * reward of the goal and ends the episode, any other transition is rewarded with -1, and
+ * the pairs of a state and an applicable action that have not been observed have a Q
+ * value of 0. For each observed pair, Q(s, a) = sum of P(s'|s, a) * (r(s') + gamma * V(s'))
+ * over the observed next states s', where V(s') is 0 if s' is a goal state and the max of
+ * the Q values of s' otherwise.
+ * </p>
+ * <p> The values of the goals are laid out with the goal dimension innermost, i.e. as
+ * value[state * goalCount + goal], so that each observed next state updates the values
+ * of all the goals with a single branch-free loop over contiguous arrays, which the JIT
+ * compiler vectorizes, and then corrects the value of the goal of the next state. The
+ * model is compiled into arrays of the observed pairs of each state, and of the next
+ * states and probabilities of each pair, which are read sequentially in each sweep.
+ * </p>
+ */
+public final class ValueIteration {
+
+  private final int goalCount;
+
+  /**
+   * The goal of each state
+   */
+  private final int[] goalOfState;
+
+  /**
+   * Whether each state has applicable actions that have not been observed, whose Q
+   * value is 0
+   */
+  private final boolean[] unobservedActions;
+
+  /**
+   * The states that have observed pairs, in ascending order. The values of the other
+   * states are 0.
+   */
+  private final int[] observedStates;
+
+  /**
+   * The first observed pair of each state in {@link #pairActions}, and the end of the
+   * pairs of the last state
+   */
+  private final int[] stateStarts;
+  private final int[] pairActions;
+
+  /**
+   * The first next state of each pair in {@link #outcomeStates}, and the end of the next
+   * states of the last pair
+   */
+  private final int[] outcomeStarts;
+  private final int[] outcomeStates;
+  private final double[] outcomeProbabilities;
+
+  /**
+   * The values of the states for each goal, i.e. the max of their Q values
+   */
+  private double[] values;
+
+  private ValueIteration(int stateCount, int goalCount, int[] goalOfState, boolean[] unobservedActions,
+      int[] observedStates, int[] stateStarts, int[] pairActions, int[] outcomeStarts, int[] outcomeStates,
+      double[] outcomeProbabilities) {
+    this.goalCount = goalCount;
+    this.goalOfState = goalOfState;
+    this.unobservedActions = unobservedActions;
+    this.observedStates = observedStates;
+    this.stateStarts = stateStarts;
+    this.pairActions = pairActions;
+    this.outcomeStarts = outcomeStarts;
+    this.outcomeStates = outcomeStates;
+    this.outcomeProbabilities = outcomeProbabilities;
+    this.values = new double[stateCount * goalCount];
+  }
+
+  /**
+   * Compiles a transition model for solving the goals of a learning environment
+   *
+   * @param model the transition model
+   * @param environment the learning environment of the model, which provides the
+   * applicable actions of each state
+   * @param goalOfState the goal of each state, from 0 to the number of goals
+   * @param goalCount the number of goals
+   * @return the solver
+   * @throws IllegalArgumentException if the values of all the goals of all the states
+   * do not fit in an array
+   */
+  public static ValueIteration compile(TransitionModel model, LearningEnvironment environment, int[] goalOfState,
+      int goalCount) {
+    int stateCount = model.getStateCount();
+    if ((long) stateCount * goalCount > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Too many states and goals: " + stateCount + " states, " + goalCount
+        + " goals");
+    }
+
+    // the observed pairs of each state, in the order of the states (counting sort)
+    int pairCount = model.getObservedPairCount();
+    int[] stateStarts = new int[stateCount + 1];
+    for (int index = 0; index < pairCount; index++) {
+      stateStarts[model.getPairState(model.getObservedPair(index)) + 1]++;
+    }
+    for (int state = 0; state < stateCount; state++) {
+      stateStarts[state + 1] += stateStarts[state];
+    }
+
+    int[] next = Arrays.copyOf(stateStarts, stateCount);
+    int[] pairIndexes = new int[pairCount];
+    for (int index = 0; index < pairCount; index++) {
+      pairIndexes[next[model.getPairState(model.getObservedPair(index))]++] = index;
+    }
+
+    int[] pairActions = new int[pairCount];
+    int[] outcomeStarts = new int[pairCount + 1];
+    for (int pair = 0; pair < pairCount; pair++) {
+      pairActions[pair] = model.getPairAction(model.getObservedPair(pairIndexes[pair]));
+      outcomeStarts[pair + 1] = outcomeStarts[pair] + model.getOutcomeCount(pairIndexes[pair]);
+    }
+
+    int[] outcomeStates = new int[outcomeStarts[pairCount]];
+    double[] outcomeProbabilities = new double[outcomeStarts[pairCount]];
+    for (int pair = 0; pair < pairCount; pair++) {
+      for (int outcome = 0; outcome < model.getOutcomeCount(pairIndexes[pair]); outcome++) {
+        outcomeStates[outcomeStarts[pair] + outcome] = model.getOutcomeState(pairIndexes[pair], outcome);
+        outcomeProbabilities[outcomeStarts[pair] + outcome] = model.getOutcomeProbability(pairIndexes[pair], outcome);
+      }
+    }
+
+    boolean[] unobservedActions = new boolean[stateCount];
+    int[] observedStates = new int[stateCount];
+    int observedStateCount = 0;
+    for (int state = 0; state < stateCount; state++) {
+      int observedActions = stateStarts[state + 1] - stateStarts[state];
+      if (observedActions > 0) {
+        observedStates[observedStateCount++] = state;
+        unobservedActions[state] = Long.bitCount(environment.getApplicableActionMask(state)) > observedActions;
+      }
+    }
+
+    return new ValueIteration(stateCount, goalCount, goalOfState, unobservedActions,
+      Arrays.copyOf(observedStates, observedStateCount), stateStarts, pairActions, outcomeStarts, outcomeStates,
+      outcomeProbabilities);
+  }
+
+  /**
+   * Sweeps the states until the values of all the goals change by at most a tolerance
+   *
+   * @param gamma the discount factor
+   * @param reward the reward of a transition into a goal state
+   * @param tolerance the largest change of a value in the last sweep
+   * @param maxSweeps the largest number of sweeps
+   * @return the number of sweeps
+   */
+  public int solve(double gamma, double reward, double tolerance, int maxSweeps) {
+    double[] newValues = new double[values.length];
+    double[] stateValues = new double[goalCount];
+    double[] pairValues = new double[goalCount];
+
+    for (int sweep = 1; sweep <= maxSweeps; sweep++) {
+      double maxDelta = 0.0;
+
+      for (int state : observedStates) {
+        Arrays.fill(stateValues, unobservedActions[state] ? 0.0 : Double.NEGATIVE_INFINITY);
+
+        for (int pair = stateStarts[state]; pair < stateStarts[state + 1]; pair++) {
+          computePairValues(pair, gamma, reward, pairValues);
+          for (int goal = 0; goal < goalCount; goal++) {
+            stateValues[goal] = Math.max(stateValues[goal], pairValues[goal]);
+          }
+        }
+
+        int base = state * goalCount;
+        for (int goal = 0; goal < goalCount; goal++) {
+          maxDelta = Math.max(maxDelta, Math.abs(stateValues[goal] - values[base + goal]));
+          newValues[base + goal] = stateValues[goal];
+        }
+      }
+
+      double[] swap = values;
+      values = newValues;
+      newValues = swap;
+
+      if (maxDelta <= tolerance) {
+        return sweep;
+      }
+    }
+    return maxSweeps;
+  }
+
+  /**
+   * Sets the Q values of the observed pairs of each goal in the Q matrix of the goal,
+   * from the values of the last sweep
+   *
+   * @param gamma the discount factor of the sweeps
+   * @param reward the reward of the sweeps
+   * @param qTables the Q matrix of each goal, whose other Q values are not modified
+   */
+  public void copyQValues(double gamma, double reward, QTable[] qTables) {
+    double[] pairValues = new double[goalCount];
+    for (int state : observedStates) {
+      for (int pair = stateStarts[state]; pair < stateStarts[state + 1]; pair++) {
+        computePairValues(pair, gamma, reward, pairValues);
+        for (int goal = 0; goal < goalCount; goal++) {
+          qTables[goal].set(state, pairActions[pair], pairValues[goal]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the Q values of a pair for all the goals
+   */
+  private void computePairValues(int pair, double gamma, double reward, double[] pairValues) {
+    Arrays.fill(pairValues, 0.0);
+
+    for (int outcome = outcomeStarts[pair]; outcome < outcomeStarts[pair + 1]; outcome++) {
+      double probability = outcomeProbabilities[outcome];
+      int nextState = outcomeStates[outcome];
+      int base = nextState * goalCount;
+
+      // the next state is not a goal state for all the goals but its own
+      for (int goal = 0; goal < goalCount; goal++) {
+        pairValues[goal] += probability * (gamma * values[base + goal] - 1.0);
+      }
+      int nextGoal = goalOfState[nextState];
+      pairValues[nextGoal] += probability * (reward + 1.0 - gamma * values[base + nextGoal]);
+    }
+  }
+}
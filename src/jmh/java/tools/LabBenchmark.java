@@ -0,0 +1,78 @@
+package tools;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of the state space and action space of the lab, against a simulated lab
+ * with a fixed seed (see {@link SimulatedLab}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabBenchmark {
+
+  private Lab lab;
+  private List<Object> goalDescription;
+  private List<Object> stateDescription;
+  private int[] substates;
+  private int state;
+
+  @Setup
+  public void setUp() {
+    Logger.getLogger("tools").setLevel(Level.WARNING);
+
+    lab = SimulatedLab.fromURL("sim:fixed?seed=42");
+    goalDescription = Arrays.asList(2, 3);
+    stateDescription = Arrays.asList(2, 2, true, false, true, true, 2);
+    substates = new int[]{2, 2, 1, 0, 1, 1, 2};
+    state = lab.encodeState(substates);
+  }
+
+  @Benchmark
+  public List<Integer> getCompatibleStates() {
+    return lab.getCompatibleStates(goalDescription);
+  }
+
+  @Benchmark
+  public BitSet getCompatibleStateSet() {
+    return lab.getCompatibleStateSet(stateDescription);
+  }
+
+  /**
+   * The state index lookup of {@link Lab#readCurrentState()}: the discretization of a
+   * status and the encoding of its substates
+   */
+  @Benchmark
+  public int encodeState() {
+    substates[0] = lab.discretizeLightLevel(180.0);
+    substates[1] = lab.discretizeLightLevel(420.0);
+    substates[6] = lab.discretizeSunshine(620.0);
+    return lab.encodeState(substates);
+  }
+
+  /**
+   * A status read and its state index lookup against the simulated lab, which reads the
+   * status in-process
+   */
+  @Benchmark
+  public int readCurrentState() {
+    return lab.readCurrentState();
+  }
+
+  @Benchmark
+  public List<Integer> getApplicableActions() {
+    return lab.getApplicableActions(state);
+  }
+
+  @Benchmark
+  public int[] getApplicableActionArray() {
+    return lab.getApplicableActionArray(state);
+  }
+}
@@ -0,0 +1,83 @@
+package tools;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import cartago.OpFeedbackParam;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of the learning and control paths of {@link QLearner}, against a
+ * simulated lab with a fixed seed (see {@link SimulatedLab}), so that the episodes
+ * do not depend on the lab. Each benchmark runs against each type of Q matrix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QLearnerBenchmark {
+
+  private static final Object[] GOAL_DESCRIPTION = {2, 3};
+  private static final Object[] STATE_DESCRIPTION = {2, 2, true, false, true, true, 2};
+
+  private QLearner qLearner;
+  private Lab lab;
+  @Param({"double", "float", "offheap", "sparse"})
+  private String qTableType;
+
+  private QTable qTable;
+  private int state;
+
+  private final OpFeedbackParam<String> actionTag = new OpFeedbackParam<>();
+  private final OpFeedbackParam<Object[]> payloadTags = new OpFeedbackParam<>();
+  private final OpFeedbackParam<Object[]> payload = new OpFeedbackParam<>();
+
+  @Setup
+  public void setUp() {
+    Logger.getLogger("tools").setLevel(Level.WARNING);
+
+    qLearner = new QLearner();
+    qLearner.initEnvironment("sim:fixed?seed=42");
+    qLearner.setRandomSeed(42);
+    qLearner.setQTableType(qTableType);
+    qLearner.calculateQ(GOAL_DESCRIPTION, 50, 0.1, 0.9, 0.1, 100);
+
+    lab = SimulatedLab.fromURL("sim:fixed?seed=42");
+    qTable = QTable.create(qTableType, lab.getStateCount(), lab.getActionCount());
+    Random random = new Random(42);
+    for (int s = 0; s < qTable.getStateCount(); s++) {
+      for (int action = 0; action < qTable.getActionCount(); action++) {
+        qTable.set(s, action, random.nextInt(10));
+      }
+    }
+    state = lab.getCompatibleStateSet(Arrays.asList(STATE_DESCRIPTION)).nextSetBit(0);
+  }
+
+  @Benchmark
+  public int getActionGreedy() {
+    return qLearner.getActionGreedy(qTable, state, 0.1);
+  }
+
+  @Benchmark
+  public double maxRewardQPrime() {
+    return qLearner.maxRewardQPrime(lab, qTable, state);
+  }
+
+  @Benchmark
+  public String getActionFromState() {
+    qLearner.getActionFromState(GOAL_DESCRIPTION, STATE_DESCRIPTION, actionTag, payloadTags, payload);
+    return actionTag.get();
+  }
+
+  /**
+   * A training of 10 episodes, from a new Q matrix
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void calculateQ() {
+    qLearner.calculateQ(GOAL_DESCRIPTION, 10, 0.1, 0.9, 0.1, 100);
+  }
+}